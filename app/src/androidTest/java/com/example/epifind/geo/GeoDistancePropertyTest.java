@@ -0,0 +1,79 @@
+package com.example.epifind.geo;
+
+import android.location.Location;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the documented error bounds of {@link GeoDistance} against the platform's ellipsoidal distance.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GeoDistancePropertyTest {
+
+    @Test
+    public void exactKernel_staysWithinBoundOfPlatformDistance() {
+        Random random = new Random(7);
+        float[] platform = new float[1];
+        for (int i = 0; i < 20000; i++) {
+            double[] pair = randomPair(random, 89, 5000000);
+            Location.distanceBetween(pair[0], pair[1], pair[2], pair[3], platform);
+            if (platform[0] > 1) {
+                assertEquals(platform[0], GeoDistance.haversineMeters(pair[0], pair[1], pair[2], pair[3]),
+                        platform[0] * 0.006);
+            }
+        }
+    }
+
+    @Test
+    public void fastKernel_staysWithinBoundOfPlatformDistance() {
+        Random random = new Random(8);
+        float[] platform = new float[1];
+        for (int i = 0; i < 20000; i++) {
+            double[] pair = randomPair(random, 70, 100000);
+            Location.distanceBetween(pair[0], pair[1], pair[2], pair[3], platform);
+            if (platform[0] > 1) {
+                assertEquals(platform[0], GeoDistance.equirectangularMeters(pair[0], pair[1], pair[2], pair[3]),
+                        platform[0] * 0.007);
+            }
+        }
+    }
+
+    @Test
+    public void isWithin_agreesWithPlatformAwayFromTheBoundary() {
+        Random random = new Random(9);
+        float[] platform = new float[1];
+        for (int i = 0; i < 20000; i++) {
+            double[] pair = randomPair(random, 70, 60000);
+            double radius = 50000;
+            Location.distanceBetween(pair[0], pair[1], pair[2], pair[3], platform);
+            if (Math.abs(platform[0] - radius) < radius * 0.007) continue;
+            boolean expected = platform[0] <= radius;
+            for (GeoDistance.Precision precision : GeoDistance.Precision.values()) {
+                assertEquals(expected, GeoDistance.isWithin(pair[0], pair[1], pair[2], pair[3], radius, precision));
+            }
+        }
+    }
+
+    /**
+     * Picks a random location and a second location within roughly a given distance of it.
+     */
+    private static double[] randomPair(Random random, double maxLatitude, double maxMeters) {
+        double lat = -maxLatitude + 2 * maxLatitude * random.nextDouble();
+        double lon = -180 + 360 * random.nextDouble();
+        double distance = maxMeters * random.nextDouble();
+        double bearing = 2 * Math.PI * random.nextDouble();
+        double lat2 = lat + Math.toDegrees(distance * Math.cos(bearing) / GeoDistance.EARTH_RADIUS_METERS);
+        double lon2 = lon + Math.toDegrees(distance * Math.sin(bearing)
+                / (GeoDistance.EARTH_RADIUS_METERS * Math.cos(Math.toRadians(lat))));
+        lat2 = Math.max(-maxLatitude, Math.min(maxLatitude, lat2));
+        lon2 = ((lon2 + 540) % 360) - 180;
+        return new double[]{lat, lon, lat2, lon2};
+    }
+}
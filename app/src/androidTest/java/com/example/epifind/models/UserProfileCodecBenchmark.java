@@ -0,0 +1,128 @@
+package com.example.epifind.models;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.InternalHelpers;
+import com.google.firebase.database.snapshot.IndexedNode;
+import com.google.firebase.database.snapshot.NodeUtilities;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares decoding profiles with {@link UserProfileCodec} against the reflective class mapper behind
+ * {@code DataSnapshot.getValue(UserProfile.class)}, on the same snapshots. The snapshots are built in memory,
+ * so nothing is read from or written to the database. Run it on a device with
+ * {@code ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.example.epifind.models.UserProfileCodecBenchmark}
+ * and read the timings from logcat under the tag "UserProfileCodecBench".
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserProfileCodecBenchmark {
+    private static final String TAG = "UserProfileCodecBench";
+    private static final int PROFILES = 500;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+    private static final String[] ALLERGIES = {"Peanuts", "Milk, Eggs", "Tree nuts, Soy, Fish", ""};
+
+    @Test
+    public void codecDecode_versusReflectiveGetValue() {
+        DataSnapshot[] snapshots = legacySnapshots(new Random(20));
+        UserProfileCodec.Pool pool = new UserProfileCodec.Pool(1);
+
+        long checksum = 0;
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            checksum += decodeReflective(snapshots) + decodeCodec(snapshots, null) + decodeCodec(snapshots, pool);
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            checksum += decodeReflective(snapshots);
+        }
+        report("getValue(UserProfile.class)", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            checksum += decodeCodec(snapshots, null);
+        }
+        report("UserProfileCodec.decode", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            checksum += decodeCodec(snapshots, pool);
+        }
+        report("UserProfileCodec.decode with pool", System.nanoTime() - start);
+        Log.i(TAG, "checksum " + checksum);
+
+        // Both paths must read the same profiles for the comparison to mean anything
+        for (DataSnapshot snapshot : snapshots) {
+            UserProfile reflective = snapshot.getValue(UserProfile.class);
+            UserProfile decoded = UserProfileCodec.decode(snapshot, UserProfileCodec.ALL, null);
+            assertEquals(reflective.getName(), decoded.getName());
+            assertEquals(reflective.getNeedsHelp(), decoded.getNeedsHelp());
+        }
+    }
+
+    private static long decodeReflective(DataSnapshot[] snapshots) {
+        long checksum = 0;
+        for (DataSnapshot snapshot : snapshots) {
+            checksum += snapshot.getValue(UserProfile.class).getName().length();
+        }
+        return checksum;
+    }
+
+    private static long decodeCodec(DataSnapshot[] snapshots, UserProfileCodec.Pool pool) {
+        long checksum = 0;
+        for (DataSnapshot snapshot : snapshots) {
+            UserProfile profile = UserProfileCodec.decode(snapshot, UserProfileCodec.ALL,
+                    pool != null ? pool.acquire() : null);
+            checksum += profile.getName().length();
+            if (pool != null) {
+                pool.release(profile);
+            }
+        }
+        return checksum;
+    }
+
+    private static void report(String name, long nanos) {
+        Log.i(TAG, String.format("profiles=%d %s=%.2fus/profile", PROFILES, name,
+                nanos / 1e3 / ((double) ROUNDS * PROFILES)));
+    }
+
+    /**
+     * Builds profile snapshots in the legacy schema, which both decoding paths can read.
+     */
+    private static DataSnapshot[] legacySnapshots(Random random) {
+        DatabaseReference users = FirebaseDatabase.getInstance().getReference("users");
+        DataSnapshot[] snapshots = new DataSnapshot[PROFILES];
+        for (int i = 0; i < PROFILES; i++) {
+            String userId = "user" + i;
+            Map<String, Object> value = new HashMap<>();
+            value.put(UserProfileCodec.KEY_USER_ID, userId);
+            value.put(UserProfileCodec.KEY_NAME, "User " + i);
+            value.put(UserProfileCodec.KEY_ALLERGIES, ALLERGIES[i % ALLERGIES.length]);
+            value.put(UserProfileCodec.KEY_EPIPEN_EXPIRY, String.format("%02d/%02d/2030", 1 + i % 28, 1 + i % 12));
+            value.put(UserProfileCodec.KEY_LATITUDE, 32.0 + random.nextDouble());
+            value.put(UserProfileCodec.KEY_LONGITUDE, 34.5 + random.nextDouble());
+            value.put(UserProfileCodec.KEY_SPEED, random.nextDouble() * 3);
+            value.put(UserProfileCodec.KEY_BEARING, random.nextDouble() * 360);
+            value.put(UserProfileCodec.KEY_ACCURACY, random.nextDouble() * 30);
+            value.put(UserProfileCodec.KEY_LOCATION_TIME, 1700000000000L + i);
+            value.put(UserProfileCodec.KEY_HAS_EPIPEN, i % 2 == 0);
+            value.put(UserProfileCodec.KEY_NEEDS_HELP, i % 10 == 0);
+            snapshots[i] = InternalHelpers.createDataSnapshot(users.child(userId),
+                    IndexedNode.from(NodeUtilities.NodeFromJSON(value)));
+        }
+        return snapshots;
+    }
+}
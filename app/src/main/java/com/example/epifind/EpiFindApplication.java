@@ -0,0 +1,20 @@
+package com.example.epifind;
+
+import android.app.Application;
+
+import com.example.epifind.utils.DatabaseCache;
+import com.example.epifind.utils.EpiPenExpiryChecker;
+
+/**
+ * EpiFindApplication initializes the app-wide state before any activity or service starts. The database
+ * cache has to be set up here, since persistence can only be enabled before the database is first used.
+ */
+public class EpiFindApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        DatabaseCache.init();
+        EpiPenExpiryChecker.watchExpiry(this);
+    }
+}
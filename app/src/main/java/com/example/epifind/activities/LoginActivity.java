@@ -7,7 +7,9 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.appcompat.app.AppCompatActivity;
 import com.example.epifind.R;
 import com.example.epifind.managers.UserManager;
+import com.example.epifind.models.ProfilePatch;
 import com.example.epifind.models.UserProfile;
+import com.example.epifind.models.UserProfileCodec;
 import com.firebase.ui.auth.AuthUI;
 import com.firebase.ui.auth.FirebaseAuthUIActivityResultContract;
 import com.firebase.ui.auth.data.model.FirebaseAuthUIAuthenticationResult;
@@ -107,11 +109,8 @@ public class LoginActivity extends AppCompatActivity {
         userRef.addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
             public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                UserProfile updatedProfile = dataSnapshot.exists()
-                        ? updateExistingProfile(dataSnapshot, user)
-                        : createNewProfile(user);
-                updatedProfile.setUserId(userId);
-                updateProfile(userRef, updatedProfile);
+                ProfilePatch patch = updateExistingProfile(dataSnapshot, user);
+                updateProfile(patch != null ? patch : ProfilePatch.create(createNewProfile(user)));
             }
 
             @Override
@@ -122,19 +121,22 @@ public class LoginActivity extends AppCompatActivity {
     }
 
     /**
-     * Updates the existing user profile if necessary.
+     * Updates the existing user profile if necessary. On most logins nothing changes, and the patch is empty.
      *
      * @param dataSnapshot the current data snapshot of the user's profile
      * @param user the currently signed-in Firebase user
-     * @return the updated user profile
+     * @return the changes to the existing profile, or null if there is no profile yet
      */
-    private UserProfile updateExistingProfile(DataSnapshot dataSnapshot, FirebaseUser user) {
-        UserProfile existingProfile = dataSnapshot.getValue(UserProfile.class);
-        if (existingProfile != null && user.getDisplayName() != null
-                && !user.getDisplayName().equals(existingProfile.getName())) {
-            existingProfile.setName(user.getDisplayName());
+    private ProfilePatch updateExistingProfile(DataSnapshot dataSnapshot, FirebaseUser user) {
+        UserProfile existingProfile = UserProfileCodec.decode(dataSnapshot, UserProfileCodec.ALL, null);
+        if (existingProfile == null) {
+            return null;
         }
-        return existingProfile != null ? existingProfile : createNewProfile(user);
+        ProfilePatch patch = new ProfilePatch(existingProfile);
+        if (user.getDisplayName() != null) {
+            patch.setName(user.getDisplayName());
+        }
+        return patch;
     }
 
     /**
@@ -157,16 +159,18 @@ public class LoginActivity extends AppCompatActivity {
     /**
      * Updates the user's profile in the Firebase Realtime Database.
      *
-     * @param userRef the database reference for the user's profile
-     * @param profile the user profile to update
+     * @param patch the changes to the user's profile
      */
-    private void updateProfile(DatabaseReference userRef, UserProfile profile) {
-        userRef.setValue(profile).addOnCompleteListener(task -> {
-            if (task.isSuccessful()) {
-                Log.d(TAG, "User profile updated successfully");
+    private void updateProfile(ProfilePatch patch) {
+        userManager.patchProfile(patch, new UserManager.OnUserProfileUpdateListener() {
+            @Override
+            public void onSuccess() {
                 checkProfileAndProceed();
-            } else {
-                Log.e(TAG, "Failed to update user profile", task.getException());
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Log.e(TAG, "Failed to update user profile: " + error);
             }
         });
     }
@@ -4,9 +4,9 @@ import android.Manifest;
 import android.app.PendingIntent;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -22,7 +22,7 @@ import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
 import com.example.epifind.fragments.HomeFragment;
-import com.example.epifind.models.UserProfile;
+import com.example.epifind.geo.GeoDistance;
 import com.example.epifind.services.LocationUpdateService;
 import com.example.epifind.fragments.ProfileFragment;
 import com.example.epifind.R;
@@ -30,6 +30,7 @@ import com.example.epifind.fragments.SOSFragment;
 import com.example.epifind.fragments.SOSResponseFragment;
 import com.example.epifind.fragments.SettingsFragment;
 import com.example.epifind.managers.UserManager;
+import com.example.epifind.utils.DatabaseCache;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.location.FusedLocationProviderClient;
@@ -196,7 +197,8 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * Handles the case where a specific permission has been granted.
-     * Requests the next required permission or starts the location service.
+     * Requests the next required permission or starts the location service. Activity recognition is
+     * requested last and is optional: without it the service samples as if the activity were unknown.
      *
      * @param permission The permission that was granted.
      */
@@ -215,6 +217,11 @@ public class MainActivity extends AppCompatActivity {
             case Manifest.permission.FOREGROUND_SERVICE_LOCATION:
                 startLocationService();
                 updateMapToCurrentLocation();
+                requestPermission(Manifest.permission.ACTIVITY_RECOGNITION);
+                break;
+            case Manifest.permission.ACTIVITY_RECOGNITION:
+                // Restart the service so it adapts its sampling to the user's activity
+                startLocationService();
                 break;
         }
     }
@@ -299,11 +306,19 @@ public class MainActivity extends AppCompatActivity {
     private void setupSOSRequestListener() {
         String userId = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
         sosRequestRef = FirebaseDatabase.getInstance().getReference("sos_notifications").child(userId);
+        long startedAt = SystemClock.elapsedRealtime();
         sosRequestListener = new ValueEventListener() {
+            private boolean loaded;
+
             @Override
             public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                if (!loaded) {
+                    loaded = true;
+                    DatabaseCache.recordRead(DatabaseCache.READ_INBOX, startedAt);
+                }
                 if (dataSnapshot.exists() && !isSOSResponseShowing) {
                     String requesterId = dataSnapshot.child("requester").getValue(String.class);
+                    String sessionId = dataSnapshot.child("sessionId").getValue(String.class);
                     Double latitude = dataSnapshot.child("latitude").getValue(Double.class);
                     Double longitude = dataSnapshot.child("longitude").getValue(Double.class);
                     Boolean active = dataSnapshot.child("active").getValue(Boolean.class);
@@ -314,14 +329,13 @@ public class MainActivity extends AppCompatActivity {
                             FusedLocationProviderClient fusedLocationClient = LocationServices.getFusedLocationProviderClient(MainActivity.this);
                             fusedLocationClient.getLastLocation().addOnSuccessListener(location -> {
                                 if (location != null) {
-                                    float[] distance = new float[1];
-                                    Location.distanceBetween(latitude, longitude,
-                                            location.getLatitude(), location.getLongitude(), distance);
+                                    double distance = GeoDistance.meters(latitude, longitude,
+                                            location.getLatitude(), location.getLongitude(), GeoDistance.Precision.EXACT);
 
-                                    Log.d("MainActivity", "Received SOS notification. Distance: " + distance[0] + " meters");
+                                    Log.d("MainActivity", "Received SOS notification. Distance: " + distance + " meters");
 
                                     showSOSNotification();
-                                    showSOSResponseFragment(requesterId, latitude, longitude);
+                                    showSOSResponseFragment(requesterId, sessionId, latitude, longitude);
                                     isSOSResponseShowing = true;
                                 } else {
                                     Log.e("MainActivity", "Unable to get current location");
@@ -335,7 +349,6 @@ public class MainActivity extends AppCompatActivity {
                     }
                 } else if (!dataSnapshot.exists()) {
                     isSOSResponseShowing = false;
-                    resetUserStatus();
                 }
             }
 
@@ -347,27 +360,19 @@ public class MainActivity extends AppCompatActivity {
         sosRequestRef.addValueEventListener(sosRequestListener);
     }
 
-    /**
-     * Resets the user's status to AVAILABLE in the Firebase Realtime Database.
-     */
-    private void resetUserStatus() {
-        String userId = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
-        DatabaseReference userRef = FirebaseDatabase.getInstance().getReference("users").child(userId);
-        userRef.child("responseStatus").setValue(UserProfile.ResponseStatus.AVAILABLE.name())
-                .addOnFailureListener(e -> Log.e(TAG, "Failed to reset user status", e));
-    }
-
     /**
      * Displays the SOS response fragment to the user.
      *
      * @param requesterId The ID of the user who sent the SOS request.
+     * @param sessionId   The ID of the SOS session to respond to.
      * @param latitude    The latitude of the SOS location.
      * @param longitude   The longitude of the SOS location.
      */
-    private void showSOSResponseFragment(String requesterId, double latitude, double longitude) {
+    private void showSOSResponseFragment(String requesterId, String sessionId, double latitude, double longitude) {
         SOSResponseFragment fragment = new SOSResponseFragment();
         Bundle args = new Bundle();
         args.putString("requesterId", requesterId);
+        args.putString("sessionId", sessionId);
         args.putDouble("latitude", latitude);
         args.putDouble("longitude", longitude);
         fragment.setArguments(args);
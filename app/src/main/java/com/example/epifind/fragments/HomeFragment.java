@@ -95,10 +95,11 @@ public class HomeFragment extends Fragment implements OnMapReadyCallback {
     }
 
     /**
-     * Checks if the user's EpiPen is close to expiration and shows an alert if necessary.
+     * Checks if the user's EpiPen is close to expiration and shows an alert if necessary. The expiry date
+     * stored on the device is used, so this does not wait for the network.
      */
     private void checkEpiPenExpiry() {
-        EpiPenExpiryChecker.checkEpiPenExpiry(userManager, this::handleEpiPenExpiry);
+        EpiPenExpiryChecker.checkEpiPenExpiry(requireContext(), userManager, this::handleEpiPenExpiry);
     }
 
     /**
@@ -139,7 +140,8 @@ public class HomeFragment extends Fragment implements OnMapReadyCallback {
         binding.sosButton.setOnTouchListener((v, event) -> {
             switch (event.getAction()) {
                 case MotionEvent.ACTION_DOWN:
-                    sosManager.startSOSActivation(new SOSManager.SOSActivationListener() {
+                    double searchRadiusMeters = SOSFragment.loadSearchRadius(requireActivity()) * 1000;
+                    sosManager.startSOSActivation(searchRadiusMeters, new SOSManager.SOSActivationListener() {
                         @Override
                         public void onSOSActivationStarted() {
                             // You can add any UI changes here, like changing the button color
@@ -173,23 +175,13 @@ public class HomeFragment extends Fragment implements OnMapReadyCallback {
     }
 
     /**
-     * Activates the SOS mode and updates the user's profile with the SOS status.
+     * Shows the SOS screen once the SOS request is active and the user is marked as needing help.
      */
     private void activateSOS() {
-        sosManager.updateSOSState(true, new UserManager.OnUserProfileUpdateListener() {
-            @Override
-            public void onSuccess() {
-                Toast.makeText(requireContext(), "SOS Activated", Toast.LENGTH_SHORT).show();
-                if (getActivity() instanceof MainActivity) {
-                    ((MainActivity) getActivity()).navigateToSOSFragment();
-                }
-            }
-
-            @Override
-            public void onFailure(String error) {
-                Toast.makeText(requireContext(), "Failed to activate SOS: " + error, Toast.LENGTH_SHORT).show();
-            }
-        });
+        Toast.makeText(requireContext(), "SOS Activated", Toast.LENGTH_SHORT).show();
+        if (getActivity() instanceof MainActivity) {
+            ((MainActivity) getActivity()).navigateToSOSFragment();
+        }
     }
 
     /**
@@ -238,6 +230,7 @@ public class HomeFragment extends Fragment implements OnMapReadyCallback {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        sosManager.release();
         binding = null;
     }
 
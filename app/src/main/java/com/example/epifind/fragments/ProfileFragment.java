@@ -20,14 +20,15 @@ import com.example.epifind.R;
 import com.example.epifind.activities.LoginActivity;
 import com.example.epifind.adapters.AllergyAdapter;
 import com.example.epifind.managers.UserManager;
+import com.example.epifind.models.Allergen;
+import com.example.epifind.models.ProfilePatch;
 import com.example.epifind.models.UserProfile;
 import com.example.epifind.activities.MainActivity;
 import com.example.epifind.databinding.FragmentProfileBinding;
+import com.example.epifind.utils.EpiPenExpiryChecker;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 
@@ -78,7 +79,7 @@ public class ProfileFragment extends Fragment {
      * Sets up the list of possible allergies that the user can select.
      */
     private void setupAllergyList() {
-        allergyList = new ArrayList<>(Arrays.asList("Peanuts", "Tree nuts", "Milk", "Eggs", "Wheat", "Soy", "Fish", "Shellfish"));
+        allergyList = Allergen.displayNames();
         selectedAllergies = new boolean[allergyList.size()];
     }
 
@@ -152,7 +153,8 @@ public class ProfileFragment extends Fragment {
         binding.mainLBLName.setText(userProfile.getName() != null ? userProfile.getName() : "");
         binding.mainLBLEmail.setText(currentUser.getEmail() != null ? currentUser.getEmail() : "");
         binding.mainLBLPhone.setText(currentUser.getPhoneNumber() != null ? currentUser.getPhoneNumber() : "");
-        binding.textViewSelectedAllergies.setText(userProfile.getAllergies() != null ? userProfile.getAllergies() : "");
+        Allergen.select(userProfile.getAllergenMask(), selectedAllergies);
+        binding.textViewSelectedAllergies.setText(userProfile.getAllergies());
         binding.textViewEpiPenExpiry.setText(userProfile.getEpiPenExpiry() != null ? userProfile.getEpiPenExpiry() : "");
         selectedEpiPenExpiry = userProfile.getEpiPenExpiry() != null ? userProfile.getEpiPenExpiry() : "";
 
@@ -172,9 +174,7 @@ public class ProfileFragment extends Fragment {
      * @return True if the profile is incomplete, false otherwise.
      */
     private boolean isProfileIncomplete(UserProfile userProfile) {
-        return userProfile.getName() == null || userProfile.getName().isEmpty() ||
-                userProfile.getAllergies() == null || userProfile.getAllergies().isEmpty() ||
-                userProfile.getEpiPenExpiry() == null || userProfile.getEpiPenExpiry().isEmpty();
+        return !userProfile.isComplete();
     }
 
     /**
@@ -212,14 +212,7 @@ public class ProfileFragment extends Fragment {
     private void updateSelectedAllergiesText() {
         if (binding == null) return;
 
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < selectedAllergies.length; i++) {
-            if (selectedAllergies[i]) {
-                if (sb.length() > 0) sb.append(", ");
-                sb.append(allergyList.get(i));
-            }
-        }
-        binding.textViewSelectedAllergies.setText(sb.toString());
+        binding.textViewSelectedAllergies.setText(Allergen.displayText(Allergen.maskOf(selectedAllergies)));
     }
 
     /**
@@ -280,7 +273,7 @@ public class ProfileFragment extends Fragment {
         if (binding == null || !isAdded()) return;
 
         String name = binding.editTextName.getText().toString().trim();
-        String allergies = binding.textViewSelectedAllergies.getText().toString();
+        int allergens = Allergen.maskOf(selectedAllergies);
         String epiPenExpiry = binding.textViewEpiPenExpiry.getText().toString();
         boolean hasEpiPen = binding.switchHasEpipen.isChecked();
 
@@ -292,16 +285,13 @@ public class ProfileFragment extends Fragment {
         userManager.getUserProfile(new UserManager.OnUserProfileFetchListener() {
             @Override
             public void onSuccess(UserProfile existingProfile) {
-                UserProfile updatedProfile = new UserProfile(
-                        name,
-                        allergies,
-                        hasEpiPen ? epiPenExpiry : "",
-                        existingProfile.getLatitude(),
-                        existingProfile.getLongitude(),
-                        hasEpiPen
-                );
-
-                userManager.createOrUpdateUser(updatedProfile, new UserManager.OnUserProfileUpdateListener() {
+                ProfilePatch patch = new ProfilePatch(existingProfile)
+                        .setName(name)
+                        .setAllergens(allergens)
+                        .setEpiPenExpiry(hasEpiPen ? epiPenExpiry : "")
+                        .setHasEpiPen(hasEpiPen);
+
+                userManager.patchProfile(patch, new UserManager.OnUserProfileUpdateListener() {
                     @Override
                     public void onSuccess() {
                         if (isAdded()) {
@@ -335,6 +325,8 @@ public class ProfileFragment extends Fragment {
      * Logs the user out and navigates them to the LoginActivity.
      */
     private void logout() {
+        userManager.clearProfileCache();
+        EpiPenExpiryChecker.clearExpiry(requireContext());
         mAuth.signOut();
         Intent intent = new Intent(getActivity(), LoginActivity.class);
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
@@ -2,11 +2,14 @@ package com.example.epifind.fragments;
 
 import android.Manifest;
 import android.annotation.SuppressLint;
+import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -24,9 +27,16 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.epifind.R;
 import com.example.epifind.managers.SOSManager;
+import com.example.epifind.managers.SOSPrefetch;
 import com.example.epifind.adapters.UserAdapter;
+import com.example.epifind.geo.CandidateStore;
+import com.example.epifind.geo.EtaRanker;
+import com.example.epifind.geo.NearestResponderQuery;
+import com.example.epifind.geo.ResponderIndex;
 import com.example.epifind.managers.UserManager;
+import com.example.epifind.models.ProfileView;
 import com.example.epifind.models.UserProfile;
+import com.example.epifind.models.UserProfileCodec;
 import com.example.epifind.activities.MainActivity;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
@@ -46,9 +56,13 @@ import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * SOSFragment is responsible for managing and displaying the SOS functionality in the application.
@@ -67,12 +81,30 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
     private Location currentLocation;
     private SOSManager sosManager;
     private TextView usersCountTextView;
-    private long sosTimestamp;
+    private String sessionId;
+    private DatabaseReference sessionRespondersRef;
+    private ChildEventListener sessionRespondersListener;
+    private Object sosRequestData;
     private SeekBar searchRadiusSeekBar;
     private TextView searchRadiusTextView;
     private float searchRadius; // in KM
     private static final float MIN_SEARCH_RADIUS = 1f; // 1 KM
     private static final float MAX_SEARCH_RADIUS = 10f; // 10 KM
+    public static final int NEAREST_RESPONDERS = 10;
+    private static final long RADIUS_CHANGE_DEBOUNCE_MS = 300;
+    private final Handler radiusChangeHandler = new Handler(Looper.getMainLooper());
+    private final Runnable applySearchRadius = this::applySearchRadius;
+    private NearestResponderQuery nearbyUsersQuery;
+    private SOSPrefetch prefetch;
+    private boolean responseListenerAttached;
+    private final Map<String, UserProfile> candidates = new HashMap<>();
+    // Candidates move often while a search runs; their profiles are decoded into reused instances
+    private final UserProfileCodec.Pool profilePool = new UserProfileCodec.Pool(NEAREST_RESPONDERS * 2);
+    private final Set<String> notifiedUsers = new HashSet<>();
+    private final EtaRanker etaRanker = new EtaRanker(NEAREST_RESPONDERS);
+    private final String[] rankedUserIds = new String[NEAREST_RESPONDERS];
+    private final int[] notifySlots = new int[NEAREST_RESPONDERS];
+    private int requesterAllergens;
 
     @SuppressLint("MissingInflatedId")
     @Nullable
@@ -101,16 +133,30 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
 
         mDatabase = FirebaseDatabase.getInstance().getReference();
         FirebaseAuth.getInstance().getCurrentUser();
+        loadRequesterAllergens();
 
         view.findViewById(R.id.cancelSOSButton).setOnClickListener(v -> cancelSOS());
 
+        prefetch = SOSManager.takePendingPrefetch();
+        if (prefetch != null && prefetch.getLocation() != null) {
+            currentLocation = prefetch.getLocation();
+            sessionId = prefetch.getSessionId();
+            sosRequestData = prefetch.getSosData();
+            notifiedUsers.addAll(prefetch.getNotifiedUserIds());
+            findNearbyUsersFromDatabase();
+        }
+
         return view;
     }
 
     @Override
     public void onMapReady(@NonNull GoogleMap googleMap) {
         mMap = googleMap;
-        getCurrentLocation();
+        if (nearbyUsersQuery != null) {
+            updateMap();
+        } else {
+            getCurrentLocation();
+        }
     }
 
     /**
@@ -147,7 +193,8 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
             @Override
             public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
                 if (dataSnapshot.exists()) {
-                    sosTimestamp = dataSnapshot.child("timestamp").getValue(Long.class);
+                    sessionId = dataSnapshot.child("sessionId").getValue(String.class);
+                    sosRequestData = dataSnapshot.getValue();
                     findNearbyUsersFromDatabase();
                 }
             }
@@ -160,38 +207,184 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
     }
 
     /**
-     * Retrieves the list of users from the database and filters those who have EpiPens and are within the search radius.
+     * Queries the responder projection for the nearest users, widening the search ring by ring up to the
+     * search radius. The projection only contains users who carry a valid EpiPen and do not need help
+     * themselves. Candidates are ranked by estimated time to arrive as they enter and move, the list is
+     * refreshed as each ring loads, and the top-ranked users are notified once the search stops widening;
+     * users who move into the top ranks later are notified as they get there.
      */
     private void findNearbyUsersFromDatabase() {
-        mDatabase.child("users").addValueEventListener(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                nearbyUsersWithEpiPen.clear();
-                for (DataSnapshot userSnapshot : dataSnapshot.getChildren()) {
-                    UserProfile user = userSnapshot.getValue(UserProfile.class);
-                    if (user != null && user.getHasEpiPen() && !user.getNeedsHelp()) {
-                        user.setUserId(userSnapshot.getKey());
-                        float[] distance = new float[1];
-                        Location.distanceBetween(currentLocation.getLatitude(), currentLocation.getLongitude(),
-                                user.getLatitude(), user.getLongitude(), distance);
-                        if (distance[0] <= searchRadius * 1000) { // new radius
-                            nearbyUsersWithEpiPen.add(user);
+        if (nearbyUsersQuery != null) {
+            nearbyUsersQuery.stop();
+        }
+        candidates.clear();
+        etaRanker.clear();
+
+        nearbyUsersQuery = new NearestResponderQuery(mDatabase.child(ResponderIndex.ROOT),
+                currentLocation.getLatitude(), currentLocation.getLongitude(), NEAREST_RESPONDERS,
+                searchRadius * 1000, new NearestResponderQuery.NearestResponderListener() {
+                    @Override
+                    public boolean onResponderEntered(String userId, DataSnapshot snapshot) {
+                        UserProfile instance = profilePool.acquire();
+                        UserProfile user = ResponderIndex.toProfile(snapshot, instance);
+                        if (user == null || userId.equals(currentUserId())) {
+                            profilePool.release(instance);
+                            return false;
                         }
+                        putCandidate(user);
+                        return true;
                     }
-                }
-                updateUI();
-                sosManager.notifyNearbyUsers(nearbyUsersWithEpiPen);
 
-                setupSOSResponseListener();
+                    @Override
+                    public void onResponderMoved(String userId, DataSnapshot snapshot) {
+                        UserProfile previous = candidates.get(userId);
+                        if (previous == null) return;
+                        UserProfile instance = profilePool.acquire();
+                        UserProfile user = ResponderIndex.toProfile(snapshot, instance);
+                        if (user == null) {
+                            profilePool.release(instance);
+                            return;
+                        }
+                        user.setResponseStatus(previous.getResponseStatus());
+                        putCandidate(user);
+                        releaseProfile(previous);
+                    }
+
+                    @Override
+                    public void onResponderExited(String userId) {
+                        releaseProfile(candidates.remove(userId));
+                        etaRanker.remove(userId);
+                    }
+
+                    @Override
+                    public void onNearestChanged(boolean complete) {
+                        refreshNearbyUsers();
+                        if (complete) {
+                            releasePrefetch();
+                            notifyNewTopRankedUsers();
+                            if (!responseListenerAttached) {
+                                responseListenerAttached = true;
+                                setupSOSResponseListener();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onQueryError(DatabaseError error) {
+                        Toast.makeText(getContext(), "Failed to find nearby users", Toast.LENGTH_SHORT).show();
+                    }
+                });
+        nearbyUsersQuery.start();
+    }
+
+    /**
+     * Detaches the listeners of the prefetched search once this search no longer needs them.
+     */
+    private void releasePrefetch() {
+        if (prefetch != null) {
+            prefetch.release();
+            prefetch = null;
+        }
+    }
+
+    /**
+     * Loads the signed-in user's allergies, usually from the cached profile, so responders who share one can
+     * win ties between equal arrival estimates.
+     */
+    private void loadRequesterAllergens() {
+        UserManager.getInstance().getProfileView(UserProfileCodec.ALLERGIES, new UserManager.OnProfileViewFetchListener() {
+            @Override
+            public void onSuccess(ProfileView profileView) {
+                requesterAllergens = profileView.getAllergenMask();
             }
 
             @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
-                Toast.makeText(getContext(), "Failed to find nearby users", Toast.LENGTH_SHORT).show();
+            public void onFailure(String error) {
+                Log.w(TAG, "Failed to load allergies, ranking by arrival time only: " + error);
             }
         });
     }
 
+    /**
+     * Stores a candidate responder and re-ranks them by their estimated time to arrive. Sharing an allergy
+     * with the requester only breaks ties between equal estimates; it never moves a responder ahead of one
+     * who is closer.
+     *
+     * @param user The candidate responder.
+     */
+    private void putCandidate(UserProfile user) {
+        candidates.put(user.getUserId(), user);
+        double eta = EtaRanker.estimateSeconds(
+                currentLocation.getLatitude(), currentLocation.getLongitude(),
+                user.getLatitude(), user.getLongitude(), user.getSpeed(), user.getBearing(), user.getAccuracy());
+        etaRanker.update(user.getUserId(), eta, (user.getAllergenMask() & requesterAllergens) != 0);
+    }
+
+    /**
+     * Returns a candidate's profile to the pool once it is no longer a candidate, unless the displayed list
+     * still shows it until the next refresh.
+     *
+     * @param user The profile, or null.
+     */
+    private void releaseProfile(UserProfile user) {
+        if (user != null && !nearbyUsersWithEpiPen.contains(user)) {
+            profilePool.release(user);
+        }
+    }
+
+    /**
+     * Rebuilds the displayed list from the top-ranked candidates found so far and updates the UI.
+     */
+    private void refreshNearbyUsers() {
+        int count = etaRanker.ranked(rankedUserIds);
+        nearbyUsersWithEpiPen.clear();
+        for (int i = 0; i < count; i++) {
+            nearbyUsersWithEpiPen.add(candidates.get(rankedUserIds[i]));
+        }
+        updateUI();
+    }
+
+    /**
+     * Notifies the users in the current top ranks who have not been notified yet.
+     */
+    private void notifyNewTopRankedUsers() {
+        CandidateStore store = nearbyUsersQuery.getStore();
+        int count = 0;
+        for (UserProfile user : nearbyUsersWithEpiPen) {
+            int slot = store.slotOf(user.getUserId());
+            if (slot >= 0 && notifiedUsers.add(user.getUserId())) {
+                notifySlots[count++] = slot;
+            }
+        }
+        if (count > 0) {
+            sosManager.notifyNearbyUsers(sosRequestData, store, notifySlots, count, new SOSManager.FanOutListener() {
+                @Override
+                public void onProgress(int delivered, int total) {
+                    Log.d(TAG, "SOS delivered to " + delivered + " of " + total + " users");
+                }
+
+                @Override
+                public void onComplete(int total, long timeToLastDeliveryMs) {
+                    Log.d(TAG, "SOS delivered to all " + total + " users in " + timeToLastDeliveryMs + " ms");
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    Toast.makeText(getContext(), "Failed to notify nearby users: " + error, Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the ID of the signed-in user.
+     *
+     * @return The current user's ID.
+     */
+    private String currentUserId() {
+        return Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
+    }
+
     /**
      * Updates the UI elements such as the map and the list of nearby users.
      */
@@ -257,103 +450,41 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
     }
 
     /**
-     * Cancels the SOS request and resets the nearby users' statuses.
+     * Cancels the SOS request. Recipients observe the cancellation through the session's state.
      */
     private void cancelSOS() {
-        String currentUserId = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
-        DatabaseReference sosRequestsRef = FirebaseDatabase.getInstance().getReference("sos_requests");
-        DatabaseReference latestSosRef = FirebaseDatabase.getInstance().getReference("latest_sos");
-
-        sosRequestsRef.addListenerForSingleValueEvent(new ValueEventListener() {
+        sosManager.cancelSOS(sessionId, new UserManager.OnUserProfileUpdateListener() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                for (DataSnapshot childSnapshot : dataSnapshot.getChildren()) {
-                    String requester = childSnapshot.child("requester").getValue(String.class);
-                    if (requester != null && requester.equals(currentUserId)) {
-                        childSnapshot.getRef().removeValue();
-
-                        // Remove the latest_sos entry
-                        latestSosRef.addListenerForSingleValueEvent(new ValueEventListener() {
-                            @Override
-                            public void onDataChange(@NonNull DataSnapshot latestSosSnapshot) {
-                                String latestSosRequester = latestSosSnapshot.child("requester").getValue(String.class);
-                                if (latestSosRequester != null && latestSosRequester.equals(currentUserId)) {
-                                    latestSosRef.removeValue();
-                                }
-                            }
-
-                            @Override
-                            public void onCancelled(@NonNull DatabaseError databaseError) {
-                                Log.e("cancelSOS", "Failed to remove latest_sos: " + databaseError.getMessage());
-                            }
-                        });
-                    }
+            public void onSuccess() {
+                Toast.makeText(getContext(), "SOS Cancelled", Toast.LENGTH_SHORT).show();
+                if (getActivity() instanceof MainActivity) {
+                    ((MainActivity) getActivity()).navigateToHome();
                 }
-
-                sosManager.updateSOSState(false, new UserManager.OnUserProfileUpdateListener() {
-                    @Override
-                    public void onSuccess() {
-                        Toast.makeText(getContext(), "SOS Cancelled", Toast.LENGTH_SHORT).show();
-                        resetNearbyUsersStatus();
-                        if (getActivity() instanceof MainActivity) {
-                            ((MainActivity) getActivity()).navigateToHome();
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(String error) {
-                        Toast.makeText(getContext(), "Failed to update user status: " + error, Toast.LENGTH_SHORT).show();
-                    }
-                });
             }
 
             @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
-                Toast.makeText(getContext(), "Failed to cancel SOS: " + databaseError.getMessage(), Toast.LENGTH_SHORT).show();
+            public void onFailure(String error) {
+                Toast.makeText(getContext(), "Failed to cancel SOS: " + error, Toast.LENGTH_SHORT).show();
             }
         });
     }
 
     /**
-     * Resets the response status of nearby users to "AVAILABLE".
-     */
-    private void resetNearbyUsersStatus() {
-        DatabaseReference usersRef = FirebaseDatabase.getInstance().getReference("users");
-        usersRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                for (DataSnapshot userSnapshot : dataSnapshot.getChildren()) {
-                    userSnapshot.getRef().child("responseStatus").setValue(UserProfile.ResponseStatus.AVAILABLE.name());
-                }
-            }
-
-            @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
-                Log.e("SOSFragment", "Failed to reset users status", databaseError.toException());
-            }
-        });
-    }
-
-    /**
-     * Sets up a listener for SOS responses from nearby users.
+     * Sets up a listener for the responses recorded in this request's SOS session.
      */
     private void setupSOSResponseListener() {
-        String currentUserId = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
-        DatabaseReference sosResponsesRef = FirebaseDatabase.getInstance().getReference("sos_responses").child(currentUserId);
-        sosResponsesRef.addChildEventListener(new ChildEventListener() {
+        if (sessionId == null) return;
+        sessionRespondersRef = FirebaseDatabase.getInstance().getReference(SOSManager.SESSIONS_ROOT)
+                .child(sessionId).child("responders");
+        sessionRespondersListener = new ChildEventListener() {
             @Override
             public void onChildAdded(@NonNull DataSnapshot dataSnapshot, String previousChildName) {
-                String responderId = dataSnapshot.getKey();
-                Boolean canHelp = dataSnapshot.child("canHelp").getValue(Boolean.class);
-                Long responseTimestamp = dataSnapshot.child("timestamp").getValue(Long.class);
-                if (responderId != null && canHelp != null && responseTimestamp != null && responseTimestamp > sosTimestamp) {
-                    updateNearbyUserStatus(responderId, canHelp);
-                }
+                onResponseChanged(dataSnapshot);
             }
 
             @Override
             public void onChildChanged(@NonNull DataSnapshot snapshot, String previousChildName) {
-                // Handle changes if necessary
+                onResponseChanged(snapshot);
             }
 
             @Override
@@ -370,21 +501,36 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
             public void onCancelled(@NonNull DatabaseError error) {
                 Log.e(TAG, "SOS response listener cancelled", error.toException());
             }
-        });
+        };
+        sessionRespondersRef.addChildEventListener(sessionRespondersListener);
+    }
+
+    /**
+     * Applies a responder's recorded status to the displayed list.
+     *
+     * @param responseSnapshot The snapshot of the responder's entry in the session.
+     */
+    private void onResponseChanged(DataSnapshot responseSnapshot) {
+        String responderId = responseSnapshot.getKey();
+        String status = responseSnapshot.child("status").getValue(String.class);
+        if (responderId == null || status == null) return;
+        try {
+            updateNearbyUserStatus(responderId, UserProfile.ResponseStatus.valueOf(status));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unknown response status: " + status);
+        }
     }
 
     /**
      * Updates the response status of a nearby user based on their SOS response.
      *
-     * @param userId  The ID of the user whose status needs to be updated.
-     * @param canHelp Whether the user is able to help.
+     * @param userId The ID of the user whose status needs to be updated.
+     * @param status The status the user responded with.
      */
-    private void updateNearbyUserStatus(String userId, boolean canHelp) {
-        for (UserProfile user : nearbyUsersWithEpiPen) {
-            if (user.getUserId().equals(userId)) {
-                user.setResponseStatus(canHelp ? UserProfile.ResponseStatus.RESPONDING : UserProfile.ResponseStatus.UNAVAILABLE);
-                break;
-            }
+    private void updateNearbyUserStatus(String userId, UserProfile.ResponseStatus status) {
+        UserProfile user = candidates.get(userId);
+        if (user != null) {
+            user.setResponseStatus(status);
         }
         updateUI();
     }
@@ -403,6 +549,8 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 searchRadius = MIN_SEARCH_RADIUS + (MAX_SEARCH_RADIUS - MIN_SEARCH_RADIUS) * progress / 100f;
                 updateSearchRadiusDisplay();
+                radiusChangeHandler.removeCallbacks(applySearchRadius);
+                radiusChangeHandler.postDelayed(applySearchRadius, RADIUS_CHANGE_DEBOUNCE_MS);
             }
 
             @Override
@@ -411,11 +559,22 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
                 saveSearchRadius(searchRadius);
-                findNearbyUsersWithEpiPen();
+                radiusChangeHandler.removeCallbacks(applySearchRadius);
+                applySearchRadius();
             }
         });
     }
 
+    /**
+     * Applies the current search radius to the running search. Already loaded candidates are re-filtered
+     * locally, and only the cells a larger radius newly needs are fetched.
+     */
+    private void applySearchRadius() {
+        if (nearbyUsersQuery != null) {
+            nearbyUsersQuery.setMaxRadius(searchRadius * 1000);
+        }
+    }
+
     /**
      * Updates the display of the search radius.
      */
@@ -441,7 +600,17 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
      * @return The saved search radius, or a default value of 2 km if not found.
      */
     private float loadSearchRadius() {
-        SharedPreferences prefs = requireActivity().getPreferences(Context.MODE_PRIVATE);
+        return loadSearchRadius(requireActivity());
+    }
+
+    /**
+     * Loads the search radius saved by the SOS screen of an activity.
+     *
+     * @param activity The activity hosting the SOS screen.
+     * @return The saved search radius in km, or a default value of 2 km if not found.
+     */
+    public static float loadSearchRadius(Activity activity) {
+        SharedPreferences prefs = activity.getPreferences(Context.MODE_PRIVATE);
         return prefs.getFloat("search_radius", 2f); // 2 km default
     }
 
@@ -461,6 +630,14 @@ public class SOSFragment extends Fragment implements OnMapReadyCallback {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        radiusChangeHandler.removeCallbacks(applySearchRadius);
+        if (sessionRespondersListener != null) {
+            sessionRespondersRef.removeEventListener(sessionRespondersListener);
+        }
+        if (nearbyUsersQuery != null) {
+            nearbyUsersQuery.stop();
+        }
+        releasePrefetch();
         mapView.onDestroy();
     }
 
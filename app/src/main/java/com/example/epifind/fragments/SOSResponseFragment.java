@@ -16,20 +16,23 @@ import androidx.fragment.app.Fragment;
 
 import com.example.epifind.activities.MainActivity;
 import com.example.epifind.databinding.FragmentSosResponseBinding;
+import com.example.epifind.managers.SOSManager;
 import com.example.epifind.managers.UserManager;
+import com.example.epifind.models.ProfileView;
 import com.example.epifind.models.UserProfile;
+import com.example.epifind.models.UserProfileCodec;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.ValueEventListener;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -43,9 +46,12 @@ public class SOSResponseFragment extends Fragment implements OnMapReadyCallback
 
     private FragmentSosResponseBinding binding;
     private String requesterId;
+    private String sessionId;
     private double latitude;
     private double longitude;
     private UserManager userManager;
+    private DatabaseReference sessionStateRef;
+    private ValueEventListener sessionStateListener;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -62,6 +68,7 @@ public class SOSResponseFragment extends Fragment implements OnMapReadyCallback
         initializeMap(savedInstanceState);
         setupButtons();
         loadRequesterInfo();
+        listenForCancellation();
         return binding.getRoot();
     }
 
@@ -71,6 +78,7 @@ public class SOSResponseFragment extends Fragment implements OnMapReadyCallback
     private void extractArguments() {
         if (getArguments() != null) {
             requesterId = getArguments().getString("requesterId");
+            sessionId = getArguments().getString("sessionId");
             latitude = getArguments().getDouble("latitude");
             longitude = getArguments().getDouble("longitude");
         }
@@ -98,10 +106,10 @@ public class SOSResponseFragment extends Fragment implements OnMapReadyCallback
      * Loads the requester's information and displays it in the UI.
      */
     private void loadRequesterInfo() {
-        userManager.getUserProfileById(requesterId, new UserManager.OnUserProfileFetchListener() {
+        userManager.getProfileView(requesterId, UserProfileCodec.NAME, new UserManager.OnProfileViewFetchListener() {
             @Override
-            public void onSuccess(UserProfile userProfile) {
-                String info = String.format("%s needs help!", userProfile.getName());
+            public void onSuccess(ProfileView requester) {
+                String info = String.format("%s needs help!", requester.getName());
                 binding.userInfoTextView.setText(info);
             }
 
@@ -115,23 +123,51 @@ public class SOSResponseFragment extends Fragment implements OnMapReadyCallback
     }
 
     /**
-     * Sends the user's response to the SOS request.
+     * Listens to the state of the SOS session and leaves the screen once the requester cancels it.
+     */
+    private void listenForCancellation() {
+        if (sessionId == null) return;
+        sessionStateRef = FirebaseDatabase.getInstance().getReference(SOSManager.SESSIONS_ROOT)
+                .child(sessionId).child("state");
+        sessionStateListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                if (SOSManager.STATE_CANCELLED.equals(snapshot.getValue(String.class))) {
+                    Toast.makeText(getContext(), "The SOS request was cancelled", Toast.LENGTH_SHORT).show();
+                    removeSOSNotification();
+                    navigateToHome();
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Failed to listen to SOS session state: " + error.getMessage());
+            }
+        };
+        sessionStateRef.addValueEventListener(sessionStateListener);
+    }
+
+    /**
+     * Sends the user's response to the SOS request, recorded in the request's session.
      *
      * @param canHelp Indicates whether the user can help or not.
      */
     private void respondToSOS(boolean canHelp) {
-        String currentUserId = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
-        DatabaseReference responseRef = FirebaseDatabase.getInstance().getReference("sos_responses")
-                .child(requesterId).child(currentUserId);
-
-        Map<String, Object> response = new HashMap<>();
-        response.put("canHelp", canHelp);
-        response.put("timestamp", ServerValue.TIMESTAMP);
+        if (sessionId == null) {
+            Toast.makeText(getContext(), "This SOS request is no longer active", Toast.LENGTH_SHORT).show();
+            navigateToHome();
+            return;
+        }
 
-        responseRef.setValue(response).addOnCompleteListener(task -> {
-            if (task.isSuccessful()) {
+        UserProfile.ResponseStatus status = canHelp ? UserProfile.ResponseStatus.RESPONDING : UserProfile.ResponseStatus.UNAVAILABLE;
+        userManager.updateUserResponseStatus(sessionId, status, new UserManager.OnUserProfileUpdateListener() {
+            @Override
+            public void onSuccess() {
                 handleSuccessfulResponse(canHelp);
-            } else {
+            }
+
+            @Override
+            public void onFailure(String error) {
                 Toast.makeText(getContext(), "Failed to send response", Toast.LENGTH_SHORT).show();
             }
         });
@@ -143,7 +179,6 @@ public class SOSResponseFragment extends Fragment implements OnMapReadyCallback
      * @param canHelp Indicates whether the user can help or not.
      */
     private void handleSuccessfulResponse(boolean canHelp) {
-        updateUserStatus();
         Toast.makeText(getContext(), "Response sent", Toast.LENGTH_SHORT).show();
         updateSOSRequest();
         removeSOSNotification();
@@ -156,23 +191,6 @@ public class SOSResponseFragment extends Fragment implements OnMapReadyCallback
         }
     }
 
-    /**
-     * Updates the user's status in the UserManager.
-     */
-    private void updateUserStatus() {
-        userManager.updateUserResponseStatus(UserProfile.ResponseStatus.AVAILABLE, new UserManager.OnUserProfileUpdateListener() {
-            @Override
-            public void onSuccess() {
-                Log.d(TAG, "User status updated successfully");
-            }
-
-            @Override
-            public void onFailure(String error) {
-                Log.e(TAG, "Failed to update user status: " + error);
-            }
-        });
-    }
-
     /**
      * Updates the SOS request to mark it as inactive.
      */
@@ -247,6 +265,9 @@ public class SOSResponseFragment extends Fragment implements OnMapReadyCallback
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (sessionStateRef != null && sessionStateListener != null) {
+            sessionStateRef.removeEventListener(sessionStateListener);
+        }
         binding.mapView.onDestroy();
     }
 
@@ -0,0 +1,262 @@
+package com.example.epifind.geo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CandidateStore holds candidate responders as parallel primitive arrays indexed by an int slot.
+ * User IDs are interned to slots once, when a candidate is first seen; coordinates are kept in radians
+ * together with the cosine of the latitude, so the distance filter runs over plain arrays and allocates
+ * nothing per candidate or per query. Slots of removed candidates are recycled.
+ */
+public class CandidateStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<String, Integer> slotsById = new HashMap<>();
+    private final BitSet eligible = new BitSet();
+    private String[] userIds = new String[INITIAL_CAPACITY];
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private double[] cosLatitudes = new double[INITIAL_CAPACITY];
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int slotCount;
+
+    /**
+     * Stores a candidate's location, interning their ID to a slot the first time they are seen.
+     * New candidates are eligible until marked otherwise.
+     *
+     * @param userId    The ID of the candidate.
+     * @param latitude  The latitude of the candidate in degrees.
+     * @param longitude The longitude of the candidate in degrees.
+     * @return The slot of the candidate.
+     */
+    public int put(String userId, double latitude, double longitude) {
+        Integer existing = slotsById.get(userId);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+        } else {
+            slot = freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+            ensureCapacity(slotCount);
+            slotsById.put(userId, slot);
+            userIds[slot] = userId;
+            eligible.set(slot);
+        }
+        double latRad = Math.toRadians(latitude);
+        latitudes[slot] = latRad;
+        longitudes[slot] = Math.toRadians(longitude);
+        cosLatitudes[slot] = Math.cos(latRad);
+        return slot;
+    }
+
+    /**
+     * Removes a candidate and releases their slot for reuse.
+     *
+     * @param userId The ID of the candidate.
+     * @return The slot the candidate occupied, or -1 if they were not stored.
+     */
+    public int remove(String userId) {
+        Integer slot = slotsById.remove(userId);
+        if (slot == null) {
+            return -1;
+        }
+        userIds[slot] = null;
+        eligible.clear(slot);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        return slot;
+    }
+
+    /**
+     * Removes every candidate.
+     */
+    public void clear() {
+        slotsById.clear();
+        eligible.clear();
+        Arrays.fill(userIds, 0, slotCount, null);
+        freeCount = 0;
+        slotCount = 0;
+    }
+
+    /**
+     * Gets the slot of a candidate.
+     *
+     * @param userId The ID of the candidate.
+     * @return The slot of the candidate, or -1 if they are not stored.
+     */
+    public int slotOf(String userId) {
+        Integer slot = slotsById.get(userId);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Gets the ID of the candidate in a slot.
+     *
+     * @param slot The slot.
+     * @return The ID of the candidate, or null if the slot is free.
+     */
+    public String userIdAt(int slot) {
+        return userIds[slot];
+    }
+
+    /**
+     * Gets the latitude of the candidate in a slot.
+     *
+     * @param slot The slot.
+     * @return The latitude in degrees.
+     */
+    public double latitudeAt(int slot) {
+        return Math.toDegrees(latitudes[slot]);
+    }
+
+    /**
+     * Gets the longitude of the candidate in a slot.
+     *
+     * @param slot The slot.
+     * @return The longitude in degrees.
+     */
+    public double longitudeAt(int slot) {
+        return Math.toDegrees(longitudes[slot]);
+    }
+
+    /**
+     * Marks whether the candidate in a slot should be returned by the distance filter.
+     *
+     * @param slot     The slot.
+     * @param eligible True if the candidate is eligible, false otherwise.
+     */
+    public void setEligible(int slot, boolean eligible) {
+        if (userIds[slot] != null) {
+            this.eligible.set(slot, eligible);
+        }
+    }
+
+    /**
+     * Checks whether the candidate in a slot is eligible.
+     *
+     * @param slot The slot.
+     * @return True if the slot holds an eligible candidate, false otherwise.
+     */
+    public boolean isEligible(int slot) {
+        return eligible.get(slot);
+    }
+
+    /**
+     * Gets the number of stored candidates.
+     *
+     * @return The number of candidates.
+     */
+    public int size() {
+        return slotsById.size();
+    }
+
+    /**
+     * Gets the number of slots in use or released, which bounds every slot number handed out.
+     *
+     * @return The slot capacity.
+     */
+    public int capacity() {
+        return slotCount;
+    }
+
+    /**
+     * Writes the slots of all eligible candidates within a radius of a location into a buffer.
+     *
+     * @param latitude     The latitude of the location in degrees.
+     * @param longitude    The longitude of the location in degrees.
+     * @param radiusMeters The radius in meters.
+     * @param out          The buffer that receives the matching slots.
+     * @return The number of slots written, at most the length of the buffer.
+     */
+    public int filterWithin(double latitude, double longitude, double radiusMeters, int[] out) {
+        double latRad = Math.toRadians(latitude);
+        double lonRad = Math.toRadians(longitude);
+        double cosLat = Math.cos(latRad);
+        double threshold = haversineThreshold(radiusMeters);
+        int count = 0;
+        for (int slot = eligible.nextSetBit(0); slot >= 0 && count < out.length; slot = eligible.nextSetBit(slot + 1)) {
+            if (haversineTerm(slot, latRad, lonRad, cosLat) <= threshold) {
+                out[count++] = slot;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether the candidate in a slot is within a prepared radius of a location.
+     *
+     * @param slot      The slot.
+     * @param latRad    The latitude of the location in radians.
+     * @param lonRad    The longitude of the location in radians.
+     * @param cosLat    The cosine of the location's latitude.
+     * @param threshold The haversine threshold of the radius, see {@link #haversineThreshold(double)}.
+     * @return True if the candidate is within the radius, false otherwise.
+     */
+    public boolean isWithin(int slot, double latRad, double lonRad, double cosLat, double threshold) {
+        return haversineTerm(slot, latRad, lonRad, cosLat) <= threshold;
+    }
+
+    /**
+     * Calculates the distance from a location to the candidate in a slot.
+     *
+     * @param slot      The slot.
+     * @param latitude  The latitude of the location in degrees.
+     * @param longitude The longitude of the location in degrees.
+     * @return The great-circle distance in meters.
+     */
+    public double distanceMeters(int slot, double latitude, double longitude) {
+        double latRad = Math.toRadians(latitude);
+        double a = haversineTerm(slot, latRad, Math.toRadians(longitude), Math.cos(latRad));
+        return 2 * GeoDistance.EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Converts a radius into the value the haversine term of a point within the radius cannot exceed,
+     * so that the filter compares without evaluating asin and sqrt per candidate.
+     *
+     * @param radiusMeters The radius in meters.
+     * @return The haversine threshold of the radius.
+     */
+    public static double haversineThreshold(double radiusMeters) {
+        double halfAngle = radiusMeters / (2 * GeoDistance.EARTH_RADIUS_METERS);
+        if (halfAngle >= Math.PI / 2) {
+            return 1;
+        }
+        double s = Math.sin(halfAngle);
+        return s * s;
+    }
+
+    /**
+     * Evaluates the haversine term between a location and the candidate in a slot.
+     *
+     * @param slot   The slot.
+     * @param latRad The latitude of the location in radians.
+     * @param lonRad The longitude of the location in radians.
+     * @param cosLat The cosine of the location's latitude.
+     * @return The haversine term, which grows monotonically with distance.
+     */
+    private double haversineTerm(int slot, double latRad, double lonRad, double cosLat) {
+        double sinDLat = Math.sin((latitudes[slot] - latRad) / 2);
+        double sinDLon = Math.sin((longitudes[slot] - lonRad) / 2);
+        return sinDLat * sinDLat + cosLat * cosLatitudes[slot] * sinDLon * sinDLon;
+    }
+
+    /**
+     * Grows the parallel arrays so that they can hold the given number of slots.
+     *
+     * @param required The number of slots required.
+     */
+    private void ensureCapacity(int required) {
+        if (required <= userIds.length) return;
+        int capacity = Math.max(required, userIds.length * 2);
+        userIds = Arrays.copyOf(userIds, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        cosLatitudes = Arrays.copyOf(cosLatitudes, capacity);
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.epifind.geo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * EtaRanker keeps the K candidates with the lowest estimated time to arrive at a requester.
+ * The top K are held in a bounded max-heap, so an update costs O(log K): a candidate that improves is
+ * sifted into place, and a newcomer only displaces the current worst. The heap is rebuilt from all
+ * candidates only when a member of the top K gets worse or leaves, since a candidate outside it may
+ * now belong in it.
+ *
+ * <p>Estimates are ranked in buckets of {@link #TIE_SECONDS}: within a bucket, preferred candidates go first
+ * and the rest are ordered by their exact estimates. The estimates are far less precise than a second, so
+ * candidates in the same bucket are effectively tied, while a preference never outweighs a difference of a
+ * whole bucket.
+ */
+public class EtaRanker {
+    public static final double WALKING_SPEED_MPS = 1.4;
+    public static final double TIE_SECONDS = 1;
+    private static final double MIN_TRAVEL_SPEED_MPS = 2.5;
+    private static final double TURN_AROUND_SECONDS = 60;
+    private static final double ACCURACY_WEIGHT = 0.5;
+
+    /**
+     * A ranked candidate and its position in the heap.
+     */
+    private static final class Entry {
+        final String userId;
+        double eta;
+        long bucket;
+        boolean preferred;
+        int heapIndex = -1;
+
+        Entry(String userId) {
+            this.userId = userId;
+        }
+    }
+
+    private final int k;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Entry[] heap;
+    private final Entry[] sorted;
+    private int heapSize;
+    private int rebuilds;
+
+    /**
+     * Constructor for EtaRanker.
+     *
+     * @param k The number of top candidates to keep.
+     */
+    public EtaRanker(int k) {
+        this.k = k;
+        this.heap = new Entry[k];
+        this.sorted = new Entry[k];
+    }
+
+    /**
+     * Estimates how long a responder needs to reach a target. Responders who are standing or walking are
+     * assumed to cover the straight-line distance on foot. Faster responders are assumed to keep their
+     * current speed, plus a delay for turning around that grows with how far their heading points away
+     * from the target. Uncertain locations are pushed back by half their accuracy radius.
+     *
+     * @param targetLat The latitude of the target in degrees.
+     * @param targetLon The longitude of the target in degrees.
+     * @param latitude  The latitude of the responder in degrees.
+     * @param longitude The longitude of the responder in degrees.
+     * @param speed     The speed of the responder in meters per second.
+     * @param bearing   The bearing of the responder in degrees.
+     * @param accuracy  The accuracy of the responder's location in meters.
+     * @return The estimated time to arrive in seconds.
+     */
+    public static double estimateSeconds(double targetLat, double targetLon, double latitude, double longitude,
+                                         float speed, float bearing, float accuracy) {
+        double distance = GeoDistance.haversineMeters(latitude, longitude, targetLat, targetLon)
+                + ACCURACY_WEIGHT * accuracy;
+        double walking = distance / WALKING_SPEED_MPS;
+        if (speed < MIN_TRAVEL_SPEED_MPS) {
+            return walking;
+        }
+        double offCourse = Math.toRadians(bearing - GeoDistance.bearingDegrees(latitude, longitude, targetLat, targetLon));
+        double travelling = distance / speed + TURN_AROUND_SECONDS * (1 - Math.cos(offCourse)) / 2;
+        return Math.min(walking, travelling);
+    }
+
+    /**
+     * Adds a candidate or updates their estimated time to arrive.
+     *
+     * @param userId     The ID of the candidate.
+     * @param etaSeconds The estimated time to arrive in seconds.
+     */
+    public void update(String userId, double etaSeconds) {
+        update(userId, etaSeconds, false);
+    }
+
+    /**
+     * Adds a candidate or updates their estimated time to arrive and their preference as a tie-breaker.
+     *
+     * @param userId     The ID of the candidate.
+     * @param etaSeconds The estimated time to arrive in seconds.
+     * @param preferred  True if the candidate goes first among candidates in the same estimate bucket.
+     */
+    public void update(String userId, double etaSeconds, boolean preferred) {
+        long bucket = bucketOf(etaSeconds);
+        Entry entry = entries.get(userId);
+        if (entry == null) {
+            entry = new Entry(userId);
+            entries.put(userId, entry);
+            entry.eta = etaSeconds;
+            entry.bucket = bucket;
+            entry.preferred = preferred;
+            offer(entry);
+            return;
+        }
+
+        boolean worse = ranksBehind(bucket, preferred, etaSeconds, entry.bucket, entry.preferred, entry.eta);
+        entry.eta = etaSeconds;
+        entry.bucket = bucket;
+        entry.preferred = preferred;
+        if (entry.heapIndex < 0) {
+            offer(entry);
+        } else if (!worse) {
+            siftDown(entry.heapIndex);
+        } else if (entries.size() > heapSize) {
+            rebuild();
+        } else {
+            siftUp(entry.heapIndex);
+        }
+    }
+
+    /**
+     * Removes a candidate.
+     *
+     * @param userId The ID of the candidate.
+     */
+    public void remove(String userId) {
+        Entry entry = entries.remove(userId);
+        if (entry == null || entry.heapIndex < 0) return;
+        if (entries.size() >= heapSize) {
+            rebuild();
+            return;
+        }
+        int index = entry.heapIndex;
+        entry.heapIndex = -1;
+        heapSize--;
+        if (index < heapSize) {
+            place(heap[heapSize], index);
+            siftUp(index);
+            siftDown(index);
+        }
+        heap[heapSize] = null;
+    }
+
+    /**
+     * Removes all candidates.
+     */
+    public void clear() {
+        entries.clear();
+        for (int i = 0; i < heapSize; i++) {
+            heap[i] = null;
+        }
+        heapSize = 0;
+    }
+
+    /**
+     * Writes the IDs of the top candidates, fastest first, into a buffer.
+     *
+     * @param out The buffer that receives the IDs; it should hold K entries.
+     * @return The number of IDs written.
+     */
+    public int ranked(String[] out) {
+        int count = Math.min(heapSize, out.length);
+        System.arraycopy(heap, 0, sorted, 0, heapSize);
+        // Insertion sort is the cheapest option for the handful of entries in the heap
+        for (int i = 1; i < heapSize; i++) {
+            Entry current = sorted[i];
+            int j = i - 1;
+            while (j >= 0 && isSlower(sorted[j], current)) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = current;
+        }
+        for (int i = 0; i < count; i++) {
+            out[i] = sorted[i].userId;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the estimated time to arrive of a candidate.
+     *
+     * @param userId The ID of the candidate.
+     * @return The estimated time in seconds, or NaN if the candidate is not ranked.
+     */
+    public double etaOf(String userId) {
+        Entry entry = entries.get(userId);
+        return entry != null ? entry.eta : Double.NaN;
+    }
+
+    /**
+     * Gets the number of ranked candidates, including those outside the top K.
+     *
+     * @return The number of candidates.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of times the heap was rebuilt from all candidates.
+     *
+     * @return The number of rebuilds.
+     */
+    public int getRebuildCount() {
+        return rebuilds;
+    }
+
+    /**
+     * Adds a candidate that is not in the heap, displacing the current worst if the heap is full.
+     *
+     * @param entry The candidate.
+     */
+    private void offer(Entry entry) {
+        if (heapSize < k) {
+            place(entry, heapSize++);
+            siftUp(entry.heapIndex);
+        } else if (k > 0 && isSlower(heap[0], entry)) {
+            heap[0].heapIndex = -1;
+            place(entry, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Refills the heap from all candidates.
+     */
+    private void rebuild() {
+        rebuilds++;
+        for (int i = 0; i < heapSize; i++) {
+            heap[i].heapIndex = -1;
+            heap[i] = null;
+        }
+        heapSize = 0;
+        for (Entry entry : entries.values()) {
+            offer(entry);
+        }
+    }
+
+    /**
+     * Moves an entry towards the root while it is slower than its parent.
+     *
+     * @param index The heap index of the entry.
+     */
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!isSlower(entry, heap[parent])) break;
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(entry, index);
+    }
+
+    /**
+     * Moves an entry towards the leaves while one of its children is slower.
+     *
+     * @param index The heap index of the entry.
+     */
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && isSlower(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!isSlower(heap[child], entry)) break;
+            place(heap[child], index);
+            index = child;
+        }
+        place(entry, index);
+    }
+
+    /**
+     * Checks whether a candidate ranks behind another.
+     *
+     * @param a The first candidate.
+     * @param b The second candidate.
+     * @return True if a ranks behind b, false otherwise.
+     */
+    private static boolean isSlower(Entry a, Entry b) {
+        return ranksBehind(a.bucket, a.preferred, a.eta, b.bucket, b.preferred, b.eta);
+    }
+
+    /**
+     * Checks whether a candidate ranks behind another: by a later bucket, or within the same bucket by not
+     * being preferred when the other is, or else by a later estimate.
+     *
+     * @param bucketA    The estimate bucket of the first candidate.
+     * @param preferredA Whether the first candidate is preferred.
+     * @param etaA       The estimate of the first candidate in seconds.
+     * @param bucketB    The estimate bucket of the second candidate.
+     * @param preferredB Whether the second candidate is preferred.
+     * @param etaB       The estimate of the second candidate in seconds.
+     * @return True if the first candidate ranks behind the second, false otherwise.
+     */
+    private static boolean ranksBehind(long bucketA, boolean preferredA, double etaA,
+                                       long bucketB, boolean preferredB, double etaB) {
+        if (bucketA != bucketB) {
+            return bucketA > bucketB;
+        }
+        if (preferredA != preferredB) {
+            return preferredB;
+        }
+        return etaA > etaB;
+    }
+
+    /**
+     * Gets the bucket an estimate is ranked in.
+     *
+     * @param etaSeconds The estimated time to arrive in seconds.
+     * @return The index of the {@link #TIE_SECONDS} bucket holding the estimate.
+     */
+    static long bucketOf(double etaSeconds) {
+        return (long) Math.floor(etaSeconds / TIE_SECONDS);
+    }
+
+    /**
+     * Stores an entry at a heap index and records the index on the entry.
+     *
+     * @param entry The entry.
+     * @param index The heap index.
+     */
+    private void place(Entry entry, int index) {
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+}
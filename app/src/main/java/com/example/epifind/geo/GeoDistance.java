@@ -0,0 +1,159 @@
+package com.example.epifind.geo;
+
+/**
+ * GeoDistance provides distance kernels for the short ranges EpiFind searches over, so call sites can trade
+ * precision for speed instead of running the iterative ellipsoidal solution of {@code Location.distanceBetween}
+ * for every candidate.
+ *
+ * <p>Error bounds, relative to the WGS84 ellipsoidal distance reported by {@code Location.distanceBetween}:
+ * <ul>
+ *     <li>{@link Precision#EXACT} (haversine on the mean-radius sphere) is within 0.6% at any distance.</li>
+ *     <li>{@link Precision#FAST} (equirectangular projection at the mean latitude) is within 0.7% for distances
+ *     up to 100 km at latitudes up to 70 degrees; it deviates from haversine by less than 0.1% in that range.</li>
+ * </ul>
+ * The bounding-box reject never rejects a point that either kernel places within the radius.
+ */
+public final class GeoDistance {
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    /**
+     * The distance kernel to use for a calculation.
+     */
+    public enum Precision {
+        /** Equirectangular projection: one cosine and one square root. */
+        FAST,
+        /** Haversine great-circle distance. */
+        EXACT
+    }
+
+    private GeoDistance() {
+    }
+
+    /**
+     * Calculates the distance between two locations.
+     *
+     * @param lat1      The latitude of the first location in degrees.
+     * @param lon1      The longitude of the first location in degrees.
+     * @param lat2      The latitude of the second location in degrees.
+     * @param lon2      The longitude of the second location in degrees.
+     * @param precision The distance kernel to use.
+     * @return The distance in meters.
+     */
+    public static double meters(double lat1, double lon1, double lat2, double lon2, Precision precision) {
+        return precision == Precision.FAST
+                ? equirectangularMeters(lat1, lon1, lat2, lon2)
+                : haversineMeters(lat1, lon1, lat2, lon2);
+    }
+
+    /**
+     * Checks whether a location lies within a radius of a center, rejecting far locations with a
+     * bounding-box test before evaluating the distance kernel.
+     *
+     * @param centerLat    The latitude of the center in degrees.
+     * @param centerLon    The longitude of the center in degrees.
+     * @param latitude     The latitude of the location in degrees.
+     * @param longitude    The longitude of the location in degrees.
+     * @param radiusMeters The radius in meters.
+     * @param precision    The distance kernel to use.
+     * @return True if the location is within the radius, false otherwise.
+     */
+    public static boolean isWithin(double centerLat, double centerLon, double latitude, double longitude,
+                                   double radiusMeters, Precision precision) {
+        return !isOutsideBoundingBox(centerLat, centerLon, latitude, longitude, radiusMeters)
+                && meters(centerLat, centerLon, latitude, longitude, precision) <= radiusMeters;
+    }
+
+    /**
+     * Checks whether a location lies outside the latitude/longitude box enclosing a circle. The box is widened
+     * to the longitude span at the circle's most poleward latitude, and is not applied to longitudes when the
+     * circle reaches a pole.
+     *
+     * @param centerLat    The latitude of the center in degrees.
+     * @param centerLon    The longitude of the center in degrees.
+     * @param latitude     The latitude of the location in degrees.
+     * @param longitude    The longitude of the location in degrees.
+     * @param radiusMeters The radius in meters.
+     * @return True if the location is certainly farther than the radius, false if it may be within it.
+     */
+    public static boolean isOutsideBoundingBox(double centerLat, double centerLon, double latitude, double longitude,
+                                               double radiusMeters) {
+        double angularRadius = radiusMeters / EARTH_RADIUS_METERS;
+        double centerLatRad = Math.toRadians(centerLat);
+        if (Math.abs(Math.toRadians(latitude) - centerLatRad) > angularRadius) {
+            return true;
+        }
+        double poleward = Math.abs(centerLatRad) + angularRadius;
+        if (poleward >= Math.PI / 2) {
+            return false;
+        }
+        return Math.abs(wrappedDeltaLonRad(centerLon, longitude)) > angularRadius / Math.cos(poleward);
+    }
+
+    /**
+     * Calculates the great-circle distance between two locations using the haversine formula.
+     *
+     * @param lat1 The latitude of the first location in degrees.
+     * @param lon1 The longitude of the first location in degrees.
+     * @param lat2 The latitude of the second location in degrees.
+     * @param lon2 The longitude of the second location in degrees.
+     * @return The distance in meters.
+     */
+    public static double haversineMeters(double lat1, double lon1, double lat2, double lon2) {
+        double sinDLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinDLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinDLat * sinDLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinDLon * sinDLon;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Calculates the distance between two locations on an equirectangular projection centered on their mean
+     * latitude. Accurate for short distances away from the poles; see the class documentation for bounds.
+     *
+     * @param lat1 The latitude of the first location in degrees.
+     * @param lon1 The longitude of the first location in degrees.
+     * @param lat2 The latitude of the second location in degrees.
+     * @param lon2 The longitude of the second location in degrees.
+     * @return The distance in meters.
+     */
+    public static double equirectangularMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = wrappedDeltaLonRad(lon1, lon2) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return EARTH_RADIUS_METERS * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Calculates the initial bearing of the great-circle path from one location to another.
+     *
+     * @param lat1 The latitude of the starting location in degrees.
+     * @param lon1 The longitude of the starting location in degrees.
+     * @param lat2 The latitude of the destination in degrees.
+     * @param lon2 The longitude of the destination in degrees.
+     * @return The bearing in degrees east of true north, between 0 and 360.
+     */
+    public static double bearingDegrees(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double y = Math.sin(dLon) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLon);
+        return (Math.toDegrees(Math.atan2(y, x)) + 360) % 360;
+    }
+
+    /**
+     * Calculates the longitude difference between two locations, taking the short way around the antimeridian.
+     *
+     * @param lon1 The first longitude in degrees.
+     * @param lon2 The second longitude in degrees.
+     * @return The difference in radians, between -pi and pi.
+     */
+    private static double wrappedDeltaLonRad(double lon1, double lon2) {
+        double delta = Math.toRadians(lon2 - lon1);
+        if (delta > Math.PI) {
+            delta -= 2 * Math.PI;
+        } else if (delta < -Math.PI) {
+            delta += 2 * Math.PI;
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.epifind.geo;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * GeoHash encodes latitude/longitude pairs into base32 geohash strings and computes the set of
+ * geohash cells that cover a circular search area. Cells sharing a prefix are spatially nested,
+ * which lets the database serve a search area as a handful of key range queries.
+ */
+public final class GeoHash {
+
+    /**
+     * Precision (number of characters) used for keys written to the location index (~5 m cells).
+     */
+    public static final int INDEX_PRECISION = 9;
+
+    /**
+     * Upper bound on the number of cells a single search area is split into.
+     */
+    public static final int MAX_QUERY_CELLS = 32;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final double METERS_PER_DEGREE_LAT = 111320.0;
+    private static final int MAX_QUERY_PRECISION = 7;
+
+    private GeoHash() {
+        // Utility class
+    }
+
+    /**
+     * Encodes a location into a geohash string.
+     *
+     * @param latitude  The latitude in degrees.
+     * @param longitude The longitude in degrees.
+     * @param precision The number of characters of the resulting geohash.
+     * @return The geohash of the cell containing the location.
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Returns the geohash cells of the given precision that intersect the bounding box of a circle.
+     *
+     * @param latitude     The latitude of the circle's center.
+     * @param longitude    The longitude of the circle's center.
+     * @param radiusMeters The radius of the circle in meters.
+     * @param precision    The precision of the returned cells.
+     * @return The covering cells, without duplicates.
+     */
+    public static Set<String> cellsCovering(double latitude, double longitude, double radiusMeters, int precision) {
+        double cellLat = cellHeightDegrees(precision);
+        double cellLon = cellWidthDegrees(precision);
+
+        double deltaLat = radiusMeters / METERS_PER_DEGREE_LAT;
+        double minLat = Math.max(-90, latitude - deltaLat);
+        double maxLat = Math.min(90, latitude + deltaLat);
+        double deltaLon = longitudeDelta(radiusMeters, latitude);
+
+        int firstRow = (int) Math.floor((minLat + 90) / cellLat);
+        int lastRow = (int) Math.floor(Math.min(maxLat + 90, 180 - cellLat / 2) / cellLat);
+        int firstCol = (int) Math.floor((longitude - deltaLon + 180) / cellLon);
+        int lastCol = (int) Math.floor((longitude + deltaLon + 180) / cellLon);
+        int columns = (int) Math.round(360 / cellLon);
+        if (lastCol - firstCol + 1 > columns) {
+            lastCol = firstCol + columns - 1;
+        }
+
+        Set<String> cells = new LinkedHashSet<>();
+        for (int row = firstRow; row <= lastRow; row++) {
+            double centerLat = -90 + (row + 0.5) * cellLat;
+            for (int col = firstCol; col <= lastCol; col++) {
+                int wrapped = ((col % columns) + columns) % columns;
+                double centerLon = -180 + (wrapped + 0.5) * cellLon;
+                cells.add(encode(centerLat, centerLon, precision));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Filters out the cells that are already covered by a cell in another set, either the same cell or a
+     * coarser cell containing it.
+     *
+     * @param cells   The candidate cells.
+     * @param covered The cells that are already covered.
+     * @return The candidate cells that no covered cell contains, in their original order.
+     */
+    public static Set<String> uncoveredCells(Set<String> cells, Set<String> covered) {
+        Set<String> uncovered = new LinkedHashSet<>();
+        for (String cell : cells) {
+            if (!isCovered(cell, covered)) {
+                uncovered.add(cell);
+            }
+        }
+        return uncovered;
+    }
+
+    /**
+     * Checks whether a cell or any of its prefixes is in a set of cells.
+     *
+     * @param cell    The cell to check.
+     * @param covered The cells that are already covered.
+     * @return True if the cell is covered, false otherwise.
+     */
+    public static boolean isCovered(String cell, Set<String> covered) {
+        for (int length = 1; length <= cell.length(); length++) {
+            if (covered.contains(cell.substring(0, length))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Chooses the finest precision whose covering of the given circle stays within {@link #MAX_QUERY_CELLS}.
+     *
+     * @param latitude     The latitude of the circle's center.
+     * @param radiusMeters The radius of the circle in meters.
+     * @return The query precision to use.
+     */
+    public static int queryPrecision(double latitude, double radiusMeters) {
+        double deltaLat = radiusMeters / METERS_PER_DEGREE_LAT;
+        double deltaLon = longitudeDelta(radiusMeters, latitude);
+        for (int precision = MAX_QUERY_PRECISION; precision > 1; precision--) {
+            double rows = Math.ceil(2 * deltaLat / cellHeightDegrees(precision)) + 1;
+            double cols = Math.ceil(2 * deltaLon / cellWidthDegrees(precision)) + 1;
+            if (rows * cols <= MAX_QUERY_CELLS) {
+                return precision;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Calculates the height of a geohash cell in degrees of latitude.
+     *
+     * @param precision The precision of the cell.
+     * @return The cell height in degrees.
+     */
+    private static double cellHeightDegrees(int precision) {
+        int latBits = (precision * 5) / 2;
+        return 180.0 / (1L << latBits);
+    }
+
+    /**
+     * Calculates the width of a geohash cell in degrees of longitude.
+     *
+     * @param precision The precision of the cell.
+     * @return The cell width in degrees.
+     */
+    private static double cellWidthDegrees(int precision) {
+        int lonBits = precision * 5 - (precision * 5) / 2;
+        return 360.0 / (1L << lonBits);
+    }
+
+    /**
+     * Converts a distance in meters into degrees of longitude at the given latitude.
+     *
+     * @param meters   The distance in meters.
+     * @param latitude The latitude at which the distance is measured.
+     * @return The distance in degrees of longitude, capped at a full circle.
+     */
+    private static double longitudeDelta(double meters, double latitude) {
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        if (cosLat < 1e-6) {
+            return 180;
+        }
+        return Math.min(180, meters / (METERS_PER_DEGREE_LAT * cosLat));
+    }
+}
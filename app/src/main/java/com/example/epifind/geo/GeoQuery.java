@@ -0,0 +1,297 @@
+package com.example.epifind.geo;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.epifind.models.UserProfileCodec;
+import com.example.epifind.utils.DatabaseCache;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * GeoQuery keeps a live view of the entries of a geohash-keyed location index that lie within a circle.
+ * The index is laid out as {@code <root>/<geohash>/<userId>} with latitude and longitude children,
+ * and the search area is fetched as one key range query per covering cell rather than as a full scan.
+ * The search area can be grown in place, in which case only the cells it newly covers are queried.
+ */
+public class GeoQuery {
+    private static final String TAG = "GeoQuery";
+
+    /**
+     * Interface for receiving the entries that enter, move within, or leave the search area.
+     */
+    public interface GeoQueryListener {
+        void onKeyEntered(String userId, DataSnapshot snapshot);
+        void onKeyMoved(String userId, DataSnapshot snapshot);
+        void onKeyExited(String userId);
+        void onQueryReady();
+        void onQueryError(DatabaseError error);
+    }
+
+    private final DatabaseReference indexRef;
+    private final double centerLatitude;
+    private final double centerLongitude;
+    private double radiusMeters;
+    private final GeoQueryListener listener;
+    private final Map<String, Query> queriesByCell = new LinkedHashMap<>();
+    private final Map<String, ChildEventListener> listenersByCell = new HashMap<>();
+    private final Map<String, DataSnapshot> snapshotsByGeohash = new HashMap<>();
+    private final Map<String, Set<String>> usersByGeohash = new HashMap<>();
+    private final Map<String, String> geohashByUser = new HashMap<>();
+    private int pendingCells;
+    private boolean stopped;
+
+    /**
+     * Constructor for GeoQuery.
+     *
+     * @param indexRef        The root of the geohash-keyed location index.
+     * @param centerLatitude  The latitude of the search center.
+     * @param centerLongitude The longitude of the search center.
+     * @param radiusMeters    The search radius in meters.
+     * @param listener        The listener to notify about entries in the search area.
+     */
+    public GeoQuery(DatabaseReference indexRef, double centerLatitude, double centerLongitude,
+                    double radiusMeters, GeoQueryListener listener) {
+        this.indexRef = indexRef;
+        this.centerLatitude = centerLatitude;
+        this.centerLongitude = centerLongitude;
+        this.radiusMeters = radiusMeters;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts listening to every cell that covers the search area.
+     */
+    public void start() {
+        listenToUncoveredCells();
+    }
+
+    /**
+     * Grows the search area to a larger radius. Entries already loaded that now fall inside the area are
+     * reported as entered right away, and only cells not covered by an existing cell query are fetched.
+     * {@link GeoQueryListener#onQueryReady()} is raised again once the new cells have loaded.
+     *
+     * @param newRadiusMeters The new search radius in meters; ignored unless larger than the current one.
+     */
+    public void expandTo(double newRadiusMeters) {
+        if (newRadiusMeters <= radiusMeters) return;
+        radiusMeters = newRadiusMeters;
+        for (DataSnapshot geohashSnapshot : new ArrayList<>(snapshotsByGeohash.values())) {
+            onGeohashChanged(geohashSnapshot);
+        }
+        listenToUncoveredCells();
+    }
+
+    /**
+     * Gets the current search radius.
+     *
+     * @return The search radius in meters.
+     */
+    public double getRadiusMeters() {
+        return radiusMeters;
+    }
+
+    /**
+     * Detaches all listeners registered by this query.
+     */
+    public void stop() {
+        stopped = true;
+        for (String cell : new ArrayList<>(queriesByCell.keySet())) {
+            stopListeningToCell(cell);
+        }
+        snapshotsByGeohash.clear();
+        usersByGeohash.clear();
+        geohashByUser.clear();
+    }
+
+    /**
+     * Attaches queries for the cells covering the search area that no existing query covers yet. Finer
+     * cells that a new, coarser cell contains are detached, since the coarser query returns their entries too.
+     */
+    private void listenToUncoveredCells() {
+        int precision = GeoHash.queryPrecision(centerLatitude, radiusMeters);
+        Set<String> cells = GeoHash.uncoveredCells(
+                GeoHash.cellsCovering(centerLatitude, centerLongitude, radiusMeters, precision),
+                queriesByCell.keySet());
+        Log.d(TAG, "Querying " + cells.size() + " new cells at precision " + precision);
+        if (cells.isEmpty()) {
+            if (pendingCells == 0) {
+                listener.onQueryReady();
+            }
+            return;
+        }
+
+        for (String cell : new ArrayList<>(queriesByCell.keySet())) {
+            if (GeoHash.isCovered(cell, cells)) {
+                stopListeningToCell(cell);
+            }
+        }
+        pendingCells += cells.size();
+        for (String cell : cells) {
+            listenToCell(cell);
+        }
+    }
+
+    /**
+     * Detaches the query of a single cell.
+     *
+     * @param cell The geohash prefix of the cell.
+     */
+    private void stopListeningToCell(String cell) {
+        Query query = queriesByCell.remove(cell);
+        ChildEventListener cellListener = listenersByCell.remove(cell);
+        if (query != null && cellListener != null) {
+            query.removeEventListener(cellListener);
+        }
+    }
+
+    /**
+     * Attaches a range query for all index keys that start with the given cell prefix.
+     *
+     * @param cell The geohash prefix of the cell.
+     */
+    private void listenToCell(String cell) {
+        Query query = cellQuery(indexRef, cell);
+        long startedAt = SystemClock.elapsedRealtime();
+        ChildEventListener cellListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, String previousChildName) {
+                onGeohashChanged(snapshot);
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, String previousChildName) {
+                onGeohashChanged(snapshot);
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                onGeohashRemoved(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, String previousChildName) {
+                // Ordering within a cell is irrelevant
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Cell query cancelled: " + cell, error.toException());
+                listener.onQueryError(error);
+            }
+        };
+        query.addChildEventListener(cellListener);
+        queriesByCell.put(cell, query);
+        listenersByCell.put(cell, cellListener);
+
+        // Value events are raised after the child events of the initial data, which marks the cell as loaded
+        query.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                DatabaseCache.recordRead(DatabaseCache.READ_RESPONDER_CELL, startedAt);
+                pendingCells--;
+                if (pendingCells == 0 && !stopped) {
+                    listener.onQueryReady();
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                listener.onQueryError(error);
+            }
+        });
+    }
+
+    /**
+     * Builds the range query for all index keys that start with the given cell prefix.
+     *
+     * @param indexRef The root of the geohash-keyed location index.
+     * @param cell     The geohash prefix of the cell.
+     * @return The query for the cell.
+     */
+    public static Query cellQuery(DatabaseReference indexRef, String cell) {
+        return indexRef.orderByKey().startAt(cell).endAt(cell + "~");
+    }
+
+    /**
+     * Reconciles the users stored under one index key with the users currently known to be inside the area.
+     *
+     * @param geohashSnapshot The snapshot of the index key and its users.
+     */
+    private void onGeohashChanged(DataSnapshot geohashSnapshot) {
+        String geohash = geohashSnapshot.getKey();
+        snapshotsByGeohash.put(geohash, geohashSnapshot);
+        Set<String> previous = usersByGeohash.remove(geohash);
+        Set<String> current = new HashSet<>();
+
+        for (DataSnapshot userSnapshot : geohashSnapshot.getChildren()) {
+            String userId = userSnapshot.getKey();
+            Double latitude = UserProfileCodec.latitudeOf(userSnapshot);
+            Double longitude = UserProfileCodec.longitudeOf(userSnapshot);
+            if (userId == null || latitude == null || longitude == null || !isInside(latitude, longitude)) {
+                continue;
+            }
+            current.add(userId);
+            if (geohashByUser.put(userId, geohash) == null) {
+                listener.onKeyEntered(userId, userSnapshot);
+            } else {
+                listener.onKeyMoved(userId, userSnapshot);
+            }
+        }
+
+        if (previous != null) {
+            for (String userId : previous) {
+                if (!current.contains(userId) && geohash.equals(geohashByUser.get(userId))) {
+                    geohashByUser.remove(userId);
+                    listener.onKeyExited(userId);
+                }
+            }
+        }
+        if (!current.isEmpty()) {
+            usersByGeohash.put(geohash, current);
+        }
+    }
+
+    /**
+     * Reports every user stored under a removed index key as having left the area.
+     *
+     * @param geohash The removed index key.
+     */
+    private void onGeohashRemoved(String geohash) {
+        snapshotsByGeohash.remove(geohash);
+        Set<String> previous = usersByGeohash.remove(geohash);
+        for (String userId : previous != null ? previous : Collections.<String>emptySet()) {
+            if (geohash.equals(geohashByUser.get(userId))) {
+                geohashByUser.remove(userId);
+                listener.onKeyExited(userId);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a location lies within the search radius.
+     *
+     * @param latitude  The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @return True if the location is inside the search area, false otherwise.
+     */
+    private boolean isInside(double latitude, double longitude) {
+        // Listeners rely on this check for the query radius, and the fast kernel's bound only holds up to 100 km
+        return GeoDistance.isWithin(centerLatitude, centerLongitude, latitude, longitude,
+                radiusMeters, GeoDistance.Precision.EXACT);
+    }
+}
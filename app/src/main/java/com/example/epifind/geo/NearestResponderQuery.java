@@ -0,0 +1,292 @@
+package com.example.epifind.geo;
+
+import com.example.epifind.models.UserProfileCodec;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * NearestResponderQuery finds the K nearest entries of the responder projection around a location.
+ * It searches ring by ring: a small circle is loaded first, and the circle is doubled until it contains
+ * K entries or reaches the maximum radius. Results are reported after every ring, so the closest
+ * responders can be shown while the search is still widening.
+ *
+ * <p>The maximum radius can be changed while the query runs. Entries that were already loaded are shown
+ * or hidden locally, and the search only fetches more cells if it still lacks K entries within the new radius.
+ */
+public class NearestResponderQuery {
+    public static final double INITIAL_RING_METERS = 500;
+    private static final double CELL_SIZE_METERS = 250;
+
+    /**
+     * Interface for receiving the entries of the search and the progress of the ring expansion.
+     */
+    public interface NearestResponderListener {
+        /**
+         * Called when an entry enters the searched area, or is shown again after the maximum radius grew.
+         *
+         * @return True to keep the entry as a candidate, false to ignore it.
+         */
+        boolean onResponderEntered(String userId, DataSnapshot snapshot);
+        void onResponderMoved(String userId, DataSnapshot snapshot);
+        void onResponderExited(String userId);
+        /**
+         * Called each time a ring has loaded, and whenever candidates change between rings.
+         *
+         * @param complete True once K candidates were found or the maximum radius was searched.
+         */
+        void onNearestChanged(boolean complete);
+        void onQueryError(DatabaseError error);
+    }
+
+    private final double centerLatitude;
+    private final double centerLongitude;
+    private final int k;
+    private double maxRadiusMeters;
+    private final NearestResponderListener listener;
+    private final SpatialGridIndex index;
+    private final GeoQuery geoQuery;
+    private final int[] countSlots;
+    private final Map<String, DataSnapshot> snapshotsByUser = new HashMap<>();
+    private boolean loading = true;
+    private boolean complete;
+
+    /**
+     * Constructor for NearestResponderQuery.
+     *
+     * @param indexRef        The root of the responder projection.
+     * @param centerLatitude  The latitude of the search center.
+     * @param centerLongitude The longitude of the search center.
+     * @param k               The number of nearest responders to find.
+     * @param maxRadiusMeters The radius at which the search stops widening.
+     * @param listener        The listener to notify about results.
+     */
+    public NearestResponderQuery(DatabaseReference indexRef, double centerLatitude, double centerLongitude,
+                                 int k, double maxRadiusMeters, NearestResponderListener listener) {
+        this.centerLatitude = centerLatitude;
+        this.centerLongitude = centerLongitude;
+        this.k = k;
+        this.maxRadiusMeters = maxRadiusMeters;
+        this.listener = listener;
+        this.index = new SpatialGridIndex(centerLatitude, CELL_SIZE_METERS);
+        this.countSlots = new int[k];
+        this.geoQuery = new GeoQuery(indexRef, centerLatitude, centerLongitude,
+                Math.min(INITIAL_RING_METERS, maxRadiusMeters), new GeoQuery.GeoQueryListener() {
+            @Override
+            public void onKeyEntered(String userId, DataSnapshot snapshot) {
+                snapshotsByUser.put(userId, snapshot);
+                if (show(userId, snapshot)) {
+                    onCandidatesChanged();
+                }
+            }
+
+            @Override
+            public void onKeyMoved(String userId, DataSnapshot snapshot) {
+                snapshotsByUser.put(userId, snapshot);
+                if (!index.contains(userId)) {
+                    if (show(userId, snapshot)) {
+                        onCandidatesChanged();
+                    }
+                } else if (!isWithinMaxRadius(snapshot)) {
+                    hide(userId);
+                    onCandidatesChanged();
+                } else {
+                    putEntry(userId, snapshot);
+                    listener.onResponderMoved(userId, snapshot);
+                    onCandidatesChanged();
+                }
+            }
+
+            @Override
+            public void onKeyExited(String userId) {
+                snapshotsByUser.remove(userId);
+                if (!index.contains(userId)) return;
+                hide(userId);
+                onCandidatesChanged();
+            }
+
+            @Override
+            public void onQueryReady() {
+                onRingReady();
+            }
+
+            @Override
+            public void onQueryError(DatabaseError error) {
+                listener.onQueryError(error);
+            }
+        });
+    }
+
+    /**
+     * Starts the search with the innermost ring.
+     */
+    public void start() {
+        geoQuery.start();
+    }
+
+    /**
+     * Stops the search and detaches all listeners.
+     */
+    public void stop() {
+        geoQuery.stop();
+        snapshotsByUser.clear();
+    }
+
+    /**
+     * Changes the radius at which the search stops widening. Loaded entries are shown or hidden to match the
+     * new radius without a database read; cells are only fetched if a larger radius is needed to find K entries.
+     *
+     * @param radiusMeters The new maximum radius in meters.
+     */
+    public void setMaxRadius(double radiusMeters) {
+        if (radiusMeters == maxRadiusMeters) return;
+        maxRadiusMeters = radiusMeters;
+        for (Map.Entry<String, DataSnapshot> entry : snapshotsByUser.entrySet()) {
+            String userId = entry.getKey();
+            boolean within = isWithinMaxRadius(entry.getValue());
+            if (within && !index.contains(userId)) {
+                show(userId, entry.getValue());
+            } else if (!within && index.contains(userId)) {
+                hide(userId);
+            }
+        }
+        if (!loading) {
+            evaluateRing();
+        }
+    }
+
+    /**
+     * Writes the slots of the nearest candidates found so far, closest first, into a buffer.
+     * Only candidates within the searched radius are returned, since closer ones may still be loading beyond it.
+     *
+     * @param out The buffer that receives the slots; at most its length, and at most K, are written.
+     * @return The number of slots written.
+     */
+    public int nearest(int[] out) {
+        return index.nearest(centerLatitude, centerLongitude, getRadiusMeters(), out);
+    }
+
+    /**
+     * Gets the store holding the candidates, used to resolve the slots returned by {@link #nearest(int[])}.
+     *
+     * @return The candidate store.
+     */
+    public CandidateStore getStore() {
+        return index.getStore();
+    }
+
+    /**
+     * Gets the radius searched so far, limited to the maximum radius.
+     *
+     * @return The radius in meters.
+     */
+    public double getRadiusMeters() {
+        return Math.min(geoQuery.getRadiusMeters(), maxRadiusMeters);
+    }
+
+    /**
+     * Checks whether the search has stopped widening.
+     *
+     * @return True if K candidates were found or the maximum radius was searched, false otherwise.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Offers a loaded entry to the listener and indexes it if it lies within the maximum radius and is accepted.
+     *
+     * @param userId   The ID of the entry.
+     * @param snapshot The snapshot of the entry.
+     * @return True if the entry was indexed, false otherwise.
+     */
+    private boolean show(String userId, DataSnapshot snapshot) {
+        if (!isWithinMaxRadius(snapshot) || !listener.onResponderEntered(userId, snapshot)) {
+            return false;
+        }
+        putEntry(userId, snapshot);
+        return true;
+    }
+
+    /**
+     * Removes an entry from the candidate index and reports it as exited. It stays loaded, so it can be
+     * shown again if the maximum radius grows.
+     *
+     * @param userId The ID of the entry.
+     */
+    private void hide(String userId) {
+        index.remove(userId);
+        listener.onResponderExited(userId);
+    }
+
+    /**
+     * Checks whether an entry lies within the maximum radius.
+     *
+     * @param snapshot The snapshot of the entry.
+     * @return True if the entry is within the maximum radius, false otherwise.
+     */
+    private boolean isWithinMaxRadius(DataSnapshot snapshot) {
+        Double latitude = UserProfileCodec.latitudeOf(snapshot);
+        Double longitude = UserProfileCodec.longitudeOf(snapshot);
+        return latitude != null && longitude != null && GeoDistance.isWithin(centerLatitude, centerLongitude,
+                latitude, longitude, maxRadiusMeters, GeoDistance.Precision.EXACT);
+    }
+
+    /**
+     * Stores the location of an entry in the candidate index.
+     *
+     * @param userId   The ID of the entry.
+     * @param snapshot The snapshot of the entry.
+     */
+    private void putEntry(String userId, DataSnapshot snapshot) {
+        Double latitude = UserProfileCodec.latitudeOf(snapshot);
+        Double longitude = UserProfileCodec.longitudeOf(snapshot);
+        if (latitude != null && longitude != null) {
+            index.put(userId, latitude, longitude);
+        }
+    }
+
+    /**
+     * Reports candidate changes between rings; changes while a ring is loading are reported with the ring.
+     */
+    private void onCandidatesChanged() {
+        if (!loading) {
+            listener.onNearestChanged(complete);
+        }
+    }
+
+    /**
+     * Reports the loaded ring and widens the search unless enough candidates were found.
+     */
+    private void onRingReady() {
+        loading = false;
+        evaluateRing();
+    }
+
+    /**
+     * Checks whether the searched area holds enough candidates, reports the result and widens the search
+     * if it does not.
+     */
+    private void evaluateRing() {
+        double radius = getRadiusMeters();
+        complete = radius >= maxRadiusMeters || countWithin(radius) >= k;
+        listener.onNearestChanged(complete);
+        if (!complete) {
+            loading = true;
+            geoQuery.expandTo(Math.min(geoQuery.getRadiusMeters() * 2, maxRadiusMeters));
+        }
+    }
+
+    /**
+     * Counts the candidates within a radius of the search center, stopping at K.
+     *
+     * @param radiusMeters The radius in meters.
+     * @return The number of candidates, at most K.
+     */
+    private int countWithin(double radiusMeters) {
+        return index.nearest(centerLatitude, centerLongitude, radiusMeters, countSlots);
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.epifind.geo;
+
+import android.location.Location;
+
+import com.example.epifind.models.UserProfile;
+import com.example.epifind.models.UserProfileCodec;
+import com.example.epifind.utils.EpiPenExpiryChecker;
+import com.google.firebase.database.DataSnapshot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ResponderIndex describes the {@code responders/<geohash>/<userId>} projection, which holds only the users
+ * who can currently respond to an SOS (they carry a non-expired EpiPen and do not need help themselves),
+ * with just the fields needed to match and display them. Writers add their changes to a multi-path update
+ * so the projection moves together with the profile it is derived from.
+ */
+public final class ResponderIndex {
+
+    /**
+     * The root node of the responder projection.
+     */
+    public static final String ROOT = "responders";
+
+    private ResponderIndex() {
+        // Utility class
+    }
+
+    /**
+     * Checks whether a user may be offered to SOS requesters.
+     *
+     * @param profile The profile of the user.
+     * @return True if the user carries a valid EpiPen and does not need help, false otherwise.
+     */
+    public static boolean isEligible(UserProfile profile) {
+        return profile.getHasEpiPen() && !profile.getNeedsHelp() && hasValidExpiry(profile.getEpiPenExpiry());
+    }
+
+    /**
+     * Checks whether an EpiPen expiry date is known and has not passed.
+     *
+     * @param epiPenExpiry The expiry date in the format "dd/MM/yyyy".
+     * @return True if the EpiPen has not expired, false otherwise.
+     */
+    public static boolean hasValidExpiry(String epiPenExpiry) {
+        return epiPenExpiry != null && !epiPenExpiry.isEmpty()
+                && EpiPenExpiryChecker.getDaysUntilExpiry(epiPenExpiry) > 0;
+    }
+
+    /**
+     * Returns the index key for a location, or null if the location has never been reported.
+     *
+     * @param latitude  The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @return The geohash under which the location is indexed, or null.
+     */
+    public static String keyFor(double latitude, double longitude) {
+        if (latitude == 0 && longitude == 0) {
+            return null;
+        }
+        return GeoHash.encode(latitude, longitude, GeoHash.INDEX_PRECISION);
+    }
+
+    /**
+     * Adds the writes that bring a user's projection entry in line with their profile to a multi-path update.
+     *
+     * @param updates         The multi-path update to add to.
+     * @param userId          The ID of the user.
+     * @param profile         The profile the entry is derived from.
+     * @param previousGeohash The geohash the user is currently indexed under, or null if unknown.
+     * @return The geohash the user is indexed under after the update, or null if they are not indexed.
+     */
+    public static String putUpdates(Map<String, Object> updates, String userId, UserProfile profile, String previousGeohash) {
+        return putUpdates(updates, userId, profile, profile.getLatitude(), profile.getLongitude(),
+                profile.getSpeed(), profile.getBearing(), profile.getAccuracy(), previousGeohash);
+    }
+
+    /**
+     * Adds the writes that place a user's projection entry at a new location fix to a multi-path update.
+     *
+     * @param updates         The multi-path update to add to.
+     * @param userId          The ID of the user.
+     * @param profile         The profile the entry is derived from.
+     * @param location        The location fix to index the user at.
+     * @param previousGeohash The geohash the user is currently indexed under, or null if unknown.
+     * @return The geohash the user is indexed under after the update, or null if they are not indexed.
+     */
+    public static String putUpdates(Map<String, Object> updates, String userId, UserProfile profile,
+                                    Location location, String previousGeohash) {
+        return putUpdates(updates, userId, profile, location.getLatitude(), location.getLongitude(),
+                speedOf(location), bearingOf(location), accuracyOf(location), previousGeohash);
+    }
+
+    /**
+     * Gets the speed of a location fix, or 0 if the fix has none.
+     *
+     * @param location The location fix.
+     * @return The speed in meters per second.
+     */
+    public static float speedOf(Location location) {
+        return location.hasSpeed() ? location.getSpeed() : 0f;
+    }
+
+    /**
+     * Gets the bearing of a location fix, or 0 if the fix has none.
+     *
+     * @param location The location fix.
+     * @return The bearing in degrees east of true north.
+     */
+    public static float bearingOf(Location location) {
+        return location.hasBearing() ? location.getBearing() : 0f;
+    }
+
+    /**
+     * Gets the accuracy of a location fix, or 0 if the fix has none.
+     *
+     * @param location The location fix.
+     * @return The accuracy radius in meters.
+     */
+    public static float accuracyOf(Location location) {
+        return location.hasAccuracy() ? location.getAccuracy() : 0f;
+    }
+
+    /**
+     * Adds the writes that place a user's projection entry at a location to a multi-path update.
+     *
+     * @param updates         The multi-path update to add to.
+     * @param userId          The ID of the user.
+     * @param profile         The profile the entry is derived from.
+     * @param latitude        The latitude to index the user at.
+     * @param longitude       The longitude to index the user at.
+     * @param speed           The speed of the user in meters per second.
+     * @param bearing         The bearing of the user in degrees.
+     * @param accuracy        The accuracy of the location in meters.
+     * @param previousGeohash The geohash the user is currently indexed under, or null if unknown.
+     * @return The geohash the user is indexed under after the update, or null if they are not indexed.
+     */
+    private static String putUpdates(Map<String, Object> updates, String userId, UserProfile profile,
+                                     double latitude, double longitude, float speed, float bearing, float accuracy,
+                                     String previousGeohash) {
+        String geohash = keyFor(latitude, longitude);
+        if (previousGeohash != null && !previousGeohash.equals(geohash)) {
+            updates.put(path(previousGeohash, userId), null);
+        }
+        if (geohash == null) {
+            return null;
+        }
+        if (!isEligible(profile)) {
+            updates.put(path(geohash, userId), null);
+            return null;
+        }
+
+        Map<String, Object> entry = new HashMap<>();
+        entry.put(UserProfileCodec.VERSION, UserProfileCodec.SCHEMA_VERSION);
+        entry.put(UserProfileCodec.NAME_KEY, profile.getName());
+        entry.put(UserProfileCodec.ALLERGEN_MASK, profile.getAllergenMask());
+        UserProfileCodec.putPosition(entry, "", latitude, longitude);
+        UserProfileCodec.putMotion(entry, "", speed, bearing, accuracy);
+        UserProfileCodec.putExpiry(entry, "", profile.getEpiPenExpiry());
+        updates.put(path(geohash, userId), entry);
+        return geohash;
+    }
+
+    /**
+     * Converts a projection entry into a UserProfile for display.
+     *
+     * @param snapshot The snapshot of the projection entry.
+     * @return The responder's profile, or null if the entry cannot be read or is no longer eligible.
+     */
+    public static UserProfile toProfile(DataSnapshot snapshot) {
+        return toProfile(snapshot, null);
+    }
+
+    /**
+     * Converts a projection entry into a UserProfile for display, decoding into an existing instance so a
+     * search can reuse pooled profiles.
+     *
+     * @param snapshot The snapshot of the projection entry.
+     * @param into     The instance to decode into, or null to create one.
+     * @return The responder's profile, or null if the entry cannot be read or is no longer eligible.
+     */
+    public static UserProfile toProfile(DataSnapshot snapshot, UserProfile into) {
+        UserProfile profile = UserProfileCodec.decode(snapshot, UserProfileCodec.RESPONDER, into);
+        if (profile == null || !hasValidExpiry(profile.getEpiPenExpiry())) {
+            return null;
+        }
+        return profile;
+    }
+
+    /**
+     * Builds the database path of a projection entry.
+     *
+     * @param geohash The geohash the entry is indexed under.
+     * @param userId  The ID of the user.
+     * @return The path of the entry relative to the database root.
+     */
+    private static String path(String geohash, String userId) {
+        return ROOT + "/" + geohash + "/" + userId;
+    }
+}
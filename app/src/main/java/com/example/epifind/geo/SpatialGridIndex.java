@@ -0,0 +1,523 @@
+package com.example.epifind.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SpatialGridIndex is an in-memory uniform grid over latitude/longitude that supports incremental
+ * insert, move and remove of points, radius queries and k-nearest-neighbour queries without scanning
+ * every point. Cells are square (in meters) at the latitude the grid is created for, which is accurate
+ * enough for the city-scale areas searched around a single SOS requester.
+ * <p>
+ * Points live in a {@link CandidateStore}; cells hold int slots of that store in primitive buckets, and
+ * cells are looked up through an open-addressing table, so the buffer-based query methods allocate nothing.
+ */
+public class SpatialGridIndex {
+    private static final double METERS_PER_DEGREE_LAT = Math.toRadians(1) * GeoDistance.EARTH_RADIUS_METERS;
+    private static final int INITIAL_TABLE_SIZE = 64;
+    private static final int INITIAL_BUCKET_SIZE = 4;
+
+    private final CandidateStore store = new CandidateStore();
+    private final double cellLatDegrees;
+    private final double cellLonDegrees;
+
+    // Open-addressing table from packed cell key to cell number plus one (zero marks an empty entry)
+    private long[] tableKeys = new long[INITIAL_TABLE_SIZE];
+    private int[] tableCells = new int[INITIAL_TABLE_SIZE];
+    private int cellCount;
+    private long[] cellKeys = new long[INITIAL_TABLE_SIZE / 2];
+    private int[][] cellSlots = new int[INITIAL_TABLE_SIZE / 2][];
+    private int[] cellSizes = new int[INITIAL_TABLE_SIZE / 2];
+
+    private int[] slotCells = new int[INITIAL_TABLE_SIZE];
+    private int[] slotPositions = new int[INITIAL_TABLE_SIZE];
+    private double[] heapDistances = new double[0];
+    private int[] heapSlots = new int[0];
+
+    private int minRow = Integer.MAX_VALUE;
+    private int maxRow = Integer.MIN_VALUE;
+    private int minCol = Integer.MAX_VALUE;
+    private int maxCol = Integer.MIN_VALUE;
+
+    /**
+     * Constructor for SpatialGridIndex.
+     *
+     * @param originLatitude The latitude around which the index will be queried, used to size the cells.
+     * @param cellSizeMeters The edge length of a grid cell in meters.
+     */
+    public SpatialGridIndex(double originLatitude, double cellSizeMeters) {
+        this.cellLatDegrees = cellSizeMeters / METERS_PER_DEGREE_LAT;
+        double cosLat = Math.max(Math.cos(Math.toRadians(originLatitude)), 0.01);
+        this.cellLonDegrees = cellLatDegrees / cosLat;
+    }
+
+    /**
+     * Gets the store holding the indexed points, for resolving slots returned by the buffer-based queries.
+     *
+     * @return The candidate store.
+     */
+    public CandidateStore getStore() {
+        return store;
+    }
+
+    /**
+     * Inserts a point, or moves it if a point with the same ID is already indexed.
+     *
+     * @param id        The ID of the point.
+     * @param latitude  The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @return The slot of the point in the store.
+     */
+    public int put(String id, double latitude, double longitude) {
+        boolean isNew = store.slotOf(id) < 0;
+        int slot = store.put(id, latitude, longitude);
+        ensureSlotCapacity(store.capacity());
+
+        int row = row(latitude);
+        int col = col(longitude);
+        int cell = cellFor(cellKey(row, col));
+        if (isNew) {
+            addToCell(slot, cell);
+        } else if (slotCells[slot] != cell) {
+            removeFromCell(slot);
+            addToCell(slot, cell);
+        }
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        minCol = Math.min(minCol, col);
+        maxCol = Math.max(maxCol, col);
+        return slot;
+    }
+
+    /**
+     * Removes a point from the index.
+     *
+     * @param id The ID of the point.
+     * @return True if the point was indexed, false otherwise.
+     */
+    public boolean remove(String id) {
+        int slot = store.slotOf(id);
+        if (slot < 0) {
+            return false;
+        }
+        removeFromCell(slot);
+        store.remove(id);
+        return true;
+    }
+
+    /**
+     * Checks whether a point is indexed.
+     *
+     * @param id The ID of the point.
+     * @return True if the point is indexed, false otherwise.
+     */
+    public boolean contains(String id) {
+        return store.slotOf(id) >= 0;
+    }
+
+    /**
+     * Gets the number of indexed points.
+     *
+     * @return The number of points.
+     */
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Removes every point from the index.
+     */
+    public void clear() {
+        store.clear();
+        Arrays.fill(tableCells, 0);
+        Arrays.fill(cellSlots, 0, cellCount, null);
+        cellCount = 0;
+        minRow = Integer.MAX_VALUE;
+        maxRow = Integer.MIN_VALUE;
+        minCol = Integer.MAX_VALUE;
+        maxCol = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Finds all eligible points within a radius of a location.
+     *
+     * @param latitude     The latitude of the location.
+     * @param longitude    The longitude of the location.
+     * @param radiusMeters The radius in meters.
+     * @return The IDs of the points within the radius, in no particular order.
+     */
+    public List<String> queryRadius(double latitude, double longitude, double radiusMeters) {
+        int[] slots = new int[store.capacity()];
+        int count = queryRadius(latitude, longitude, radiusMeters, slots);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(store.userIdAt(slots[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Writes the slots of all eligible points within a radius of a location into a buffer, without allocating.
+     *
+     * @param latitude     The latitude of the location.
+     * @param longitude    The longitude of the location.
+     * @param radiusMeters The radius in meters.
+     * @param out          The buffer that receives the matching slots.
+     * @return The number of slots written, at most the length of the buffer.
+     */
+    public int queryRadius(double latitude, double longitude, double radiusMeters, int[] out) {
+        if (store.size() == 0) {
+            return 0;
+        }
+        double deltaLat = radiusMeters / METERS_PER_DEGREE_LAT;
+        double cosBand = Math.max(Math.cos(Math.toRadians(Math.min(90, Math.abs(latitude) + deltaLat))), 1e-6);
+        double deltaLon = Math.min(180, deltaLat / cosBand);
+
+        int fromRow = Math.max(row(latitude - deltaLat), minRow);
+        int toRow = Math.min(row(latitude + deltaLat), maxRow);
+        int fromCol = Math.max(col(longitude - deltaLon), minCol);
+        int toCol = Math.min(col(longitude + deltaLon), maxCol);
+
+        double latRad = Math.toRadians(latitude);
+        double lonRad = Math.toRadians(longitude);
+        double cosLat = Math.cos(latRad);
+        double threshold = CandidateStore.haversineThreshold(radiusMeters);
+
+        int count = 0;
+        for (int r = fromRow; r <= toRow; r++) {
+            for (int c = fromCol; c <= toCol; c++) {
+                int cell = findCell(cellKey(r, c));
+                if (cell < 0) continue;
+                int[] slots = cellSlots[cell];
+                for (int i = 0, n = cellSizes[cell]; i < n; i++) {
+                    int slot = slots[i];
+                    if (store.isEligible(slot) && store.isWithin(slot, latRad, lonRad, cosLat, threshold)) {
+                        if (count == out.length) return count;
+                        out[count++] = slot;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the eligible points nearest to a location, searching the grid ring by ring outwards.
+     *
+     * @param latitude        The latitude of the location.
+     * @param longitude       The longitude of the location.
+     * @param k               The maximum number of points to return.
+     * @param maxRadiusMeters The maximum distance of a returned point.
+     * @return The IDs of up to k nearest points within the maximum radius, nearest first.
+     */
+    public List<String> nearest(double latitude, double longitude, int k, double maxRadiusMeters) {
+        int[] slots = new int[Math.max(k, 0)];
+        int count = nearest(latitude, longitude, maxRadiusMeters, slots);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(store.userIdAt(slots[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Writes the slots of the eligible points nearest to a location into a buffer, nearest first.
+     * The length of the buffer is the number of neighbours searched for.
+     *
+     * @param latitude        The latitude of the location.
+     * @param longitude       The longitude of the location.
+     * @param maxRadiusMeters The maximum distance of a returned point.
+     * @param out             The buffer that receives the nearest slots.
+     * @return The number of slots written.
+     */
+    public int nearest(double latitude, double longitude, double maxRadiusMeters, int[] out) {
+        int k = out.length;
+        if (k == 0 || store.size() == 0) {
+            return 0;
+        }
+        if (heapSlots.length < k) {
+            heapSlots = new int[k];
+            heapDistances = new double[k];
+        }
+        int heapSize = 0;
+
+        int centerRow = row(latitude);
+        int centerCol = col(longitude);
+        int maxRing = Math.max(Math.max(centerRow - minRow, maxRow - centerRow),
+                Math.max(centerCol - minCol, maxCol - centerCol));
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int r = centerRow - ring; r <= centerRow + ring; r++) {
+                boolean edgeRow = r == centerRow - ring || r == centerRow + ring;
+                int step = edgeRow ? 1 : Math.max(2 * ring, 1);
+                for (int c = centerCol - ring; c <= centerCol + ring; c += step) {
+                    int cell = findCell(cellKey(r, c));
+                    if (cell < 0) continue;
+                    int[] slots = cellSlots[cell];
+                    for (int i = 0, n = cellSizes[cell]; i < n; i++) {
+                        int slot = slots[i];
+                        if (!store.isEligible(slot)) continue;
+                        double distance = store.distanceMeters(slot, latitude, longitude);
+                        if (distance > maxRadiusMeters) continue;
+                        if (heapSize < k) {
+                            heapSlots[heapSize] = slot;
+                            heapDistances[heapSize] = distance;
+                            siftUp(heapSize++);
+                        } else if (distance < heapDistances[0]) {
+                            heapSlots[0] = slot;
+                            heapDistances[0] = distance;
+                            siftDown(0, heapSize);
+                        }
+                    }
+                }
+            }
+            // Every point outside the rings searched so far is at least this far away
+            double unsearchedDistance = ringClearance(latitude, longitude, centerRow, centerCol, ring);
+            if (unsearchedDistance > maxRadiusMeters) break;
+            if (heapSize == k && unsearchedDistance > heapDistances[0]) break;
+        }
+
+        // Pop the max-heap from the back of the buffer to order the result nearest first
+        int count = heapSize;
+        while (heapSize > 0) {
+            out[heapSize - 1] = heapSlots[0];
+            heapSize--;
+            heapSlots[0] = heapSlots[heapSize];
+            heapDistances[0] = heapDistances[heapSize];
+            siftDown(0, heapSize);
+        }
+        return count;
+    }
+
+    /**
+     * Calculates a lower bound on the distance from a location to any point outside the searched rings.
+     *
+     * @param latitude  The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @param centerRow The row of the location's cell.
+     * @param centerCol The column of the location's cell.
+     * @param ring      The outermost ring that has been searched.
+     * @return The minimum distance in meters to the unsearched part of the grid.
+     */
+    private double ringClearance(double latitude, double longitude, int centerRow, int centerCol, int ring) {
+        double south = (centerRow - ring) * cellLatDegrees;
+        double north = (centerRow + ring + 1) * cellLatDegrees;
+        double west = (centerCol - ring) * cellLonDegrees;
+        double east = (centerCol + ring + 1) * cellLonDegrees;
+
+        double latClearance = Math.min(latitude - south, north - latitude) * METERS_PER_DEGREE_LAT;
+        double maxAbsLat = Math.min(90, Math.max(Math.abs(south), Math.abs(north)));
+        double lonClearance = Math.min(longitude - west, east - longitude)
+                * METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(maxAbsLat));
+        // Keep a small margin so rounding between the planar bound and the spherical distance never drops a point
+        return Math.min(latClearance, lonClearance) * 0.99;
+    }
+
+    /**
+     * Restores the max-heap order after an element was added at the given position.
+     *
+     * @param position The position of the added element.
+     */
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (heapDistances[parent] >= heapDistances[position]) return;
+            swapHeap(parent, position);
+            position = parent;
+        }
+    }
+
+    /**
+     * Restores the max-heap order after the element at the given position was replaced.
+     *
+     * @param position The position of the replaced element.
+     * @param size     The number of elements in the heap.
+     */
+    private void siftDown(int position, int size) {
+        while (true) {
+            int largest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && heapDistances[left] > heapDistances[largest]) largest = left;
+            if (right < size && heapDistances[right] > heapDistances[largest]) largest = right;
+            if (largest == position) return;
+            swapHeap(position, largest);
+            position = largest;
+        }
+    }
+
+    /**
+     * Swaps two heap elements.
+     *
+     * @param a The position of the first element.
+     * @param b The position of the second element.
+     */
+    private void swapHeap(int a, int b) {
+        int slot = heapSlots[a];
+        heapSlots[a] = heapSlots[b];
+        heapSlots[b] = slot;
+        double distance = heapDistances[a];
+        heapDistances[a] = heapDistances[b];
+        heapDistances[b] = distance;
+    }
+
+    /**
+     * Appends a slot to a cell's bucket.
+     *
+     * @param slot The slot to add.
+     * @param cell The cell number.
+     */
+    private void addToCell(int slot, int cell) {
+        int size = cellSizes[cell];
+        if (size == cellSlots[cell].length) {
+            cellSlots[cell] = Arrays.copyOf(cellSlots[cell], size * 2);
+        }
+        cellSlots[cell][size] = slot;
+        cellSizes[cell] = size + 1;
+        slotCells[slot] = cell;
+        slotPositions[slot] = size;
+    }
+
+    /**
+     * Removes a slot from its cell's bucket by moving the bucket's last slot into its place.
+     *
+     * @param slot The slot to remove.
+     */
+    private void removeFromCell(int slot) {
+        int cell = slotCells[slot];
+        int position = slotPositions[slot];
+        int last = --cellSizes[cell];
+        int moved = cellSlots[cell][last];
+        cellSlots[cell][position] = moved;
+        slotPositions[moved] = position;
+    }
+
+    /**
+     * Looks up the number of a cell.
+     *
+     * @param key The packed cell key.
+     * @return The cell number, or -1 if no point was ever stored in the cell.
+     */
+    private int findCell(long key) {
+        int mask = tableKeys.length - 1;
+        for (int i = hash(key) & mask; tableCells[i] != 0; i = (i + 1) & mask) {
+            if (tableKeys[i] == key) {
+                return tableCells[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up the number of a cell, creating the cell if needed.
+     *
+     * @param key The packed cell key.
+     * @return The cell number.
+     */
+    private int cellFor(long key) {
+        int cell = findCell(key);
+        if (cell >= 0) {
+            return cell;
+        }
+        if (cellCount == cellKeys.length) {
+            int capacity = cellKeys.length * 2;
+            cellKeys = Arrays.copyOf(cellKeys, capacity);
+            cellSlots = Arrays.copyOf(cellSlots, capacity);
+            cellSizes = Arrays.copyOf(cellSizes, capacity);
+        }
+        cell = cellCount++;
+        cellKeys[cell] = key;
+        cellSlots[cell] = new int[INITIAL_BUCKET_SIZE];
+        cellSizes[cell] = 0;
+        if (cellCount * 2 > tableKeys.length) {
+            rehash(tableKeys.length * 2);
+        } else {
+            insertIntoTable(key, cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Rebuilds the cell table with a new size.
+     *
+     * @param size The new table size, a power of two.
+     */
+    private void rehash(int size) {
+        tableKeys = new long[size];
+        tableCells = new int[size];
+        for (int cell = 0; cell < cellCount; cell++) {
+            insertIntoTable(cellKeys[cell], cell);
+        }
+    }
+
+    /**
+     * Inserts a cell into the table.
+     *
+     * @param key  The packed cell key.
+     * @param cell The cell number.
+     */
+    private void insertIntoTable(long key, int cell) {
+        int mask = tableKeys.length - 1;
+        int i = hash(key) & mask;
+        while (tableCells[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        tableKeys[i] = key;
+        tableCells[i] = cell + 1;
+    }
+
+    /**
+     * Grows the per-slot arrays so that they can hold the given number of slots.
+     *
+     * @param required The number of slots required.
+     */
+    private void ensureSlotCapacity(int required) {
+        if (required <= slotCells.length) return;
+        int capacity = Math.max(required, slotCells.length * 2);
+        slotCells = Arrays.copyOf(slotCells, capacity);
+        slotPositions = Arrays.copyOf(slotPositions, capacity);
+    }
+
+    /**
+     * Gets the grid row of a latitude.
+     *
+     * @param latitude The latitude.
+     * @return The row index.
+     */
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / cellLatDegrees);
+    }
+
+    /**
+     * Gets the grid column of a longitude.
+     *
+     * @param longitude The longitude.
+     * @return The column index.
+     */
+    private int col(double longitude) {
+        return (int) Math.floor(longitude / cellLonDegrees);
+    }
+
+    /**
+     * Packs a row and column into a single cell key.
+     *
+     * @param row The row index.
+     * @param col The column index.
+     * @return The cell key.
+     */
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    /**
+     * Spreads the bits of a cell key for table lookup.
+     *
+     * @param key The packed cell key.
+     * @return The hash of the key.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,34 +1,40 @@
 package com.example.epifind.managers;
 
-import android.Manifest;
 import android.content.Context;
-import android.content.pm.PackageManager;
-import android.location.Location;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
-import androidx.core.app.ActivityCompat;
+import androidx.annotation.Nullable;
 
 import com.example.epifind.fragments.SOSFragment;
+import com.example.epifind.geo.CandidateStore;
+import com.example.epifind.geo.ResponderIndex;
+import com.example.epifind.models.ProfilePatch;
 import com.example.epifind.models.UserProfile;
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationServices;
+import com.example.epifind.models.UserProfileCodec;
+import com.example.epifind.utils.Futures;
+import com.example.epifind.utils.ServerClock;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.MutableData;
 import com.google.firebase.database.ServerValue;
-import com.google.firebase.database.ValueEventListener;
+import com.google.firebase.database.Transaction;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * SOSManager handles the SOS functionality within the EpiFind app.
@@ -38,6 +44,13 @@ import java.util.Objects;
 public class SOSManager {
     private static final long VIBRATION_DURATION = 3000; // 3 seconds
     private static final long VIBRATION_INTERVAL = 500; // 0.5 seconds
+    public static final int MAX_PATHS_PER_WRITE = 500;
+    private static final String LATEST_SOS_PATH = "latest_sos";
+    public static final String SESSIONS_ROOT = "sos_sessions";
+    public static final String STATE_ACTIVE = "active";
+    public static final String STATE_CANCELLED = "cancelled";
+    public static final long LOCATION_TIMEOUT_MS = 10000;
+    public static final long PENDING_PREFETCH_TTL_MS = 30000;
 
     private final Context context;
     private final Vibrator vibrator;
@@ -47,6 +60,18 @@ public class SOSManager {
     private final LocalNotificationManager notificationManager;
     private SOSFragment sosFragment;
     private boolean isActivating = false;
+    private SOSPrefetch prefetch;
+    private double searchRadiusMeters;
+    private ActivationTimings lastActivationTimings;
+    private static SOSPrefetch pendingPrefetch;
+    private static final Handler pendingPrefetchHandler = new Handler(Looper.getMainLooper());
+    private static final Runnable expirePendingPrefetch = () -> {
+        SOSPrefetch expired = takePendingPrefetch();
+        if (expired != null) {
+            Log.w("SOSManager", "Dropping an SOS prefetch the SOS screen never took");
+            expired.cancel();
+        }
+    };
 
     /**
      * Interface to handle SOS activation events.
@@ -57,6 +82,56 @@ public class SOSManager {
         void onSOSActivated();
     }
 
+    /**
+     * Interface to track the delivery of SOS notifications to nearby users.
+     */
+    public interface FanOutListener {
+        void onProgress(int delivered, int total);
+        void onComplete(int total, long timeToLastDeliveryMs);
+        void onFailure(String error);
+    }
+
+    /**
+     * The duration of each stage of an SOS activation, measured from the moment the SOS button was pressed.
+     * The location, profile and responder stages run in parallel during the hold; a stage that had not
+     * finished when the request was committed is reported as -1.
+     */
+    public static final class ActivationTimings {
+        public final long locationMs;
+        public final long profileMs;
+        public final long respondersMs;
+        public final long commitMs;
+        public final long totalMs;
+        public final int recipients;
+
+        /**
+         * Constructor for ActivationTimings.
+         *
+         * @param locationMs   The time until the location fix was resolved.
+         * @param profileMs    The time until the profile was fetched.
+         * @param respondersMs The time until the responder search stopped widening.
+         * @param commitMs     The round-trip time of the activation update.
+         * @param totalMs      The time until the activation update was acknowledged.
+         * @param recipients   The number of users notified by the activation update.
+         */
+        ActivationTimings(long locationMs, long profileMs, long respondersMs, long commitMs, long totalMs,
+                          int recipients) {
+            this.locationMs = locationMs;
+            this.profileMs = profileMs;
+            this.respondersMs = respondersMs;
+            this.commitMs = commitMs;
+            this.totalMs = totalMs;
+            this.recipients = recipients;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "location " + locationMs + " ms, profile " + profileMs + " ms, responders " + respondersMs
+                    + " ms, commit " + commitMs + " ms, total " + totalMs + " ms, " + recipients + " notified";
+        }
+    }
+
     /**
      * Constructor for SOSManager.
      *
@@ -70,6 +145,7 @@ public class SOSManager {
         this.mDatabase = FirebaseDatabase.getInstance().getReference();
         this.sosFragment = null;
         this.notificationManager = new LocalNotificationManager(context);
+        ServerClock.start();
     }
 
     /**
@@ -83,13 +159,22 @@ public class SOSManager {
 
     /**
      * Starts the SOS activation process, including vibration and a delay for final activation.
+     * The location fix, profile and nearby responders are prefetched while the user holds the button.
      *
-     * @param listener The listener to handle SOS activation events.
+     * @param searchRadiusMeters The radius the SOS screen will search for responders.
+     * @param listener           The listener to handle SOS activation events.
      */
-    public void startSOSActivation(SOSActivationListener listener) {
+    public void startSOSActivation(double searchRadiusMeters, SOSActivationListener listener) {
         isActivating = true;
+        this.searchRadiusMeters = searchRadiusMeters;
         listener.onSOSActivationStarted();
 
+        if (prefetch != null) {
+            prefetch.cancel();
+        }
+        prefetch = new SOSPrefetch(context);
+        prefetch.start(searchRadiusMeters, SOSFragment.NEAREST_RESPONDERS);
+
         if (vibrator != null && vibrator.hasVibrator()) {
             long[] pattern = {0, VIBRATION_INTERVAL, VIBRATION_INTERVAL};
             vibrator.vibrate(VibrationEffect.createWaveform(pattern, 0));
@@ -107,7 +192,7 @@ public class SOSManager {
     }
 
     /**
-     * Cancels the SOS activation process if it is still ongoing.
+     * Cancels the SOS activation process if it is still ongoing, discarding the prefetched data.
      *
      * @param listener The listener to handle SOS cancellation events.
      */
@@ -117,143 +202,355 @@ public class SOSManager {
             if (vibrator != null) {
                 vibrator.cancel();
             }
+            if (prefetch != null) {
+                prefetch.cancel();
+                prefetch = null;
+            }
             listener.onSOSActivationCancelled();
             isActivating = false;
         }
     }
 
     /**
-     * Activates the SOS request by obtaining the user's location and notifying nearby users.
+     * Stops an activation that is still being held and cancels its prefetch, without notifying anyone. Call
+     * this when the screen that owns the manager goes away. An activated request's prefetch is not affected,
+     * since it is waiting for the SOS screen.
+     */
+    public void release() {
+        if (isActivating) {
+            handler.removeCallbacksAndMessages(null);
+            if (vibrator != null) {
+                vibrator.cancel();
+            }
+            isActivating = false;
+        }
+        if (prefetch != null) {
+            prefetch.cancel();
+            prefetch = null;
+        }
+    }
+
+    /**
+     * Activates the SOS request at the prefetched location and notifies the listener of the outcome.
      *
      * @param listener The listener to handle SOS activation events.
      */
     public void activateSOS(SOSActivationListener listener) {
+        activateSosAsync().whenComplete((timings, error) -> {
+            if (error != null) {
+                listener.onSOSActivationCancelled();
+                return;
+            }
+            listener.onSOSActivated();
+            if (sosFragment != null) {
+                sosFragment.findNearbyUsersWithEpiPen();
+            }
+        });
+    }
+
+    /**
+     * Activates the SOS request at the prefetched location in a single multi-path update. The update writes
+     * the request, opens a new session with no responses, marks the user as needing help, removes them from
+     * the responder projection, and notifies the nearest responders found during the hold. Timestamps use
+     * the estimated server time, so nothing has to be read back. The prefetch is then handed over to the SOS
+     * screen through {@link #takePendingPrefetch()}.
+     *
+     * @return A future that completes with the stage timings once the update is acknowledged, or fails if no
+     * location fix arrives within {@link #LOCATION_TIMEOUT_MS} or the update fails.
+     */
+    public CompletableFuture<ActivationTimings> activateSosAsync() {
         String userId = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
+        SOSPrefetch current = prefetch;
+        prefetch = null;
+        if (current == null) {
+            current = new SOSPrefetch(context);
+            current.start(searchRadiusMeters, SOSFragment.NEAREST_RESPONDERS);
+        }
+
+        SOSPrefetch committed = current;
+        CompletableFuture<ActivationTimings> activation = Futures.withTimeout(committed.getLocationAsync(), LOCATION_TIMEOUT_MS)
+                .thenCompose(location -> {
+                    if (location == null) {
+                        throw new CompletionException(new IllegalStateException("Unable to get current location"));
+                    }
+
+                    // Each request gets its own session, so responses never need to be cleared or reset
+                    String sessionId = mDatabase.child(SESSIONS_ROOT).push().getKey();
 
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            FusedLocationProviderClient fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
-            fusedLocationClient.getLastLocation().addOnSuccessListener(location -> {
-                if (location != null) {
                     Map<String, Object> sosData = new HashMap<>();
                     sosData.put("requester", userId);
+                    sosData.put("sessionId", sessionId);
                     sosData.put("latitude", location.getLatitude());
                     sosData.put("longitude", location.getLongitude());
-                    sosData.put("timestamp", ServerValue.TIMESTAMP);
+                    sosData.put("timestamp", ServerClock.now());
                     sosData.put("active", true);
 
-                    // Clear existing responses
-                    mDatabase.child("sos_responses").child(userId).removeValue();
-
-                    mDatabase.child("sos_requests").child(userId).setValue(sosData)
-                            .addOnSuccessListener(aVoid -> updateSOSState(true, new UserManager.OnUserProfileUpdateListener() {
-                                @Override
-                                public void onSuccess() {
-                                    listener.onSOSActivated();
-                                    if (sosFragment != null) {
-                                        sosFragment.findNearbyUsersWithEpiPen();
-                                    }
-                                }
-
-                                @Override
-                                public void onFailure(String error) {
-                                    listener.onSOSActivationCancelled();
-                                }
-                            }))
-                            .addOnFailureListener(e -> listener.onSOSActivationCancelled());
-                } else {
-                    listener.onSOSActivationCancelled();
-                }
-            });
-        } else {
-            listener.onSOSActivationCancelled();
+                    List<String> recipients = committed.getNearestResponders();
+                    Map<String, Object> updates = buildActivationUpdates(userId, sessionId, sosData,
+                            committed.getProfile(), recipients);
+
+                    long commitStartedAt = committed.elapsedMs();
+                    return Futures.fromTask(mDatabase.updateChildren(updates)).thenApply(aVoid -> {
+                        long committedAt = committed.elapsedMs();
+                        lastActivationTimings = new ActivationTimings(committed.getLocationMs(),
+                                committed.getProfileMs(), committed.getRespondersMs(),
+                                committedAt - commitStartedAt, committedAt, recipients.size());
+                        Log.i("SOSManager", "SOS activated: " + lastActivationTimings);
+
+                        committed.setSession(sessionId, sosData, recipients);
+                        setPendingPrefetch(committed);
+                        return lastActivationTimings;
+                    });
+                });
+        activation.whenComplete((timings, error) -> {
+            if (error != null) {
+                Log.e("SOSManager", "Failed to activate SOS: " + Futures.messageOf(error));
+                committed.cancel();
+            }
+        });
+        return activation;
+    }
+
+    /**
+     * Builds the multi-path update that activates an SOS request. The recipients are at most the K nearest
+     * responders, so their notifications always fit into the same update.
+     *
+     * @param userId     The ID of the requester.
+     * @param sessionId  The ID of the new SOS session.
+     * @param sosData    The SOS request.
+     * @param profile    The requester's profile, or null if it is unknown; it is not modified.
+     * @param recipients The IDs of the users to notify.
+     * @return The multi-path update.
+     */
+    public static Map<String, Object> buildActivationUpdates(String userId, String sessionId, Object sosData,
+                                                             UserProfile profile, List<String> recipients) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("sos_requests/" + userId, sosData);
+        updates.put(SESSIONS_ROOT + "/" + sessionId + "/requester", userId);
+        updates.put(SESSIONS_ROOT + "/" + sessionId + "/timestamp", ServerValue.TIMESTAMP);
+        updates.put(SESSIONS_ROOT + "/" + sessionId + "/state", STATE_ACTIVE);
+        updates.put("users/" + userId + "/" + UserProfileCodec.NEEDS_HELP_KEY, true);
+        if (profile != null) {
+            UserProfile requester = new UserProfile(profile);
+            requester.setNeedsHelp(true);
+            ResponderIndex.putUpdates(updates, userId, requester,
+                    ResponderIndex.keyFor(requester.getLatitude(), requester.getLongitude()));
         }
+        for (Map<String, Object> chunk : buildFanOutChunks(sosData, recipients, Integer.MAX_VALUE)) {
+            updates.putAll(chunk);
+        }
+        return updates;
     }
 
     /**
-     * Notifies nearby users with EpiPens about the active SOS request.
+     * Gets the stage timings of the most recent SOS activation.
      *
-     * @param nearbyUsers The list of nearby users to notify.
+     * @return The timings, or null if no SOS was activated yet.
      */
-    public void notifyNearbyUsers(List<UserProfile> nearbyUsers) {
-        String currentUserId = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
-        DatabaseReference sosRequestRef = mDatabase.child("sos_requests").child(currentUserId);
+    public ActivationTimings getLastActivationTimings() {
+        return lastActivationTimings;
+    }
 
-        sosRequestRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                if (dataSnapshot.exists()) {
-                    Double requestLat = dataSnapshot.child("latitude").getValue(Double.class);
-                    Double requestLon = dataSnapshot.child("longitude").getValue(Double.class);
+    /**
+     * Takes the prefetch of the most recently activated SOS request, leaving none pending.
+     *
+     * @return The prefetch, or null if there is none.
+     */
+    public static synchronized SOSPrefetch takePendingPrefetch() {
+        pendingPrefetchHandler.removeCallbacks(expirePendingPrefetch);
+        SOSPrefetch taken = pendingPrefetch;
+        pendingPrefetch = null;
+        return taken;
+    }
 
-                    for (UserProfile user : nearbyUsers) {
-                        String userId = user.getUserId();
-                        if (userId != null && !userId.equals(currentUserId)) {
-                            float[] distance = new float[1];
-                            Location.distanceBetween(requestLat, requestLon, user.getLatitude(), user.getLongitude(), distance);
+    /**
+     * Stores the prefetch of an activated SOS request for the SOS screen, cancelling one that was never taken.
+     * If the SOS screen does not take it within {@link #PENDING_PREFETCH_TTL_MS}, it is cancelled, so its
+     * responder listeners are not held indefinitely.
+     *
+     * @param committed The prefetch of the activated request.
+     */
+    private static synchronized void setPendingPrefetch(SOSPrefetch committed) {
+        if (pendingPrefetch != null) {
+            pendingPrefetch.cancel();
+        }
+        pendingPrefetch = committed;
+        pendingPrefetchHandler.removeCallbacks(expirePendingPrefetch);
+        pendingPrefetchHandler.postDelayed(expirePendingPrefetch, PENDING_PREFETCH_TTL_MS);
+    }
 
-                            Log.d("SOSManager", "Notifying user: " + userId + " at distance: " + distance[0] + " meters");
+    /**
+     * Notifies nearby users with EpiPens about the active SOS request. The notifications are written as
+     * multi-path updates of at most {@link #MAX_PATHS_PER_WRITE} paths each, so a large fan-out costs a
+     * handful of round-trips instead of one per recipient.
+     *
+     * @param sosData    The SOS request to deliver, as stored under {@code sos_requests/<uid>}.
+     * @param candidates The store holding the nearby users.
+     * @param slots      The slots of the nearby users to notify.
+     * @param count      The number of slots to read from the array.
+     * @param listener   The listener to report delivery progress to.
+     */
+    public void notifyNearbyUsers(Object sosData, CandidateStore candidates, int[] slots, int count,
+                                  FanOutListener listener) {
+        String currentUserId = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
+        List<String> recipients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String userId = candidates.userIdAt(slots[i]);
+            if (userId != null && !userId.equals(currentUserId)) {
+                recipients.add(userId);
+            }
+        }
 
-                            mDatabase.child("sos_notifications").child(userId).setValue(dataSnapshot.getValue());
-                        }
-                    }
-                    mDatabase.child("latest_sos").setValue(dataSnapshot.getValue());
+        List<Map<String, Object>> chunks = buildFanOutChunks(sosData, recipients, MAX_PATHS_PER_WRITE);
+        int total = recipients.size();
+        long startedAt = SystemClock.elapsedRealtime();
+        int[] delivered = new int[1];
+        int[] pendingChunks = {chunks.size()};
+        for (Map<String, Object> chunk : chunks) {
+            int chunkRecipients = chunk.containsKey(LATEST_SOS_PATH) ? chunk.size() - 1 : chunk.size();
+            Futures.fromTask(mDatabase.updateChildren(chunk)).whenComplete((aVoid, error) -> {
+                if (error != null) {
+                    Log.e("SOSManager", "Failed to notify nearby users", error);
+                    listener.onFailure(Futures.messageOf(error));
+                    return;
                 }
-            }
+                delivered[0] += chunkRecipients;
+                listener.onProgress(delivered[0], total);
+                if (--pendingChunks[0] == 0) {
+                    long elapsed = SystemClock.elapsedRealtime() - startedAt;
+                    Log.i("SOSManager", "Notified " + total + " users in " + chunks.size()
+                            + " writes, last delivery after " + elapsed + " ms");
+                    listener.onComplete(total, elapsed);
+                }
+            });
+        }
+    }
 
-            @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
-                Log.e("SOSManager", "Failed to read SOS request data", databaseError.toException());
+    /**
+     * Splits an SOS fan-out into multi-path updates. Every update holds at most {@code maxPaths} paths; the
+     * first one also publishes the request as the latest SOS.
+     *
+     * @param sosData    The SOS request to deliver.
+     * @param recipients The IDs of the users to notify.
+     * @param maxPaths   The maximum number of paths per update.
+     * @return The updates to write, in order.
+     */
+    public static List<Map<String, Object>> buildFanOutChunks(Object sosData, List<String> recipients, int maxPaths) {
+        List<Map<String, Object>> chunks = new ArrayList<>();
+        Map<String, Object> chunk = new HashMap<>();
+        chunk.put(LATEST_SOS_PATH, sosData);
+        for (String userId : recipients) {
+            if (chunk.size() == maxPaths) {
+                chunks.add(chunk);
+                chunk = new HashMap<>();
             }
-        });
+            chunk.put("sos_notifications/" + userId, sosData);
+        }
+        chunks.add(chunk);
+        return chunks;
     }
 
     /**
-     * Updates the user's SOS state in their profile.
+     * Updates the user's SOS state in their profile. Clearing the state cancels the active SOS request.
      *
      * @param needsHelp Indicates whether the user is in need of help.
      * @param listener  The listener to handle the result of the update.
      */
     public void updateSOSState(boolean needsHelp, final UserManager.OnUserProfileUpdateListener listener) {
-        userManager.getUserProfile(new UserManager.OnUserProfileFetchListener() {
-            @Override
-            public void onSuccess(UserProfile userProfile) {
-                userProfile.setNeedsHelp(needsHelp);
-                userManager.createOrUpdateUser(userProfile, new UserManager.OnUserProfileUpdateListener() {
-                    @Override
-                    public void onSuccess() {
-                        if (!needsHelp) {
-                            cancelSOS(listener);
-                        } else {
-                            listener.onSuccess();
-                        }
-                    }
+        UserManager.deliver(updateSosStateAsync(needsHelp), listener);
+    }
 
-                    @Override
-                    public void onFailure(String error) {
-                        listener.onFailure(error);
-                    }
-                });
-            }
+    /**
+     * Updates the user's SOS state in their profile. Clearing the state cancels the active SOS request.
+     * Setting it writes only the help flag and the responder projection entry, and nothing if the flag is
+     * already set.
+     *
+     * @param needsHelp Indicates whether the user is in need of help.
+     * @return A future that completes once the state is updated.
+     */
+    public CompletableFuture<Void> updateSosStateAsync(boolean needsHelp) {
+        if (!needsHelp) {
+            return cancelSosAsync(null);
+        }
+        return userManager.getUserProfileAsync().thenCompose(userProfile ->
+                userManager.patchProfileAsync(new ProfilePatch(userProfile).setNeedsHelp(true)));
+    }
 
-            @Override
-            public void onFailure(String error) {
-                listener.onFailure("Failed to fetch user profile: " + error);
-            }
-        });
+    /**
+     * Cancels the active SOS request and notifies the listener of the outcome.
+     *
+     * @param sessionId The ID of the session to cancel, or null if it is unknown.
+     * @param listener  The listener to handle the result of the cancellation.
+     */
+    public void cancelSOS(String sessionId, UserManager.OnUserProfileUpdateListener listener) {
+        UserManager.deliver(cancelSosAsync(sessionId), listener);
     }
 
     /**
-     * Cancels the active SOS request and clears related notifications.
+     * Cancels the active SOS request in a single multi-path update: the session is marked as cancelled, which
+     * is what recipients observe, and the request, the session's responses and the user's help flag are cleared
+     * in the same write. The latest SOS is cleared separately, and only if it still belongs to this user.
+     *
+     * <p>If the session is unknown, it is looked up from the user's SOS request first, so the session state is
+     * never left active. The cancellation fails if the lookup does.
      *
-     * @param listener The listener to handle the result of the cancellation.
+     * @param sessionId The ID of the session to cancel, or null if it is unknown.
+     * @return A future that completes once the cancellation is written, or fails if the session could not be
+     * looked up within {@link UserManager#READ_TIMEOUT_MS}.
      */
-    private void cancelSOS(UserManager.OnUserProfileUpdateListener listener) {
+    public CompletableFuture<Void> cancelSosAsync(String sessionId) {
         String userId = Objects.requireNonNull(FirebaseAuth.getInstance().getCurrentUser()).getUid();
-        mDatabase.child("sos_requests").child(userId).removeValue()
-                .addOnSuccessListener(aVoid -> {
-                    listener.onSuccess();
-                    notificationManager.cancelAllNotifications();
-                })
-                .addOnFailureListener(e -> listener.onFailure(e.getMessage()));
+        if (sessionId != null) {
+            return writeCancellation(userId, sessionId);
+        }
+        DatabaseReference sessionIdRef = mDatabase.child("sos_requests").child(userId).child("sessionId");
+        return Futures.withTimeout(Futures.fromTask(sessionIdRef.get()), UserManager.READ_TIMEOUT_MS)
+                .thenCompose(snapshot -> writeCancellation(userId, snapshot.getValue(String.class)));
+    }
+
+    /**
+     * Writes the cancellation of an SOS request.
+     *
+     * @param userId    The ID of the requester.
+     * @param sessionId The ID of the session to cancel, or null if the user has no active request.
+     * @return A future that completes once the cancellation is written.
+     */
+    private CompletableFuture<Void> writeCancellation(String userId, String sessionId) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("sos_requests/" + userId, null);
+        updates.put("users/" + userId + "/" + UserProfileCodec.NEEDS_HELP_KEY, false);
+        if (sessionId != null) {
+            updates.put(SESSIONS_ROOT + "/" + sessionId + "/state", STATE_CANCELLED);
+            updates.put(SESSIONS_ROOT + "/" + sessionId + "/responders", null);
+        }
+
+        clearLatestSOS(userId);
+        return Futures.fromTask(mDatabase.updateChildren(updates))
+                .thenRun(notificationManager::cancelAllNotifications);
+    }
+
+    /**
+     * Clears the latest SOS if it was published by the given user, leaving a newer request from someone else intact.
+     *
+     * @param userId The ID of the user whose request was cancelled.
+     */
+    private void clearLatestSOS(String userId) {
+        mDatabase.child(LATEST_SOS_PATH).runTransaction(new Transaction.Handler() {
+            @NonNull
+            @Override
+            public Transaction.Result doTransaction(@NonNull MutableData currentData) {
+                if (userId.equals(currentData.child("requester").getValue(String.class))) {
+                    currentData.setValue(null);
+                }
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(@Nullable DatabaseError error, boolean committed, @Nullable DataSnapshot currentData) {
+                if (error != null) {
+                    Log.e("SOSManager", "Failed to clear the latest SOS", error.toException());
+                }
+            }
+        });
     }
 }
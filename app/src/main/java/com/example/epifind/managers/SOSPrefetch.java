@@ -0,0 +1,313 @@
+package com.example.epifind.managers;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import com.example.epifind.geo.NearestResponderQuery;
+import com.example.epifind.geo.ResponderIndex;
+import com.example.epifind.models.UserProfile;
+import com.example.epifind.utils.Futures;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.FirebaseDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * SOSPrefetch warms up what an SOS request needs while the user is still holding the SOS button:
+ * a fresh high-accuracy location fix, the requester's profile, and the nearest responders around the fix.
+ * If the button is released early, the work is cancelled. If the SOS is activated, the results are
+ * handed to the activation and then to the SOS screen, so neither waits on the network for them again.
+ *
+ * <p>The responders are prefetched with the same ring sequence the SOS screen uses, so its search is
+ * answered from the listeners this prefetch already holds. Call {@link #release()} once that search has
+ * loaded to detach them.
+ */
+public class SOSPrefetch {
+    private static final String TAG = "SOSPrefetch";
+
+    private final Context context;
+    private final CancellationTokenSource cancellationSource = new CancellationTokenSource();
+    private final long startedAt = SystemClock.elapsedRealtime();
+    private final CompletableFuture<Location> location = new CompletableFuture<>();
+    private CompletableFuture<UserProfile> profile = new CompletableFuture<>();
+    private NearestResponderQuery responderQuery;
+    private int[] responderSlots;
+    private boolean cancelled;
+    private String sessionId;
+    private Object sosData;
+    private List<String> notifiedUserIds = new ArrayList<>();
+    private long locationMs = -1;
+    private long profileMs = -1;
+    private long respondersMs = -1;
+
+    /**
+     * Constructor for SOSPrefetch.
+     *
+     * @param context The context used to access location services. Only its application context is kept, since
+     *                the prefetch can outlive the screen that started it.
+     */
+    public SOSPrefetch(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Starts requesting the location fix and the profile. The responder search starts once the fix arrives.
+     *
+     * @param searchRadiusMeters The radius the SOS screen will search.
+     * @param nearestResponders  The number of nearest responders the SOS screen will search for.
+     */
+    public void start(double searchRadiusMeters, int nearestResponders) {
+        fetchLocation(searchRadiusMeters, nearestResponders);
+        profile = UserManager.getInstance().getUserProfileAsync();
+        profile.whenComplete((userProfile, error) -> {
+            if (error != null) {
+                Log.w(TAG, "Failed to prefetch profile: " + Futures.messageOf(error));
+            } else {
+                profileMs = elapsedMs();
+            }
+        });
+    }
+
+    /**
+     * Cancels all pending work and drops the results. Cancelling is cheap: the location request is
+     * cancelled through its token, the profile read and the responder listeners are detached, and the
+     * pending futures are cancelled.
+     */
+    public void cancel() {
+        cancelled = true;
+        cancellationSource.cancel();
+        location.cancel(false);
+        profile.cancel(false);
+        release();
+    }
+
+    /**
+     * Detaches the responder listeners held by the prefetch. The other results stay available.
+     */
+    public void release() {
+        if (responderQuery != null) {
+            responderQuery.stop();
+            responderQuery = null;
+        }
+    }
+
+    /**
+     * Gets the location fix as a future.
+     *
+     * @return A future that completes with the fix, or with null if none could be obtained.
+     */
+    public CompletableFuture<Location> getLocationAsync() {
+        return location;
+    }
+
+    /**
+     * Gets the prefetched location fix.
+     *
+     * @return The location fix, or null if it is not resolved yet or could not be obtained.
+     */
+    public Location getLocation() {
+        return Futures.getNowOrNull(location);
+    }
+
+    /**
+     * Gets the prefetched profile of the requester.
+     *
+     * @return The profile, or null if it has not been fetched yet.
+     */
+    public UserProfile getProfile() {
+        return Futures.getNowOrNull(profile);
+    }
+
+    /**
+     * Gets the IDs of the nearest responders found so far, closest first. Only responders within the radius
+     * searched so far are returned, since closer ones may still be loading beyond it.
+     *
+     * @return The IDs of the responders, or an empty list if the search has not started.
+     */
+    public List<String> getNearestResponders() {
+        List<String> userIds = new ArrayList<>();
+        if (responderQuery == null) return userIds;
+        int count = responderQuery.nearest(responderSlots);
+        for (int i = 0; i < count; i++) {
+            userIds.add(responderQuery.getStore().userIdAt(responderSlots[i]));
+        }
+        return userIds;
+    }
+
+    /**
+     * Records the SOS request the prefetch was committed to, for the SOS screen to pick up.
+     *
+     * @param sessionId       The ID of the SOS session.
+     * @param sosData         The SOS request, as stored under {@code sos_requests/<uid>}.
+     * @param notifiedUserIds The IDs of the users notified when the request was activated.
+     */
+    public void setSession(String sessionId, Object sosData, List<String> notifiedUserIds) {
+        this.sessionId = sessionId;
+        this.sosData = sosData;
+        this.notifiedUserIds = notifiedUserIds;
+    }
+
+    /**
+     * Gets the ID of the SOS session the prefetch was committed to.
+     *
+     * @return The session ID, or null if the prefetch has not been committed.
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Gets the SOS request the prefetch was committed to.
+     *
+     * @return The SOS request, or null if the prefetch has not been committed.
+     */
+    public Object getSosData() {
+        return sosData;
+    }
+
+    /**
+     * Gets the IDs of the users notified when the request was activated.
+     *
+     * @return The IDs of the notified users.
+     */
+    public List<String> getNotifiedUserIds() {
+        return notifiedUserIds;
+    }
+
+    /**
+     * Gets the time from the start of the prefetch until the location fix was resolved.
+     *
+     * @return The time in milliseconds, or -1 if the fix is not resolved yet.
+     */
+    public long getLocationMs() {
+        return locationMs;
+    }
+
+    /**
+     * Gets the time from the start of the prefetch until the profile was fetched.
+     *
+     * @return The time in milliseconds, or -1 if the profile has not been fetched yet.
+     */
+    public long getProfileMs() {
+        return profileMs;
+    }
+
+    /**
+     * Gets the time from the start of the prefetch until the responder search stopped widening.
+     *
+     * @return The time in milliseconds, or -1 if the search has not finished yet.
+     */
+    public long getRespondersMs() {
+        return respondersMs;
+    }
+
+    /**
+     * Gets the time since the prefetch was created.
+     *
+     * @return The elapsed time in milliseconds.
+     */
+    public long elapsedMs() {
+        return SystemClock.elapsedRealtime() - startedAt;
+    }
+
+    /**
+     * Requests a fresh high-accuracy location fix, falling back to the last known location if none is returned.
+     *
+     * @param searchRadiusMeters The radius to prefetch responders within.
+     * @param nearestResponders  The number of nearest responders to prefetch.
+     */
+    private void fetchLocation(double searchRadiusMeters, int nearestResponders) {
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            resolveLocation(null, searchRadiusMeters, nearestResponders);
+            return;
+        }
+
+        FusedLocationProviderClient fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        Futures.fromTask(fusedLocationClient.getCurrentLocation(Priority.PRIORITY_HIGH_ACCURACY, cancellationSource.getToken()))
+                .handle((fix, error) -> {
+                    if (error != null && !cancelled) {
+                        Log.w(TAG, "Failed to get a fresh location fix", error);
+                    }
+                    return fix;
+                })
+                .thenCompose(fix -> fix != null || cancelled
+                        ? CompletableFuture.completedFuture(fix)
+                        : Futures.fromTask(fusedLocationClient.getLastLocation()))
+                .whenComplete((fix, error) -> resolveLocation(error == null ? fix : null,
+                        searchRadiusMeters, nearestResponders));
+    }
+
+    /**
+     * Starts prefetching the responders around the location fix and completes the location future.
+     *
+     * @param fix                The location fix, or null if none could be obtained.
+     * @param searchRadiusMeters The radius to prefetch responders within.
+     * @param nearestResponders  The number of nearest responders to prefetch.
+     */
+    private void resolveLocation(Location fix, double searchRadiusMeters, int nearestResponders) {
+        if (cancelled || location.isDone()) return;
+        locationMs = elapsedMs();
+        if (fix != null) {
+            prefetchResponders(fix, searchRadiusMeters, nearestResponders);
+        }
+        location.complete(fix);
+    }
+
+    /**
+     * Runs the nearest responder search around the fix, so its cells are loaded before the SOS screen asks for them.
+     *
+     * @param fix                The location fix.
+     * @param searchRadiusMeters The radius to search within.
+     * @param nearestResponders  The number of nearest responders to search for.
+     */
+    private void prefetchResponders(Location fix, double searchRadiusMeters, int nearestResponders) {
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        String currentUserId = currentUser != null ? currentUser.getUid() : null;
+        responderSlots = new int[nearestResponders];
+        responderQuery = new NearestResponderQuery(
+                FirebaseDatabase.getInstance().getReference(ResponderIndex.ROOT),
+                fix.getLatitude(), fix.getLongitude(), nearestResponders, searchRadiusMeters,
+                new NearestResponderQuery.NearestResponderListener() {
+                    @Override
+                    public boolean onResponderEntered(String userId, DataSnapshot snapshot) {
+                        return !userId.equals(currentUserId);
+                    }
+
+                    @Override
+                    public void onResponderMoved(String userId, DataSnapshot snapshot) {
+                    }
+
+                    @Override
+                    public void onResponderExited(String userId) {
+                    }
+
+                    @Override
+                    public void onNearestChanged(boolean complete) {
+                        if (complete && respondersMs < 0) {
+                            respondersMs = elapsedMs();
+                        }
+                    }
+
+                    @Override
+                    public void onQueryError(DatabaseError error) {
+                        Log.w(TAG, "Failed to prefetch responders", error.toException());
+                    }
+                });
+        responderQuery.start();
+    }
+}
@@ -1,28 +1,73 @@
 package com.example.epifind.managers;
 
-import android.text.TextUtils;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.example.epifind.geo.ResponderIndex;
+import com.example.epifind.models.ProfilePatch;
+import com.example.epifind.models.ProfileView;
 import com.example.epifind.models.UserProfile;
+import com.example.epifind.models.UserProfileCodec;
+import com.example.epifind.utils.DatabaseCache;
+import com.example.epifind.utils.Futures;
+import com.example.epifind.utils.SingleFlightCache;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
 import com.google.firebase.database.ValueEventListener;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 /**
  * UserManager is responsible for managing user profiles in the EpiFind app.
  * It provides methods to create, update, and retrieve user profiles, as well as to check profile completeness.
+ * Each operation returns a {@link CompletableFuture}, so independent steps can run concurrently and be
+ * composed; the listener-based methods are thin adapters over the futures.
+ *
+ * <p>Profiles are cached. The signed-in user's profile is kept current by a live listener, so it is read from
+ * the network once per session; other users' profiles are kept for {@link #PROFILE_TTL_MS}. Concurrent reads
+ * of the same profile share one fetch, and every caller gets its own copy of the cached profile.
  */
 public class UserManager {
     private static final String TAG = "UserManager";
+    public static final long READ_TIMEOUT_MS = 10000;
+    public static final int PROFILE_CACHE_SIZE = 32;
+    public static final long PROFILE_TTL_MS = 60000; // 1 minute
+    private static final int COMPLETENESS_FIELDS =
+            UserProfileCodec.NAME | UserProfileCodec.ALLERGIES | UserProfileCodec.EPIPEN_EXPIRY;
     private static UserManager instance;
     private final DatabaseReference mDatabase;
     private final FirebaseAuth mAuth;
+    private final SingleFlightCache<String, UserProfile> profileCache =
+            new SingleFlightCache<>(PROFILE_CACHE_SIZE, PROFILE_TTL_MS, SystemClock::elapsedRealtime);
+    private String watchedUserId;
+    private DatabaseReference watchedProfileRef;
+    private ValueEventListener watchedProfileListener;
+    private volatile OnOwnProfileChangeListener ownProfileChangeListener;
+
+    /**
+     * ProfileNotFoundException signals that a user has no stored profile yet, as opposed to a read that
+     * failed or timed out.
+     */
+    public static class ProfileNotFoundException extends IllegalStateException {
+        /**
+         * Constructor for ProfileNotFoundException.
+         */
+        public ProfileNotFoundException() {
+            super("User profile does not exist");
+        }
+    }
 
     /**
      * Interface for handling user profile update results.
@@ -40,6 +85,21 @@ public class UserManager {
         void onFailure(String error);
     }
 
+    /**
+     * Interface for handling profile view fetch results.
+     */
+    public interface OnProfileViewFetchListener {
+        void onSuccess(ProfileView profileView);
+        void onFailure(String error);
+    }
+
+    /**
+     * Interface for observing changes to the signed-in user's profile while it is kept cached.
+     */
+    public interface OnOwnProfileChangeListener {
+        void onOwnProfileChanged(UserProfile userProfile);
+    }
+
     /**
      * Interface for checking whether a user's profile is complete.
      */
@@ -68,198 +128,512 @@ public class UserManager {
     }
 
     /**
-     * Creates or updates a user profile in the Firebase Realtime Database.
+     * Creates or updates a user profile in the Firebase Realtime Database, together with the user's entry in
+     * the responder projection. Only the fields that differ from the stored profile are written, and the
+     * location fields never are; see {@link #patchProfileAsync(ProfilePatch)}. The profile is written in full
+     * only if none is stored yet; if the stored profile cannot be read, nothing is written.
      *
      * @param userProfile The user profile to create or update.
-     * @param listener    The listener to handle the result of the operation.
+     * @return A future that completes once the profile is written, or fails if the stored profile cannot be read.
      */
-    public void createOrUpdateUser(UserProfile userProfile, final OnUserProfileUpdateListener listener) {
+    public CompletableFuture<Void> createOrUpdateUserAsync(UserProfile userProfile) {
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser == null) {
-            handleNoUserSignedIn(listener);
-            return;
+            return noUserSignedIn();
+        }
+        return getUserProfileAsync(currentUser.getUid())
+                .thenApply(existing -> ProfilePatch.diff(existing, userProfile))
+                .exceptionally(error -> {
+                    if (Futures.unwrap(error) instanceof ProfileNotFoundException) {
+                        return ProfilePatch.create(userProfile);
+                    }
+                    // Writing every field after a failed read could blank the stored profile
+                    throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                })
+                .thenCompose(this::patchProfileAsync);
+    }
+
+    /**
+     * Writes the changed fields of the current user's profile in a single multi-path update, rewriting the
+     * user's responder projection entry only if the patch affects it. An empty patch is not written at all.
+     *
+     * @param patch The edits to the profile.
+     * @return A future that completes once the changes are written.
+     */
+    public CompletableFuture<Void> patchProfileAsync(ProfilePatch patch) {
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        if (currentUser == null) {
+            return noUserSignedIn();
+        }
+        if (patch.isEmpty()) {
+            Log.d(TAG, "User profile unchanged, skipping write");
+            return CompletableFuture.completedFuture(null);
         }
 
         String userId = currentUser.getUid();
-        userProfile.setUserId(userId);
+        UserProfile profile = patch.getProfile();
+        profile.setUserId(userId);
 
-        mDatabase.child("users").child(userId).setValue(userProfile)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "User profile updated successfully");
-                    if (listener != null) {
-                        listener.onSuccess();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error updating user profile", e);
-                    if (listener != null) {
-                        listener.onFailure(e.getMessage());
+        Map<String, Object> updates = new HashMap<>();
+        patch.putUpdates(updates, "users/" + userId + "/");
+        if (patch.affectsResponderEntry()) {
+            ResponderIndex.putUpdates(updates, userId, profile,
+                    ResponderIndex.keyFor(profile.getLatitude(), profile.getLongitude()));
+        }
+
+        return Futures.fromTask(mDatabase.updateChildren(updates))
+                .whenComplete((aVoid, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "Error updating user profile", error);
+                    } else {
+                        Log.d(TAG, "User profile updated successfully (" + updates.size() + " paths)");
                     }
                 });
     }
 
     /**
-     * Retrieves the current user's profile from Firebase Realtime Database.
+     * Retrieves the current user's profile, from the cache if possible.
      *
-     * @param listener The listener to handle the result of the fetch operation.
+     * @return A future that completes with a copy of the profile, or fails if it does not exist or cannot be read
+     * within {@link #READ_TIMEOUT_MS}.
      */
-    public void getUserProfile(final OnUserProfileFetchListener listener) {
+    public CompletableFuture<UserProfile> getUserProfileAsync() {
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser == null) {
-            handleNoUserSignedIn(listener);
-            return;
+            return noUserSignedIn();
         }
-
-        String userId = currentUser.getUid();
-        fetchUserProfile(userId, listener);
+        return getUserProfileAsync(currentUser.getUid());
     }
 
     /**
-     * Retrieves a user profile by user ID from Firebase Realtime Database.
+     * Retrieves a user profile by user ID, from the cache if possible. Reading the signed-in user's profile
+     * starts the live listener that keeps it cached.
      *
-     * @param userId   The ID of the user whose profile to fetch.
-     * @param listener The listener to handle the result of the fetch operation.
+     * @param userId The ID of the user whose profile to fetch.
+     * @return A future that completes with a copy of the profile, or fails if it does not exist or cannot be
+     * read within {@link #READ_TIMEOUT_MS}.
      */
-    public void getUserProfileById(String userId, final OnUserProfileFetchListener listener) {
-        fetchUserProfile(userId, listener);
+    public CompletableFuture<UserProfile> getUserProfileAsync(String userId) {
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        if (currentUser != null && currentUser.getUid().equals(userId)) {
+            watchOwnProfile(userId);
+        }
+        return profileCache.get(userId, this::fetchUserProfile).thenApply(UserProfile::new);
     }
 
     /**
-     * Fetches a user profile from Firebase Realtime Database.
+     * Fetches a user profile from Firebase Realtime Database, bypassing the cache. The read is detached if it
+     * times out.
      *
-     * @param userId   The ID of the user whose profile to fetch.
-     * @param listener The listener to handle the result of the fetch operation.
+     * @param userId The ID of the user whose profile to fetch.
+     * @return A future that completes with the profile, or fails if it does not exist or cannot be read
+     * within {@link #READ_TIMEOUT_MS}.
      */
-    private void fetchUserProfile(String userId, final OnUserProfileFetchListener listener) {
-        mDatabase.child("users").child(userId).addListenerForSingleValueEvent(new ValueEventListener() {
+    private CompletableFuture<UserProfile> fetchUserProfile(String userId) {
+        CompletableFuture<UserProfile> future = new CompletableFuture<>();
+        DatabaseReference userRef = mDatabase.child("users").child(userId);
+        long startedAt = SystemClock.elapsedRealtime();
+        ValueEventListener listener = new ValueEventListener() {
             @Override
             public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                UserProfile userProfile = dataSnapshot.getValue(UserProfile.class);
+                DatabaseCache.recordRead(DatabaseCache.READ_PROFILE, startedAt);
+                UserProfile userProfile = UserProfileCodec.decode(dataSnapshot, UserProfileCodec.ALL, null);
                 if (userProfile != null) {
-                    userProfile.setUserId(dataSnapshot.getKey());
-                    Log.d(TAG, "User profile fetched successfully");
-                    if (listener != null) {
-                        listener.onSuccess(userProfile);
-                    }
+                    Log.d(TAG, "User profile fetched successfully (" + profileCache + ")");
+                    future.complete(userProfile);
                 } else {
                     Log.d(TAG, "User profile does not exist");
-                    if (listener != null) {
-                        listener.onFailure("User profile does not exist");
-                    }
+                    future.completeExceptionally(new ProfileNotFoundException());
                 }
             }
 
             @Override
             public void onCancelled(@NonNull DatabaseError databaseError) {
                 Log.e(TAG, "Error fetching user profile", databaseError.toException());
-                if (listener != null) {
-                    listener.onFailure(databaseError.getMessage());
-                }
+                future.completeExceptionally(databaseError.toException());
+            }
+        };
+        userRef.addListenerForSingleValueEvent(listener);
+        future.whenComplete((userProfile, error) -> {
+            if (future.isCancelled()) {
+                userRef.removeEventListener(listener);
             }
         });
+        return Futures.withTimeout(future, READ_TIMEOUT_MS);
     }
 
     /**
-     * Checks if the current user's profile is complete.
+     * Keeps the given user's profile pinned in the cache with a live listener, replacing the listener of a
+     * previously signed-in user. Changes made by this client, such as profile edits and SOS state updates,
+     * are reflected right away, since the database raises local events before the server confirms a write.
      *
-     * @param listener The listener to handle the result of the check operation.
+     * @param userId The ID of the signed-in user.
      */
-    public void isProfileComplete(final OnProfileCheckListener listener) {
-        FirebaseUser currentUser = mAuth.getCurrentUser();
-        if (currentUser == null) {
-            handleNoUserSignedIn(listener);
-            return;
-        }
+    private synchronized void watchOwnProfile(String userId) {
+        if (userId.equals(watchedUserId)) return;
+        stopWatchingOwnProfile();
 
-        String userId = currentUser.getUid();
-        mDatabase.child("users").child(userId).addListenerForSingleValueEvent(new ValueEventListener() {
+        watchedUserId = userId;
+        watchedProfileRef = mDatabase.child("users").child(userId);
+        watchedProfileListener = new ValueEventListener() {
             @Override
             public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                if (dataSnapshot.exists()) {
-                    UserProfile userProfile = dataSnapshot.getValue(UserProfile.class);
-                    if (userProfile != null) {
-                        boolean isComplete = !TextUtils.isEmpty(userProfile.getName()) &&
-                                !TextUtils.isEmpty(userProfile.getAllergies()) &&
-                                !TextUtils.isEmpty(userProfile.getEpiPenExpiry());
-                        listener.onResult(isComplete);
-                    } else {
-                        Log.d(TAG, "UserProfile is null");
-                        listener.onResult(false);
+                UserProfile userProfile = UserProfileCodec.decode(dataSnapshot, UserProfileCodec.ALL, null);
+                if (userProfile != null) {
+                    profileCache.pin(userId, userProfile);
+                    OnOwnProfileChangeListener listener = ownProfileChangeListener;
+                    if (listener != null) {
+                        listener.onOwnProfileChanged(new UserProfile(userProfile));
                     }
                 } else {
-                    Log.d(TAG, "User data does not exist");
-                    listener.onResult(false);
+                    profileCache.invalidate(userId);
                 }
             }
 
             @Override
             public void onCancelled(@NonNull DatabaseError databaseError) {
-                Log.e(TAG, "Error checking profile completeness", databaseError.toException());
-                listener.onResult(false);
+                Log.e(TAG, "Own profile listener cancelled", databaseError.toException());
+                synchronized (UserManager.this) {
+                    profileCache.invalidate(userId);
+                    watchedUserId = null;
+                    watchedProfileRef = null;
+                    watchedProfileListener = null;
+                }
             }
-        });
+        };
+        watchedProfileRef.addValueEventListener(watchedProfileListener);
+    }
+
+    /**
+     * Sets the listener notified each time the live listener of the signed-in user's profile sees it change,
+     * whether the change was made on this device or another one.
+     *
+     * @param listener The listener to notify, or null to stop notifying.
+     */
+    public void setOnOwnProfileChangeListener(OnOwnProfileChangeListener listener) {
+        ownProfileChangeListener = listener;
+    }
+
+    /**
+     * Detaches the live listener of the signed-in user's profile and drops it from the cache.
+     */
+    private synchronized void stopWatchingOwnProfile() {
+        if (watchedProfileRef != null && watchedProfileListener != null) {
+            watchedProfileRef.removeEventListener(watchedProfileListener);
+            profileCache.invalidate(watchedUserId);
+        }
+        watchedUserId = null;
+        watchedProfileRef = null;
+        watchedProfileListener = null;
+    }
+
+    /**
+     * Drops all cached profiles and detaches the live listener of the signed-in user's profile, for signing out.
+     */
+    public void clearProfileCache() {
+        stopWatchingOwnProfile();
+        profileCache.clear();
     }
 
     /**
-     * Updates the response status of the current user in Firebase Realtime Database.
+     * Gets the ID of the signed-in user without touching the network.
      *
-     * @param status   The response status to set.
-     * @param listener The listener to handle the result of the update operation.
+     * @return The user ID, or null if no user is signed in.
      */
-    public void updateUserResponseStatus(UserProfile.ResponseStatus status, final OnUserProfileUpdateListener listener) {
+    public String getCurrentUserId() {
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        return currentUser != null ? currentUser.getUid() : null;
+    }
+
+    /**
+     * Gets the profile cache, for reading its hit and miss counters.
+     *
+     * @return The profile cache.
+     */
+    public SingleFlightCache<String, UserProfile> getProfileCache() {
+        return profileCache;
+    }
+
+    /**
+     * Checks if the current user's profile is complete. Unless the profile is cached, this reads the single
+     * profile-complete flag that profile writes keep up to date, rather than the profile.
+     *
+     * @return A future that completes with true if the profile is complete, and with false if it is
+     * incomplete, missing or cannot be read.
+     */
+    public CompletableFuture<Boolean> isProfileCompleteAsync() {
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser == null) {
-            handleNoUserSignedIn(listener);
-            return;
+            return CompletableFuture.completedFuture(false);
         }
-
         String userId = currentUser.getUid();
-        mDatabase.child("users").child(userId).child("responseStatus").setValue(status.name())
-                .addOnSuccessListener(aVoid -> {
-                    if (listener != null) {
-                        listener.onSuccess();
+        UserProfile cached = profileCache.peek(userId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.isComplete());
+        }
+
+        DatabaseReference completeRef = mDatabase.child("users").child(userId).child(UserProfileCodec.PROFILE_COMPLETE);
+        return readValueAsync(completeRef)
+                .thenCompose(value -> {
+                    if (value instanceof Boolean) {
+                        return CompletableFuture.completedFuture((Boolean) value);
                     }
+                    // Profiles written before the flag existed: derive it once and store it for next time
+                    return getProfileViewAsync(userId, COMPLETENESS_FIELDS).thenApply(view -> {
+                        boolean complete = view.isComplete();
+                        completeRef.setValue(complete);
+                        return complete;
+                    });
                 })
-                .addOnFailureListener(e -> {
-                    if (listener != null) {
-                        listener.onFailure(e.getMessage());
-                    }
+                .exceptionally(error -> {
+                    Log.d(TAG, "Error checking profile completeness: " + Futures.messageOf(error));
+                    return false;
                 });
     }
 
     /**
-     * Handles the case where no user is signed in, triggering a failure callback.
+     * Reads some fields of the current user's profile.
      *
-     * @param listener The listener to notify of the failure.
+     * @param fields The fields to read, as a combination of the {@link UserProfileCodec} field constants.
+     * @return A future that completes with a view of the fields; see {@link #getProfileViewAsync(String, int)}.
      */
-    private void handleNoUserSignedIn(OnUserProfileUpdateListener listener) {
-        Log.e(TAG, "No user is signed in");
-        if (listener != null) {
-            listener.onFailure("No user is signed in");
+    public CompletableFuture<ProfileView> getProfileViewAsync(int fields) {
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        if (currentUser == null) {
+            return noUserSignedIn();
         }
+        return getProfileViewAsync(currentUser.getUid(), fields);
     }
 
     /**
-     * Handles the case where no user is signed in, triggering a failure callback.
+     * Reads some fields of a user profile. A cached profile is used if there is one; otherwise only the
+     * children holding the fields are read, all in parallel.
      *
-     * @param listener The listener to notify of the failure.
+     * @param userId The ID of the user whose profile to read.
+     * @param fields The fields to read, as a combination of the {@link UserProfileCodec} field constants.
+     * @return A future that completes with a view of the fields, or fails if the profile does not exist or a
+     * field cannot be read within {@link #READ_TIMEOUT_MS}.
      */
-    private void handleNoUserSignedIn(OnUserProfileFetchListener listener) {
-        Log.e(TAG, "No user is signed in");
-        if (listener != null) {
-            listener.onFailure("No user is signed in");
+    public CompletableFuture<ProfileView> getProfileViewAsync(String userId, int fields) {
+        UserProfile cached = profileCache.peek(userId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(ProfileView.of(cached, fields));
+        }
+
+        DatabaseReference userRef = mDatabase.child("users").child(userId);
+        List<String> keys = UserProfileCodec.keysOf(fields);
+        List<CompletableFuture<Object>> reads = new ArrayList<>();
+        for (String key : keys) {
+            reads.add(readValueAsync(userRef.child(key)));
         }
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(aVoid -> {
+            Map<String, Object> children = new HashMap<>();
+            for (int i = 0; i < keys.size(); i++) {
+                Object value = reads.get(i).join();
+                if (value != null) {
+                    children.put(keys.get(i), value);
+                }
+            }
+            if (children.isEmpty()) {
+                throw new ProfileNotFoundException();
+            }
+            return ProfileView.decode(userId, children, fields);
+        });
     }
 
     /**
-     * Handles the case where no user is signed in, triggering a failure callback.
+     * Reads the value at a location once. The read is detached if it times out.
      *
-     * @param listener The listener to notify of the failure.
+     * @param ref The location to read.
+     * @return A future that completes with the value, or null if there is none, or fails if it cannot be read
+     * within {@link #READ_TIMEOUT_MS}.
      */
-    private void handleNoUserSignedIn(OnProfileCheckListener listener) {
-        Log.e(TAG, "No user is signed in");
-        if (listener != null) {
-            listener.onResult(false);
+    private static CompletableFuture<Object> readValueAsync(DatabaseReference ref) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        ValueEventListener listener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                future.complete(dataSnapshot.getValue());
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                future.completeExceptionally(databaseError.toException());
+            }
+        };
+        ref.addListenerForSingleValueEvent(listener);
+        future.whenComplete((value, error) -> {
+            if (future.isCancelled()) {
+                ref.removeEventListener(listener);
+            }
+        });
+        return Futures.withTimeout(future, READ_TIMEOUT_MS);
+    }
+
+    /**
+     * Records the current user's response to an SOS session in Firebase Realtime Database.
+     *
+     * @param sessionId The ID of the SOS session being responded to.
+     * @param status    The response status to set.
+     * @return A future that completes once the response is written.
+     */
+    public CompletableFuture<Void> updateUserResponseStatusAsync(String sessionId, UserProfile.ResponseStatus status) {
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        if (currentUser == null) {
+            return noUserSignedIn();
         }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", status.name());
+        response.put("timestamp", ServerValue.TIMESTAMP);
+
+        String userId = currentUser.getUid();
+        return Futures.fromTask(mDatabase.child(SOSManager.SESSIONS_ROOT).child(sessionId).child("responders").child(userId)
+                .setValue(response));
+    }
+
+    /**
+     * Creates or updates a user profile in the Firebase Realtime Database,
+     * together with the user's entry in the responder projection.
+     *
+     * @param userProfile The user profile to create or update.
+     * @param listener    The listener to handle the result of the operation.
+     */
+    public void createOrUpdateUser(UserProfile userProfile, final OnUserProfileUpdateListener listener) {
+        deliver(createOrUpdateUserAsync(userProfile), listener);
+    }
+
+    /**
+     * Writes the changed fields of the current user's profile.
+     *
+     * @param patch    The edits to the profile.
+     * @param listener The listener to handle the result of the update.
+     */
+    public void patchProfile(ProfilePatch patch, final OnUserProfileUpdateListener listener) {
+        deliver(patchProfileAsync(patch), listener);
+    }
+
+    /**
+     * Retrieves the current user's profile from Firebase Realtime Database.
+     *
+     * @param listener The listener to handle the result of the fetch operation.
+     */
+    public void getUserProfile(final OnUserProfileFetchListener listener) {
+        deliver(getUserProfileAsync(), listener);
+    }
+
+    /**
+     * Retrieves a user profile by user ID from Firebase Realtime Database.
+     *
+     * @param userId   The ID of the user whose profile to fetch.
+     * @param listener The listener to handle the result of the fetch operation.
+     */
+    public void getUserProfileById(String userId, final OnUserProfileFetchListener listener) {
+        deliver(getUserProfileAsync(userId), listener);
+    }
+
+    /**
+     * Checks if the current user's profile is complete.
+     *
+     * @param listener The listener to handle the result of the check operation.
+     */
+    public void isProfileComplete(final OnProfileCheckListener listener) {
+        isProfileCompleteAsync().thenAccept(listener::onResult);
+    }
+
+    /**
+     * Records the current user's response to an SOS session in Firebase Realtime Database.
+     *
+     * @param sessionId The ID of the SOS session being responded to.
+     * @param status    The response status to set.
+     * @param listener  The listener to handle the result of the update operation.
+     */
+    public void updateUserResponseStatus(String sessionId, UserProfile.ResponseStatus status, final OnUserProfileUpdateListener listener) {
+        deliver(updateUserResponseStatusAsync(sessionId, status), listener);
+    }
+
+    /**
+     * Reports the outcome of a write to an update listener.
+     *
+     * @param future   The future of the write.
+     * @param listener The listener to notify, or null.
+     */
+    public static void deliver(CompletableFuture<Void> future, OnUserProfileUpdateListener listener) {
+        future.whenComplete((aVoid, error) -> {
+            if (listener == null) return;
+            if (error != null) {
+                listener.onFailure(Futures.messageOf(error));
+            } else {
+                listener.onSuccess();
+            }
+        });
+    }
+
+    /**
+     * Reads some fields of the current user's profile.
+     *
+     * @param fields   The fields to read, as a combination of the {@link UserProfileCodec} field constants.
+     * @param listener The listener to handle the result of the fetch operation.
+     */
+    public void getProfileView(int fields, final OnProfileViewFetchListener listener) {
+        deliver(getProfileViewAsync(fields), listener);
+    }
+
+    /**
+     * Reads some fields of a user profile.
+     *
+     * @param userId   The ID of the user whose profile to read.
+     * @param fields   The fields to read, as a combination of the {@link UserProfileCodec} field constants.
+     * @param listener The listener to handle the result of the fetch operation.
+     */
+    public void getProfileView(String userId, int fields, final OnProfileViewFetchListener listener) {
+        deliver(getProfileViewAsync(userId, fields), listener);
+    }
+
+    /**
+     * Reports the outcome of a profile view fetch to a fetch listener.
+     *
+     * @param future   The future of the fetch.
+     * @param listener The listener to notify, or null.
+     */
+    private static void deliver(CompletableFuture<ProfileView> future, OnProfileViewFetchListener listener) {
+        future.whenComplete((profileView, error) -> {
+            if (listener == null) return;
+            if (error != null) {
+                listener.onFailure(Futures.messageOf(error));
+            } else {
+                listener.onSuccess(profileView);
+            }
+        });
+    }
+
+    /**
+     * Reports the outcome of a profile fetch to a fetch listener.
+     *
+     * @param future   The future of the fetch.
+     * @param listener The listener to notify, or null.
+     */
+    private static void deliver(CompletableFuture<UserProfile> future, OnUserProfileFetchListener listener) {
+        future.whenComplete((userProfile, error) -> {
+            if (listener == null) return;
+            if (error != null) {
+                listener.onFailure(Futures.messageOf(error));
+            } else {
+                listener.onSuccess(userProfile);
+            }
+        });
+    }
+
+    /**
+     * Handles the case where no user is signed in, returning a failed future.
+     *
+     * @param <T> The type of the future's result.
+     * @return A future that has failed because no user is signed in.
+     */
+    private static <T> CompletableFuture<T> noUserSignedIn() {
+        Log.e(TAG, "No user is signed in");
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalStateException("No user is signed in"));
+        return future;
     }
 }
@@ -0,0 +1,141 @@
+package com.example.epifind.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allergen is the fixed vocabulary of allergies a user can select. A set of allergens is stored and compared
+ * as a bitmask with one bit per allergen, so checking whether two users share an allergy is a single AND.
+ * The display text of each of the possible sets is built once and shared, rather than kept per user.
+ */
+public enum Allergen {
+    PEANUTS("Peanuts"),
+    TREE_NUTS("Tree nuts"),
+    MILK("Milk"),
+    EGGS("Eggs"),
+    WHEAT("Wheat"),
+    SOY("Soy"),
+    FISH("Fish"),
+    SHELLFISH("Shellfish");
+
+    private static final String SEPARATOR = ", ";
+    private static final Allergen[] VALUES = values();
+    private static final String[] DISPLAY_TEXTS = new String[1 << VALUES.length];
+
+    private final String displayName;
+
+    /**
+     * Constructor for Allergen.
+     *
+     * @param displayName The name shown to the user.
+     */
+    Allergen(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Gets the name shown to the user.
+     *
+     * @return The display name.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the bit of this allergen in an allergen mask.
+     *
+     * @return The bit.
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Gets the display names of all allergens, in selection order.
+     *
+     * @return The display names.
+     */
+    public static List<String> displayNames() {
+        List<String> names = new ArrayList<>(VALUES.length);
+        for (Allergen allergen : VALUES) {
+            names.add(allergen.displayName);
+        }
+        return names;
+    }
+
+    /**
+     * Builds an allergen mask from selection flags in the order of {@link #displayNames()}.
+     *
+     * @param selected The selection flags.
+     * @return The allergen mask.
+     */
+    public static int maskOf(boolean[] selected) {
+        int mask = 0;
+        for (int i = 0; i < selected.length && i < VALUES.length; i++) {
+            if (selected[i]) {
+                mask |= VALUES[i].bit();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Parses the comma-separated display text that profiles stored before allergen masks existed. Names
+     * outside the vocabulary are ignored.
+     *
+     * @param text The display text, or null.
+     * @return The allergen mask.
+     */
+    public static int parse(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        int mask = 0;
+        for (String name : text.split(",")) {
+            String trimmed = name.trim();
+            for (Allergen allergen : VALUES) {
+                if (allergen.displayName.equalsIgnoreCase(trimmed)) {
+                    mask |= allergen.bit();
+                    break;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Gets the display text of an allergen mask. Every call for the same mask returns the same string instance.
+     *
+     * @param mask The allergen mask.
+     * @return The display names of the allergens joined by commas, or empty if there are none.
+     */
+    public static String displayText(int mask) {
+        mask &= DISPLAY_TEXTS.length - 1;
+        synchronized (DISPLAY_TEXTS) {
+            String text = DISPLAY_TEXTS[mask];
+            if (text == null) {
+                StringBuilder sb = new StringBuilder();
+                for (Allergen allergen : VALUES) {
+                    if ((mask & allergen.bit()) != 0) {
+                        if (sb.length() > 0) sb.append(SEPARATOR);
+                        sb.append(allergen.displayName);
+                    }
+                }
+                text = sb.toString();
+                DISPLAY_TEXTS[mask] = text;
+            }
+            return text;
+        }
+    }
+
+    /**
+     * Fills selection flags in the order of {@link #displayNames()} from an allergen mask.
+     *
+     * @param mask     The allergen mask.
+     * @param selected The selection flags to fill.
+     */
+    public static void select(int mask, boolean[] selected) {
+        for (int i = 0; i < selected.length && i < VALUES.length; i++) {
+            selected[i] = (mask & VALUES[i].bit()) != 0;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.epifind.models;
+
+import java.util.Map;
+
+/**
+ * ProfilePatch records edits to a user profile against the profile they start from, and writes only the
+ * fields that actually change. Location fields are not part of a patch: they are owned by the location
+ * service, and leaving them out keeps profile edits from overwriting a concurrent location write.
+ */
+public class ProfilePatch {
+    /** The fields a patch can change. */
+    public static final int EDITABLE = UserProfileCodec.NAME | UserProfileCodec.ALLERGIES
+            | UserProfileCodec.EPIPEN_EXPIRY | UserProfileCodec.HAS_EPIPEN | UserProfileCodec.NEEDS_HELP;
+    // The fields copied into the user's responder projection entry or deciding whether they have one
+    private static final int RESPONDER_FIELDS = UserProfileCodec.NAME | UserProfileCodec.ALLERGIES
+            | UserProfileCodec.EPIPEN_EXPIRY | UserProfileCodec.HAS_EPIPEN | UserProfileCodec.NEEDS_HELP;
+    // The fields the derived profile-complete flag depends on
+    private static final int COMPLETENESS_FIELDS = UserProfileCodec.NAME | UserProfileCodec.ALLERGIES
+            | UserProfileCodec.EPIPEN_EXPIRY;
+
+    private final UserProfile base;
+    private final UserProfile profile;
+    private int dirty;
+
+    /**
+     * Constructor for ProfilePatch.
+     *
+     * @param base The stored profile the edits start from.
+     */
+    public ProfilePatch(UserProfile base) {
+        this.base = new UserProfile(base);
+        this.profile = new UserProfile(base);
+    }
+
+    /**
+     * Private constructor for a patch that creates a profile.
+     *
+     * @param profile The profile to create.
+     * @param dirty   The fields to write.
+     */
+    private ProfilePatch(UserProfile profile, int dirty) {
+        this.base = null;
+        this.profile = new UserProfile(profile);
+        this.dirty = dirty;
+    }
+
+    /**
+     * Creates a patch that writes every editable field of a new profile.
+     *
+     * @param profile The profile to create.
+     * @return The patch.
+     */
+    public static ProfilePatch create(UserProfile profile) {
+        return new ProfilePatch(profile, EDITABLE);
+    }
+
+    /**
+     * Creates a patch that changes a stored profile into another, leaving the location fields alone.
+     *
+     * @param base   The stored profile.
+     * @param target The profile to change it into.
+     * @return The patch, empty if the editable fields already match.
+     */
+    public static ProfilePatch diff(UserProfile base, UserProfile target) {
+        ProfilePatch patch = new ProfilePatch(base);
+        patch.setName(target.name);
+        patch.setAllergens(target.allergens);
+        patch.setEpiPenExpiry(target.epiPenExpiry);
+        patch.setHasEpiPen(target.hasEpiPen);
+        patch.setNeedsHelp(target.needsHelp);
+        return patch;
+    }
+
+    /**
+     * Sets the name of the user.
+     *
+     * @param name The name.
+     * @return This patch.
+     */
+    public ProfilePatch setName(String name) {
+        profile.name = name != null ? name : "";
+        mark(UserProfileCodec.NAME, base == null || !profile.name.equals(base.name));
+        return this;
+    }
+
+    /**
+     * Sets the allergies of the user.
+     *
+     * @param allergens The allergies, as a mask of {@link Allergen} bits.
+     * @return This patch.
+     */
+    public ProfilePatch setAllergens(int allergens) {
+        profile.allergens = allergens;
+        mark(UserProfileCodec.ALLERGIES, base == null || allergens != base.allergens);
+        return this;
+    }
+
+    /**
+     * Sets the expiry date of the user's EpiPen.
+     *
+     * @param epiPenExpiry The expiry date in the format "dd/MM/yyyy", or empty if unknown.
+     * @return This patch.
+     */
+    public ProfilePatch setEpiPenExpiry(String epiPenExpiry) {
+        profile.epiPenExpiry = epiPenExpiry != null ? epiPenExpiry : "";
+        mark(UserProfileCodec.EPIPEN_EXPIRY, base == null || !profile.epiPenExpiry.equals(base.epiPenExpiry));
+        return this;
+    }
+
+    /**
+     * Sets whether the user carries an EpiPen.
+     *
+     * @param hasEpiPen True if the user carries an EpiPen.
+     * @return This patch.
+     */
+    public ProfilePatch setHasEpiPen(boolean hasEpiPen) {
+        profile.hasEpiPen = hasEpiPen;
+        mark(UserProfileCodec.HAS_EPIPEN, base == null || hasEpiPen != base.hasEpiPen);
+        return this;
+    }
+
+    /**
+     * Sets whether the user needs help.
+     *
+     * @param needsHelp True if the user needs help.
+     * @return This patch.
+     */
+    public ProfilePatch setNeedsHelp(boolean needsHelp) {
+        profile.needsHelp = needsHelp;
+        mark(UserProfileCodec.NEEDS_HELP, base == null || needsHelp != base.needsHelp);
+        return this;
+    }
+
+    /**
+     * Checks whether the patch changes anything.
+     *
+     * @return True if writing the patch would be a no-op.
+     */
+    public boolean isEmpty() {
+        return dirty == 0;
+    }
+
+    /**
+     * Gets the fields the patch changes.
+     *
+     * @return The changed fields, as a combination of the {@link UserProfileCodec} field constants.
+     */
+    public int getDirtyFields() {
+        return dirty;
+    }
+
+    /**
+     * Checks whether the patch changes the user's responder projection entry or their eligibility for it.
+     *
+     * @return True if the projection entry needs to be rewritten.
+     */
+    public boolean affectsResponderEntry() {
+        return (dirty & RESPONDER_FIELDS) != 0;
+    }
+
+    /**
+     * Gets the profile with the edits applied.
+     *
+     * @return The patched profile. Changes to it are not tracked.
+     */
+    public UserProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Adds the writes of the changed fields to a multi-path update.
+     *
+     * @param updates The multi-path update to add to.
+     * @param prefix  The path of the profile, ending with a slash.
+     */
+    public void putUpdates(Map<String, Object> updates, String prefix) {
+        Map<String, Object> encoded = UserProfileCodec.encode(profile, dirty);
+        if (base != null) {
+            // Patching an existing node must not change its schema version
+            encoded.remove(UserProfileCodec.VERSION);
+        }
+        if ((dirty & UserProfileCodec.EPIPEN_EXPIRY) != 0) {
+            // Clear whichever form of the expiry the node held before, including the legacy one
+            updates.put(prefix + UserProfileCodec.EXPIRY_DAY, null);
+            updates.put(prefix + UserProfileCodec.KEY_EPIPEN_EXPIRY, null);
+        }
+        if ((dirty & UserProfileCodec.ALLERGIES) != 0) {
+            // The mask replaces allergies stored as text
+            updates.put(prefix + UserProfileCodec.ALLERGIES_TEXT, null);
+            updates.put(prefix + UserProfileCodec.KEY_ALLERGIES, null);
+        }
+        for (Map.Entry<String, Object> field : encoded.entrySet()) {
+            updates.put(prefix + field.getKey(), field.getValue());
+        }
+        if ((dirty & COMPLETENESS_FIELDS) != 0) {
+            updates.put(prefix + UserProfileCodec.PROFILE_COMPLETE, profile.isComplete());
+        }
+    }
+
+    /**
+     * Marks a field as changed or unchanged. Fields of a new profile are always written.
+     *
+     * @param field   The field, one of the {@link UserProfileCodec} field constants.
+     * @param changed True if the field differs from the stored profile.
+     */
+    private void mark(int field, boolean changed) {
+        if (base == null) return;
+        dirty = changed ? dirty | field : dirty & ~field;
+    }
+}
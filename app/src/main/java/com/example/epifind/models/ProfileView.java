@@ -0,0 +1,151 @@
+package com.example.epifind.models;
+
+import java.util.Map;
+
+/**
+ * ProfileView is a read-only view of some of the fields of a user profile, for callers that need one or two
+ * fields and should not download the whole profile. Reading a field that was not fetched is an error.
+ */
+public final class ProfileView {
+    private final String userId;
+    private final int fields;
+    private final UserProfile profile;
+
+    /**
+     * Private constructor for ProfileView.
+     *
+     * @param userId  The ID of the user.
+     * @param fields  The fields the view holds.
+     * @param profile The profile holding the fields.
+     */
+    private ProfileView(String userId, int fields, UserProfile profile) {
+        this.userId = userId;
+        this.fields = fields;
+        this.profile = profile;
+    }
+
+    /**
+     * Creates a view of a profile that is already in memory.
+     *
+     * @param profile The profile. It must not be modified while the view is in use.
+     * @param fields  The fields the view exposes, as a combination of the {@link UserProfileCodec} field constants.
+     * @return The view.
+     */
+    public static ProfileView of(UserProfile profile, int fields) {
+        return new ProfileView(profile.getUserId(), fields, profile);
+    }
+
+    /**
+     * Creates a view from stored children of a profile, in either schema.
+     *
+     * @param userId   The ID of the user.
+     * @param children The values of the children that were read, keyed by their stored key.
+     * @param fields   The fields that were read, as a combination of the {@link UserProfileCodec} field constants.
+     * @return The view.
+     */
+    public static ProfileView decode(String userId, Map<String, Object> children, int fields) {
+        UserProfile profile = UserProfileCodec.decode(children, fields, null);
+        profile.userId = userId;
+        return new ProfileView(userId, fields, profile);
+    }
+
+    /**
+     * Gets the ID of the user.
+     *
+     * @return The user ID.
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Gets the fields the view holds.
+     *
+     * @return The fields, as a combination of the {@link UserProfileCodec} field constants.
+     */
+    public int getFields() {
+        return fields;
+    }
+
+    /**
+     * Gets the name of the user.
+     *
+     * @return The name of the user.
+     */
+    public String getName() {
+        require(UserProfileCodec.NAME);
+        return profile.getName();
+    }
+
+    /**
+     * Gets the allergies of the user.
+     *
+     * @return The allergies of the user.
+     */
+    public String getAllergies() {
+        require(UserProfileCodec.ALLERGIES);
+        return profile.getAllergies();
+    }
+
+    /**
+     * Gets the allergies of the user as a mask of {@link Allergen} bits.
+     *
+     * @return The allergen mask.
+     */
+    public int getAllergenMask() {
+        require(UserProfileCodec.ALLERGIES);
+        return profile.getAllergenMask();
+    }
+
+    /**
+     * Gets the expiry date of the user's EpiPen.
+     *
+     * @return The EpiPen expiry date in the format "dd/MM/yyyy", or empty if unknown.
+     */
+    public String getEpiPenExpiry() {
+        require(UserProfileCodec.EPIPEN_EXPIRY);
+        return profile.getEpiPenExpiry();
+    }
+
+    /**
+     * Checks whether the user has an EpiPen.
+     *
+     * @return True if the user has an EpiPen, false otherwise.
+     */
+    public boolean getHasEpiPen() {
+        require(UserProfileCodec.HAS_EPIPEN);
+        return profile.getHasEpiPen();
+    }
+
+    /**
+     * Checks whether the user needs help.
+     *
+     * @return True if the user needs help, false otherwise.
+     */
+    public boolean getNeedsHelp() {
+        require(UserProfileCodec.NEEDS_HELP);
+        return profile.getNeedsHelp();
+    }
+
+    /**
+     * Checks whether the user has filled in their name, allergies and EpiPen expiry date.
+     *
+     * @return True if the profile is complete, false otherwise.
+     */
+    public boolean isComplete() {
+        require(UserProfileCodec.NAME | UserProfileCodec.ALLERGIES | UserProfileCodec.EPIPEN_EXPIRY);
+        return profile.isComplete();
+    }
+
+    /**
+     * Checks that the view holds the given fields.
+     *
+     * @param required The fields, as a combination of the {@link UserProfileCodec} field constants.
+     * @throws IllegalStateException If any of the fields was not fetched.
+     */
+    private void require(int required) {
+        if ((fields & required) != required) {
+            throw new IllegalStateException("Profile field was not fetched: " + Integer.toBinaryString(required));
+        }
+    }
+}
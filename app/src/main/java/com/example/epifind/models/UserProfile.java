@@ -1,11 +1,13 @@
 package com.example.epifind.models;
 
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.Exclude;
 
 /**
  * UserProfile represents the profile of a user in the EpiFind app.
  * It contains information about the user's name, allergies, EpiPen expiry date,
- * location, and SOS response status.
+ * location, and SOS response status. The response status is only kept on the client; it is stored
+ * per SOS session under {@code sos_sessions/<id>/responders}.
  */
 public class UserProfile {
 
@@ -18,18 +20,24 @@ public class UserProfile {
         UNAVAILABLE
     }
 
-    private String userId;
-    private String name = "";
-    private String allergies = "";
-    private String epiPenExpiry = "";
-    private double latitude;
-    private double longitude;
-    private boolean hasEpiPen;
-    private boolean needsHelp;
+    // Package-private so UserProfileCodec can decode into pooled instances without reflection
+    String userId;
+    String name = "";
+    int allergens;
+    String epiPenExpiry = "";
+    double latitude;
+    double longitude;
+    float speed;
+    float bearing;
+    float accuracy;
+    long locationTime;
+    boolean hasEpiPen;
+    boolean needsHelp;
     private ResponseStatus responseStatus = ResponseStatus.AVAILABLE;
 
     /**
-     * Default constructor required for calls to DataSnapshot.getValue(UserProfile.class).
+     * Default constructor, used by {@link UserProfileCodec} to decode profiles and by its
+     * {@link UserProfileCodec.Pool} to create reusable instances.
      */
     public UserProfile() {
         // Default constructor
@@ -47,7 +55,7 @@ public class UserProfile {
      */
     public UserProfile(String name, String allergies, String epiPenExpiry, double latitude, double longitude, boolean hasEpiPen) {
         this.name = name != null ? name : "";
-        this.allergies = allergies != null ? allergies : "";
+        this.allergens = Allergen.parse(allergies);
         this.epiPenExpiry = epiPenExpiry != null ? epiPenExpiry : "";
         this.latitude = latitude;
         this.longitude = longitude;
@@ -57,6 +65,27 @@ public class UserProfile {
                 : null;
     }
 
+    /**
+     * Copy constructor, so cached profiles can be handed out without callers modifying the cached instance.
+     *
+     * @param other The profile to copy.
+     */
+    public UserProfile(UserProfile other) {
+        this.userId = other.userId;
+        this.name = other.name;
+        this.allergens = other.allergens;
+        this.epiPenExpiry = other.epiPenExpiry;
+        this.latitude = other.latitude;
+        this.longitude = other.longitude;
+        this.speed = other.speed;
+        this.bearing = other.bearing;
+        this.accuracy = other.accuracy;
+        this.locationTime = other.locationTime;
+        this.hasEpiPen = other.hasEpiPen;
+        this.needsHelp = other.needsHelp;
+        this.responseStatus = other.responseStatus;
+    }
+
     // Getters
 
     /**
@@ -78,12 +107,21 @@ public class UserProfile {
     }
 
     /**
-     * Gets the allergies of the user.
+     * Gets the allergies of the user for display.
      *
-     * @return The allergies of the user.
+     * @return The allergies of the user, joined by commas.
      */
     public String getAllergies() {
-        return allergies;
+        return Allergen.displayText(allergens);
+    }
+
+    /**
+     * Gets the allergies of the user as a mask of {@link Allergen} bits.
+     *
+     * @return The allergen mask.
+     */
+    public int getAllergenMask() {
+        return allergens;
     }
 
     /**
@@ -113,6 +151,42 @@ public class UserProfile {
         return longitude;
     }
 
+    /**
+     * Gets the speed the user was moving at when their location was last reported.
+     *
+     * @return The speed in meters per second, or 0 if unknown.
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Gets the direction the user was moving in when their location was last reported.
+     *
+     * @return The bearing in degrees east of true north.
+     */
+    public float getBearing() {
+        return bearing;
+    }
+
+    /**
+     * Gets the accuracy of the user's last reported location.
+     *
+     * @return The estimated horizontal accuracy radius in meters, or 0 if unknown.
+     */
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * Gets the time of the user's last reported location fix.
+     *
+     * @return The time of the fix in milliseconds since the epoch, or 0 if unknown.
+     */
+    public long getLocationTime() {
+        return locationTime;
+    }
+
     /**
      * Gets whether the user has an EpiPen.
      *
@@ -131,11 +205,32 @@ public class UserProfile {
         return needsHelp;
     }
 
+    /**
+     * Checks whether the user has filled in their name, allergies and EpiPen expiry date.
+     *
+     * @return True if the profile is complete, false otherwise.
+     */
+    @Exclude
+    public boolean isComplete() {
+        return !isEmpty(name) && allergens != 0 && !isEmpty(epiPenExpiry);
+    }
+
+    /**
+     * Checks whether a text field is empty.
+     *
+     * @param value The value of the field.
+     * @return True if the value is null or empty.
+     */
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
     /**
      * Gets the response status of the user.
      *
      * @return The response status of the user.
      */
+    @Exclude
     public ResponseStatus getResponseStatus() {
         return responseStatus;
     }
@@ -174,6 +269,7 @@ public class UserProfile {
      *
      * @param responseStatus The response status of the user.
      */
+    @Exclude
     public void setResponseStatus(ResponseStatus responseStatus) {
         this.responseStatus = responseStatus;
     }
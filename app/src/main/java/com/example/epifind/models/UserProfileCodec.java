@@ -0,0 +1,462 @@
+package com.example.epifind.models;
+
+import com.google.firebase.database.DataSnapshot;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UserProfileCodec converts user profiles to and from their database representation without the reflective
+ * class mapper behind {@code DataSnapshot.getValue(UserProfile.class)}. Decoding reads only the fields a
+ * caller asks for, and can write into an existing instance, so a search that decodes many profiles can
+ * reuse instances from a {@link Pool} instead of allocating one per snapshot.
+ *
+ * <p>Profiles and responder projection entries are written in the compact schema {@link #SCHEMA_VERSION}:
+ * short keys, coordinates as fixed-point integers with {@link #COORDINATE_SCALE} units per degree (about
+ * 1.1 m), speed in tenths of a meter per second, bearing and accuracy in whole units, and the EpiPen expiry
+ * as an epoch day. While stored data migrates, every field is read from its compact key if present and
+ * from its legacy key otherwise, so nodes written by older versions, or partly rewritten by path updates,
+ * decode correctly.
+ */
+public final class UserProfileCodec {
+    public static final int SCHEMA_VERSION = 2;
+    public static final int COORDINATE_SCALE = 100000;
+    private static final float SPEED_SCALE = 10f;
+    private static final DateTimeFormatter EXPIRY_FORMAT =
+            DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+    private static final DateTimeFormatter EXPIRY_PARSE_FORMAT =
+            DateTimeFormatter.ofPattern("d/M/uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+    // Compact keys
+    public static final String VERSION = "v";
+    public static final String NAME_KEY = "n";
+    public static final String ALLERGEN_MASK = "am";
+    // Allergies as text, written by the first version of the compact schema; read only
+    public static final String ALLERGIES_TEXT = "al";
+    public static final String EXPIRY_DAY = "x";
+    public static final String LATITUDE_E5 = "la";
+    public static final String LONGITUDE_E5 = "lo";
+    public static final String SPEED_DM = "sp";
+    public static final String BEARING_DEG = "b";
+    public static final String ACCURACY_M = "c";
+    public static final String LOCATION_TIME = "t";
+    public static final String HAS_EPIPEN_KEY = "e";
+    public static final String NEEDS_HELP_KEY = "h";
+    // Derived from name, allergies and expiry on every write that changes them
+    public static final String PROFILE_COMPLETE = "pc";
+
+    // Legacy keys, still read while stored data migrates
+    public static final String KEY_USER_ID = "userId";
+    public static final String KEY_NAME = "name";
+    public static final String KEY_ALLERGIES = "allergies";
+    public static final String KEY_EPIPEN_EXPIRY = "epiPenExpiry";
+    public static final String KEY_LATITUDE = "latitude";
+    public static final String KEY_LONGITUDE = "longitude";
+    public static final String KEY_SPEED = "speed";
+    public static final String KEY_BEARING = "bearing";
+    public static final String KEY_ACCURACY = "accuracy";
+    public static final String KEY_LOCATION_TIME = "locationTime";
+    public static final String KEY_HAS_EPIPEN = "hasEpiPen";
+    public static final String KEY_NEEDS_HELP = "needsHelp";
+
+    /** The name of the user. */
+    public static final int NAME = 1;
+    /** The user's allergies. */
+    public static final int ALLERGIES = 1 << 1;
+    /** The expiry date of the user's EpiPen. */
+    public static final int EPIPEN_EXPIRY = 1 << 2;
+    /** The latitude and longitude of the user. */
+    public static final int LOCATION = 1 << 3;
+    /** The speed, bearing, accuracy and time of the user's last fix. */
+    public static final int MOTION = 1 << 4;
+    /** Whether the user carries an EpiPen. */
+    public static final int HAS_EPIPEN = 1 << 5;
+    /** Whether the user needs help. */
+    public static final int NEEDS_HELP = 1 << 6;
+    /** Every stored field. */
+    public static final int ALL = NAME | ALLERGIES | EPIPEN_EXPIRY | LOCATION | MOTION | HAS_EPIPEN | NEEDS_HELP;
+    /** The fields stored in a responder projection entry. */
+    public static final int RESPONDER = NAME | ALLERGIES | EPIPEN_EXPIRY | LOCATION | MOTION;
+
+    /**
+     * Pool keeps released profile instances for reuse. It is not thread-safe; use one pool per thread.
+     */
+    public static final class Pool {
+        private final ArrayDeque<UserProfile> free = new ArrayDeque<>();
+        private final int capacity;
+
+        /**
+         * Constructor for Pool.
+         *
+         * @param capacity The maximum number of released instances to keep.
+         */
+        public Pool(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Takes an instance from the pool, or creates one if the pool is empty. Its fields are left as they
+         * were, since decoding resets them.
+         *
+         * @return The instance.
+         */
+        public UserProfile acquire() {
+            UserProfile profile = free.poll();
+            return profile != null ? profile : new UserProfile();
+        }
+
+        /**
+         * Returns an instance to the pool. The caller must not use it afterwards.
+         *
+         * @param profile The instance, or null.
+         */
+        public void release(UserProfile profile) {
+            if (profile != null && free.size() < capacity) {
+                free.push(profile);
+            }
+        }
+    }
+
+    private UserProfileCodec() {
+    }
+
+    /**
+     * Decodes a profile from a snapshot. The user ID is taken from the snapshot's key.
+     *
+     * @param snapshot The snapshot of the profile.
+     * @param fields   The fields to decode, as a combination of the field constants; the others keep their defaults.
+     * @param into     The instance to decode into, or null to create one.
+     * @return The decoded profile, or null if the snapshot holds no profile.
+     */
+    public static UserProfile decode(DataSnapshot snapshot, int fields, UserProfile into) {
+        UserProfile profile = decode(snapshot.getValue(), fields, into);
+        if (profile != null) {
+            profile.userId = snapshot.getKey();
+        }
+        return profile;
+    }
+
+    /**
+     * Decodes a profile from the value of a snapshot, as returned by {@code DataSnapshot.getValue()}.
+     *
+     * @param value  The value of the profile.
+     * @param fields The fields to decode, as a combination of the field constants; the others keep their defaults.
+     * @param into   The instance to decode into, or null to create one.
+     * @return The decoded profile, or null if the value is not a profile.
+     */
+    public static UserProfile decode(Object value, int fields, UserProfile into) {
+        if (!(value instanceof Map)) return null;
+        Map<?, ?> map = (Map<?, ?>) value;
+        UserProfile profile = into != null ? into : new UserProfile();
+        reset(profile);
+
+        profile.userId = asString(map.get(KEY_USER_ID), null);
+        if ((fields & NAME) != 0) {
+            profile.name = asString(either(map, NAME_KEY, KEY_NAME), "");
+        }
+        if ((fields & ALLERGIES) != 0) {
+            Object mask = map.get(ALLERGEN_MASK);
+            profile.allergens = mask instanceof Number
+                    ? ((Number) mask).intValue()
+                    : Allergen.parse(asString(either(map, ALLERGIES_TEXT, KEY_ALLERGIES), null));
+        }
+        if ((fields & EPIPEN_EXPIRY) != 0) {
+            Object expiryDay = map.get(EXPIRY_DAY);
+            profile.epiPenExpiry = expiryDay instanceof Number
+                    ? formatExpiry(((Number) expiryDay).longValue())
+                    : asString(map.get(KEY_EPIPEN_EXPIRY), "");
+        }
+        if ((fields & LOCATION) != 0) {
+            profile.latitude = coordinate(map.get(LATITUDE_E5), map.get(KEY_LATITUDE));
+            profile.longitude = coordinate(map.get(LONGITUDE_E5), map.get(KEY_LONGITUDE));
+        }
+        if ((fields & MOTION) != 0) {
+            Object speed = map.get(SPEED_DM);
+            profile.speed = speed != null
+                    ? asNumber(speed).floatValue() / SPEED_SCALE
+                    : asNumber(map.get(KEY_SPEED)).floatValue();
+            profile.bearing = asNumber(either(map, BEARING_DEG, KEY_BEARING)).floatValue();
+            profile.accuracy = asNumber(either(map, ACCURACY_M, KEY_ACCURACY)).floatValue();
+            profile.locationTime = asNumber(either(map, LOCATION_TIME, KEY_LOCATION_TIME)).longValue();
+        }
+        if ((fields & HAS_EPIPEN) != 0) {
+            profile.hasEpiPen = Boolean.TRUE.equals(either(map, HAS_EPIPEN_KEY, KEY_HAS_EPIPEN));
+        }
+        if ((fields & NEEDS_HELP) != 0) {
+            profile.needsHelp = Boolean.TRUE.equals(either(map, NEEDS_HELP_KEY, KEY_NEEDS_HELP));
+        }
+        return profile;
+    }
+
+    /**
+     * Encodes the given fields of a profile in the compact schema, as a map that can be written to the
+     * database. The user ID is not stored, since it is the key of the profile's node.
+     *
+     * @param profile The profile.
+     * @param fields  The fields to encode, as a combination of the field constants.
+     * @return The encoded profile.
+     */
+    public static Map<String, Object> encode(UserProfile profile, int fields) {
+        Map<String, Object> map = new HashMap<>();
+        map.put(VERSION, SCHEMA_VERSION);
+        if ((fields & NAME) != 0) {
+            map.put(NAME_KEY, profile.name);
+        }
+        if ((fields & ALLERGIES) != 0) {
+            map.put(ALLERGEN_MASK, profile.allergens);
+        }
+        if ((fields & EPIPEN_EXPIRY) != 0) {
+            putExpiry(map, "", profile.epiPenExpiry);
+        }
+        if ((fields & LOCATION) != 0) {
+            map.put(LATITUDE_E5, toFixed(profile.latitude));
+            map.put(LONGITUDE_E5, toFixed(profile.longitude));
+        }
+        if ((fields & MOTION) != 0) {
+            putMotion(map, "", profile.speed, profile.bearing, profile.accuracy);
+            map.put(LOCATION_TIME, profile.locationTime);
+        }
+        if ((fields & HAS_EPIPEN) != 0) {
+            map.put(HAS_EPIPEN_KEY, profile.hasEpiPen);
+        }
+        if ((fields & NEEDS_HELP) != 0) {
+            map.put(NEEDS_HELP_KEY, profile.needsHelp);
+        }
+        return map;
+    }
+
+    /**
+     * Lists the stored keys of the given fields, compact and legacy, so the fields can be read child by child.
+     *
+     * @param fields The fields, as a combination of the field constants.
+     * @return The keys to read.
+     */
+    public static List<String> keysOf(int fields) {
+        List<String> keys = new ArrayList<>();
+        if ((fields & NAME) != 0) {
+            addKeys(keys, NAME_KEY, KEY_NAME);
+        }
+        if ((fields & ALLERGIES) != 0) {
+            addKeys(keys, ALLERGEN_MASK, ALLERGIES_TEXT, KEY_ALLERGIES);
+        }
+        if ((fields & EPIPEN_EXPIRY) != 0) {
+            addKeys(keys, EXPIRY_DAY, KEY_EPIPEN_EXPIRY);
+        }
+        if ((fields & LOCATION) != 0) {
+            addKeys(keys, LATITUDE_E5, KEY_LATITUDE, LONGITUDE_E5, KEY_LONGITUDE);
+        }
+        if ((fields & MOTION) != 0) {
+            addKeys(keys, SPEED_DM, KEY_SPEED, BEARING_DEG, KEY_BEARING, ACCURACY_M, KEY_ACCURACY,
+                    LOCATION_TIME, KEY_LOCATION_TIME);
+        }
+        if ((fields & HAS_EPIPEN) != 0) {
+            addKeys(keys, HAS_EPIPEN_KEY, KEY_HAS_EPIPEN);
+        }
+        if ((fields & NEEDS_HELP) != 0) {
+            addKeys(keys, NEEDS_HELP_KEY, KEY_NEEDS_HELP);
+        }
+        return keys;
+    }
+
+    /**
+     * Adds a position in the compact schema to a map or multi-path update.
+     *
+     * @param updates   The map to add to.
+     * @param prefix    The path prefix of the keys, such as {@code "users/<userId>/"}, or empty.
+     * @param latitude  The latitude.
+     * @param longitude The longitude.
+     */
+    public static void putPosition(Map<String, Object> updates, String prefix, double latitude, double longitude) {
+        updates.put(prefix + LATITUDE_E5, toFixed(latitude));
+        updates.put(prefix + LONGITUDE_E5, toFixed(longitude));
+    }
+
+    /**
+     * Adds speed, bearing and accuracy in the compact schema to a map or multi-path update.
+     *
+     * @param updates  The map to add to.
+     * @param prefix   The path prefix of the keys, such as {@code "users/<userId>/"}, or empty.
+     * @param speed    The speed in meters per second.
+     * @param bearing  The bearing in degrees.
+     * @param accuracy The accuracy in meters.
+     */
+    public static void putMotion(Map<String, Object> updates, String prefix, float speed, float bearing, float accuracy) {
+        updates.put(prefix + SPEED_DM, Math.round(speed * SPEED_SCALE));
+        updates.put(prefix + BEARING_DEG, Math.round(bearing));
+        updates.put(prefix + ACCURACY_M, (int) Math.ceil(accuracy));
+    }
+
+    /**
+     * Adds an EpiPen expiry date in the compact schema to a map or multi-path update. A date that cannot be
+     * parsed is kept as text under its legacy key rather than dropped.
+     *
+     * @param updates      The map to add to.
+     * @param prefix       The path prefix of the keys, such as {@code "users/<userId>/"}, or empty.
+     * @param epiPenExpiry The expiry date in the format "dd/MM/yyyy", or empty if unknown.
+     */
+    public static void putExpiry(Map<String, Object> updates, String prefix, String epiPenExpiry) {
+        long expiryDay = parseExpiry(epiPenExpiry);
+        if (expiryDay != Long.MIN_VALUE) {
+            updates.put(prefix + EXPIRY_DAY, expiryDay);
+        } else if (epiPenExpiry != null && !epiPenExpiry.isEmpty()) {
+            updates.put(prefix + KEY_EPIPEN_EXPIRY, epiPenExpiry);
+        }
+    }
+
+    /**
+     * Reads the latitude of a profile or projection entry in either schema.
+     *
+     * @param snapshot The snapshot of the profile or entry.
+     * @return The latitude, or null if none is stored.
+     */
+    public static Double latitudeOf(DataSnapshot snapshot) {
+        return coordinateOf(snapshot, LATITUDE_E5, KEY_LATITUDE);
+    }
+
+    /**
+     * Reads the longitude of a profile or projection entry in either schema.
+     *
+     * @param snapshot The snapshot of the profile or entry.
+     * @return The longitude, or null if none is stored.
+     */
+    public static Double longitudeOf(DataSnapshot snapshot) {
+        return coordinateOf(snapshot, LONGITUDE_E5, KEY_LONGITUDE);
+    }
+
+    /**
+     * Converts an EpiPen expiry date to an epoch day.
+     *
+     * @param epiPenExpiry The expiry date in the format "dd/MM/yyyy".
+     * @return The epoch day, or {@link Long#MIN_VALUE} if the date is missing or cannot be parsed.
+     */
+    public static long parseExpiry(String epiPenExpiry) {
+        if (epiPenExpiry == null || epiPenExpiry.isEmpty()) return Long.MIN_VALUE;
+        try {
+            return LocalDate.parse(epiPenExpiry.trim(), EXPIRY_PARSE_FORMAT).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Converts an epoch day to an EpiPen expiry date.
+     *
+     * @param epochDay The epoch day.
+     * @return The expiry date in the format "dd/MM/yyyy".
+     */
+    public static String formatExpiry(long epochDay) {
+        return LocalDate.ofEpochDay(epochDay).format(EXPIRY_FORMAT);
+    }
+
+    /**
+     * Resets every field of a profile to the value a new instance has.
+     *
+     * @param profile The profile to reset.
+     */
+    private static void reset(UserProfile profile) {
+        profile.userId = null;
+        profile.name = "";
+        profile.allergens = 0;
+        profile.epiPenExpiry = "";
+        profile.latitude = 0;
+        profile.longitude = 0;
+        profile.speed = 0;
+        profile.bearing = 0;
+        profile.accuracy = 0;
+        profile.locationTime = 0;
+        profile.hasEpiPen = false;
+        profile.needsHelp = false;
+        profile.setResponseStatus(UserProfile.ResponseStatus.AVAILABLE);
+    }
+
+    /**
+     * Adds keys to a list.
+     *
+     * @param keys  The list.
+     * @param added The keys to add.
+     */
+    private static void addKeys(List<String> keys, String... added) {
+        for (String key : added) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Reads the value of a field from its compact key, or from its legacy key if the compact one is missing.
+     *
+     * @param map     The stored profile.
+     * @param compact The compact key.
+     * @param legacy  The legacy key.
+     * @return The stored value, or null.
+     */
+    private static Object either(Map<?, ?> map, String compact, String legacy) {
+        Object value = map.get(compact);
+        return value != null ? value : map.get(legacy);
+    }
+
+    /**
+     * Converts a coordinate to fixed point.
+     *
+     * @param degrees The coordinate in degrees.
+     * @return The coordinate in units of 1 / {@link #COORDINATE_SCALE} degrees.
+     */
+    private static int toFixed(double degrees) {
+        return (int) Math.round(degrees * COORDINATE_SCALE);
+    }
+
+    /**
+     * Reads a coordinate stored in either schema.
+     *
+     * @param fixed  The fixed-point value, or null.
+     * @param legacy The value in degrees, or null.
+     * @return The coordinate in degrees, or 0 if none is stored.
+     */
+    private static double coordinate(Object fixed, Object legacy) {
+        return fixed instanceof Number
+                ? ((Number) fixed).doubleValue() / COORDINATE_SCALE
+                : asNumber(legacy).doubleValue();
+    }
+
+    /**
+     * Reads a coordinate child of a snapshot stored in either schema.
+     *
+     * @param snapshot The snapshot of the profile or entry.
+     * @param compact  The compact key.
+     * @param legacy   The legacy key.
+     * @return The coordinate in degrees, or null if none is stored.
+     */
+    private static Double coordinateOf(DataSnapshot snapshot, String compact, String legacy) {
+        Object fixed = snapshot.child(compact).getValue();
+        Object degrees = fixed == null ? snapshot.child(legacy).getValue() : null;
+        if (!(fixed instanceof Number) && !(degrees instanceof Number)) return null;
+        return coordinate(fixed, degrees);
+    }
+
+    /**
+     * Reads a string value.
+     *
+     * @param value    The stored value.
+     * @param fallback The value to use if none is stored.
+     * @return The string.
+     */
+    private static String asString(Object value, String fallback) {
+        return value != null ? value.toString() : fallback;
+    }
+
+    /**
+     * Reads a numeric value. The database returns whole numbers as Long and others as Double.
+     *
+     * @param value The stored value.
+     * @return The number, or 0 if none is stored.
+     */
+    private static Number asNumber(Object value) {
+        return value instanceof Number ? (Number) value : 0;
+    }
+}
@@ -6,12 +6,18 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.location.Location;
+import android.os.BatteryManager;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -19,15 +25,26 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
 
 import com.example.epifind.R;
 import com.example.epifind.activities.MainActivity;
+import com.example.epifind.geo.GeoDistance;
+import com.example.epifind.geo.ResponderIndex;
 import com.example.epifind.managers.LocalNotificationManager;
+import com.example.epifind.models.UserProfile;
+import com.example.epifind.models.UserProfileCodec;
+import com.example.epifind.utils.DatabaseCache;
+import com.example.epifind.utils.ServerClock;
+import com.google.android.gms.location.ActivityRecognition;
+import com.google.android.gms.location.ActivityRecognitionResult;
+import com.google.android.gms.location.DetectedActivity;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.database.DataSnapshot;
@@ -36,6 +53,10 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * LocationUpdateService is a foreground service that continuously tracks the user's location and updates it in Firebase.
  * It also listens for SOS alerts from nearby users and notifies the user if someone needs help.
@@ -45,16 +66,40 @@ public class LocationUpdateService extends Service {
     private static final String TAG = "LocationUpdateService";
     private static final String CHANNEL_ID = "LocationServiceChannel";
     private static final int NOTIFICATION_ID = 12345;
-    private static final float MIN_DISTANCE_FOR_UPDATE = 10; // 10 meters
+    private static final float MIN_SPEED_CHANGE_FOR_UPDATE = 2; // 2 m/s
+    private static final String ACTION_ACTIVITY_UPDATE = "com.example.epifind.ACTIVITY_UPDATE";
+    private static final long ACTIVITY_UPDATE_INTERVAL_MS = 60000; // 1 minute
+    private static final int MIN_ACTIVITY_CONFIDENCE = 50;
+    private static final double SOS_RANGE_METERS = 10000; // matches the largest SOS search radius
+    private static final long SOS_MAX_AGE_MS = 30 * 60 * 1000; // 30 minutes
 
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
     private DatabaseReference mDatabase;
     private FirebaseUser currentUser;
     private Location lastLocation;
+    private LocationWriter<Location> locationWriter;
     private DatabaseReference latestSosRef;
     private ValueEventListener sosListener;
     private LocalNotificationManager notificationManager;
+    private DatabaseReference userRef;
+    private ValueEventListener profileListener;
+    private UserProfile userProfile;
+    private String indexedGeohash;
+    private SamplingPolicy.Mode samplingMode = SamplingPolicy.UNKNOWN;
+    private SamplingPolicy.Activity activity = SamplingPolicy.Activity.UNKNOWN;
+    private int batteryPercent = 100;
+    private boolean charging;
+    private Double latestSosLatitude;
+    private Double latestSosLongitude;
+    private Long latestSosTimestamp;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable sosExpiryCheck = this::updateSamplingMode;
+    private boolean locationUpdatesRequested;
+    private boolean sosListenerAttached;
+    private BroadcastReceiver batteryReceiver;
+    private BroadcastReceiver activityReceiver;
+    private PendingIntent activityIntent;
 
     @Override
     public void onCreate() {
@@ -73,21 +118,26 @@ public class LocationUpdateService extends Service {
         currentUser = FirebaseAuth.getInstance().getCurrentUser();
         notificationManager = new LocalNotificationManager(this);
         latestSosRef = FirebaseDatabase.getInstance().getReference("latest_sos");
+        ServerClock.start();
+        setupLocationWriter();
+        setupProfileListener();
     }
 
     /**
      * Sets up the location callback to handle location updates.
      * The callback checks if the location should be updated in Firebase based on the distance moved.
+     * Only the latest fix of a batch is considered, since it supersedes the others.
      */
     private void setupLocationCallback() {
         locationCallback = new LocationCallback() {
             @Override
             public void onLocationResult(@NonNull LocationResult locationResult) {
-                for (Location location : locationResult.getLocations()) {
-                    if (shouldUpdateLocation(location)) {
-                        updateLocationInFirebase(location);
-                        lastLocation = location;
-                    }
+                Location location = locationResult.getLastLocation();
+                if (location != null && shouldUpdateLocation(location)) {
+                    locationWriter.submit(location);
+                    lastLocation = location;
+                    DatabaseCache.pinCellsAround(location.getLatitude(), location.getLongitude());
+                    updateSamplingMode();
                 }
             }
         };
@@ -95,21 +145,33 @@ public class LocationUpdateService extends Service {
 
     /**
      * Sets up a listener to monitor SOS alerts from other users.
-     * If an SOS alert is detected and the user is not the requester, a notification is shown.
+     * If an SOS alert is detected and the user is not the requester, a notification is shown. Requests older
+     * than {@link #SOS_MAX_AGE_MS} are ignored, since a request that was never cancelled stays in place.
      */
     private void setupSosListener() {
         sosListener = new ValueEventListener() {
             @Override
             public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                latestSosLatitude = null;
+                latestSosLongitude = null;
+                latestSosTimestamp = null;
+                handler.removeCallbacks(sosExpiryCheck);
                 if (dataSnapshot.exists()) {
                     String requesterId = dataSnapshot.child("requester").getValue(String.class);
-                    if (requesterId != null && !requesterId.equals(currentUser.getUid())) {
+                    Long timestamp = dataSnapshot.child("timestamp").getValue(Long.class);
+                    if (requesterId != null && !requesterId.equals(currentUser.getUid()) && isRecentSos(timestamp)) {
+                        latestSosLatitude = dataSnapshot.child("latitude").getValue(Double.class);
+                        latestSosLongitude = dataSnapshot.child("longitude").getValue(Double.class);
+                        latestSosTimestamp = timestamp;
+                        // Leave the burst mode once the request ages out, even if nothing else changes
+                        handler.postDelayed(sosExpiryCheck, timestamp + SOS_MAX_AGE_MS - ServerClock.now());
                         notificationManager.showNotification(
                                 "SOS Alert",
                                 "Someone nearby needs help with an EpiPen!"
                         );
                     }
                 }
+                updateSamplingMode();
             }
 
             @Override
@@ -125,8 +187,13 @@ public class LocationUpdateService extends Service {
             createNotificationChannel();
             startForeground(NOTIFICATION_ID, buildNotification());
             requestLocationUpdates();
+            registerBatteryReceiver();
+            requestActivityUpdates();
+        }
+        if (!sosListenerAttached) {
+            sosListenerAttached = true;
+            latestSosRef.addValueEventListener(sosListener);
         }
-        latestSosRef.addValueEventListener(sosListener);
         return START_STICKY;
     }
 
@@ -173,14 +240,14 @@ public class LocationUpdateService extends Service {
     }
 
     /**
-     * Requests location updates from the FusedLocationProviderClient.
-     * Updates are requested at a high accuracy and frequent interval.
+     * Requests location updates from the FusedLocationProviderClient with the current sampling mode.
+     * Requesting again with the same callback replaces the previous request.
      */
     private void requestLocationUpdates() {
-        LocationRequest locationRequest = LocationRequest.create()
-                .setInterval(10000)
-                .setFastestInterval(5000)
-                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+        LocationRequest locationRequest = new LocationRequest.Builder(priorityOf(samplingMode.accuracy), samplingMode.intervalMs)
+                .setMinUpdateIntervalMillis(samplingMode.intervalMs / 2)
+                .setMaxUpdateDelayMillis(samplingMode.maxWaitMs)
+                .build();
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
             if (checkPermissions()) {
@@ -188,6 +255,7 @@ public class LocationUpdateService extends Service {
                     fusedLocationClient.requestLocationUpdates(locationRequest,
                             locationCallback,
                             Looper.getMainLooper());
+                    locationUpdatesRequested = true;
                 } catch (SecurityException e) {
                     Log.e(TAG, "Error requesting location updates", e);
                 }
@@ -196,34 +264,295 @@ public class LocationUpdateService extends Service {
     }
 
     /**
-     * Determines whether the new location should be updated in Firebase based on the distance moved.
+     * Maps a sampling accuracy onto a fused location provider priority.
+     *
+     * @param accuracy The sampling accuracy.
+     * @return The location request priority.
+     */
+    private static int priorityOf(SamplingPolicy.Accuracy accuracy) {
+        switch (accuracy) {
+            case HIGH:
+                return Priority.PRIORITY_HIGH_ACCURACY;
+            case LOW_POWER:
+                return Priority.PRIORITY_LOW_POWER;
+            default:
+                return Priority.PRIORITY_BALANCED_POWER_ACCURACY;
+        }
+    }
+
+    /**
+     * Chooses the sampling mode for the current activity, battery state and SOS proximity, and re-requests
+     * location updates if it changed.
+     */
+    private void updateSamplingMode() {
+        SamplingPolicy.Mode mode = SamplingPolicy.choose(activity, batteryPercent, charging, isSosInRange());
+        if (mode.equals(samplingMode)) return;
+        Log.d(TAG, "Sampling mode changed to " + mode);
+        samplingMode = mode;
+        locationWriter.setFlushInterval(mode.flushIntervalMs);
+        if (locationUpdatesRequested) {
+            requestLocationUpdates();
+        }
+    }
+
+    /**
+     * Checks whether an SOS is active within range: the user's own, or another user's latest SOS within
+     * {@link #SOS_RANGE_METERS} and younger than {@link #SOS_MAX_AGE_MS}. Another user's SOS counts as in range
+     * while the user's location is unknown.
+     *
+     * @return True if an SOS is active within range, false otherwise.
+     */
+    private boolean isSosInRange() {
+        if (userProfile != null && userProfile.getNeedsHelp()) {
+            return true;
+        }
+        if (latestSosLatitude == null || latestSosLongitude == null || !isRecentSos(latestSosTimestamp)) {
+            return false;
+        }
+        return lastLocation == null || GeoDistance.isWithin(latestSosLatitude, latestSosLongitude,
+                lastLocation.getLatitude(), lastLocation.getLongitude(), SOS_RANGE_METERS, GeoDistance.Precision.FAST);
+    }
+
+    /**
+     * Checks whether an SOS request is younger than {@link #SOS_MAX_AGE_MS}, by the server clock.
+     *
+     * @param timestamp The time the request was made, or null if unknown.
+     * @return True if the request is recent, false otherwise.
+     */
+    private static boolean isRecentSos(Long timestamp) {
+        return timestamp != null && ServerClock.now() - timestamp < SOS_MAX_AGE_MS;
+    }
+
+    /**
+     * Reads the battery state from the sticky battery broadcast and keeps following its changes.
+     */
+    private void registerBatteryReceiver() {
+        if (batteryReceiver != null) return;
+        batteryReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onBatteryChanged(intent);
+            }
+        };
+        Intent sticky = ContextCompat.registerReceiver(this, batteryReceiver,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED), ContextCompat.RECEIVER_NOT_EXPORTED);
+        if (sticky != null) {
+            onBatteryChanged(sticky);
+        }
+    }
+
+    /**
+     * Updates the battery level and charging state from a battery broadcast.
+     *
+     * @param intent The battery broadcast.
+     */
+    private void onBatteryChanged(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level >= 0 && scale > 0) {
+            batteryPercent = level * 100 / scale;
+        }
+        charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        updateSamplingMode();
+    }
+
+    /**
+     * Requests activity recognition updates, delivered through a PendingIntent to a receiver registered by
+     * the service. Without the permission the activity stays unknown.
+     */
+    private void requestActivityUpdates() {
+        if (activityIntent != null) return;
+        String permission = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? Manifest.permission.ACTIVITY_RECOGNITION
+                : "com.google.android.gms.permission.ACTIVITY_RECOGNITION";
+        if (ActivityCompat.checkSelfPermission(this, permission) != PackageManager.PERMISSION_GRANTED) {
+            Log.d(TAG, "Activity recognition permission not granted");
+            return;
+        }
+
+        activityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (ActivityRecognitionResult.hasResult(intent)) {
+                    onActivityDetected(ActivityRecognitionResult.extractResult(intent));
+                }
+            }
+        };
+        ContextCompat.registerReceiver(this, activityReceiver, new IntentFilter(ACTION_ACTIVITY_UPDATE),
+                ContextCompat.RECEIVER_NOT_EXPORTED);
+
+        // Activity recognition adds the result to the intent, so it has to be mutable
+        Intent intent = new Intent(ACTION_ACTIVITY_UPDATE).setPackage(getPackageName());
+        activityIntent = PendingIntent.getBroadcast(this, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE);
+        try {
+            ActivityRecognition.getClient(this).requestActivityUpdates(ACTIVITY_UPDATE_INTERVAL_MS, activityIntent)
+                    .addOnFailureListener(e -> Log.e(TAG, "Failed to request activity updates", e));
+        } catch (SecurityException e) {
+            Log.e(TAG, "Error requesting activity updates", e);
+        }
+    }
+
+    /**
+     * Updates the user's activity from an activity recognition result. Results below
+     * {@link #MIN_ACTIVITY_CONFIDENCE}, and tilting, keep the previous activity.
+     *
+     * @param result The activity recognition result.
+     */
+    private void onActivityDetected(ActivityRecognitionResult result) {
+        if (result == null) return;
+        DetectedActivity detected = result.getMostProbableActivity();
+        if (detected.getConfidence() < MIN_ACTIVITY_CONFIDENCE) return;
+        switch (detected.getType()) {
+            case DetectedActivity.STILL:
+                activity = SamplingPolicy.Activity.STILL;
+                break;
+            case DetectedActivity.ON_FOOT:
+            case DetectedActivity.WALKING:
+            case DetectedActivity.RUNNING:
+                activity = SamplingPolicy.Activity.ON_FOOT;
+                break;
+            case DetectedActivity.ON_BICYCLE:
+                activity = SamplingPolicy.Activity.CYCLING;
+                break;
+            case DetectedActivity.IN_VEHICLE:
+                activity = SamplingPolicy.Activity.IN_VEHICLE;
+                break;
+            case DetectedActivity.TILTING:
+                return;
+            default:
+                activity = SamplingPolicy.Activity.UNKNOWN;
+                break;
+        }
+        updateSamplingMode();
+    }
+
+    /**
+     * Determines whether the new location should be updated in Firebase based on the distance moved,
+     * or on a change in speed so that responders who stop or start moving are ranked correctly.
+     * The distance threshold comes from the current sampling mode.
      *
      * @param newLocation The new location to evaluate.
      * @return True if the location should be updated, false otherwise.
      */
     private boolean shouldUpdateLocation(Location newLocation) {
-        return lastLocation == null || newLocation.distanceTo(lastLocation) >= MIN_DISTANCE_FOR_UPDATE;
+        return lastLocation == null || newLocation.distanceTo(lastLocation) >= samplingMode.minDistanceMeters
+                || Math.abs(ResponderIndex.speedOf(newLocation) - ResponderIndex.speedOf(lastLocation)) >= MIN_SPEED_CHANGE_FOR_UPDATE;
+    }
+
+    /**
+     * Sets up the writer that publishes location fixes, coalescing fixes that arrive faster than the
+     * sampling mode's flush interval into a single write of the latest one.
+     */
+    private void setupLocationWriter() {
+        locationWriter = new LocationWriter<>(samplingMode.flushIntervalMs, this::buildLocationUpdates,
+                updates -> mDatabase.updateChildren(updates)
+                        .addOnFailureListener(e -> Log.e(TAG, "Failed to update location", e)),
+                new LocationWriter.Scheduler() {
+                    @Override
+                    public long now() {
+                        return SystemClock.elapsedRealtime();
+                    }
+
+                    @Override
+                    public void postDelayed(Runnable task, long delayMs) {
+                        handler.postDelayed(task, delayMs);
+                    }
+
+                    @Override
+                    public void remove(Runnable task) {
+                        handler.removeCallbacks(task);
+                    }
+                });
     }
 
     /**
-     * Updates the user's location in Firebase Realtime Database.
+     * Builds the update that publishes the user's location, speed, bearing, accuracy and fix time, moving
+     * their responder projection entry in the same write when they are eligible to respond.
      *
-     * @param location The location to update.
+     * @param location The location to publish.
+     * @return The multi-path update, empty if no user is signed in.
      */
-    private void updateLocationInFirebase(Location location) {
-        if (currentUser != null) {
-            mDatabase.child("users").child(currentUser.getUid()).child("latitude").setValue(location.getLatitude());
-            mDatabase.child("users").child(currentUser.getUid()).child("longitude").setValue(location.getLongitude());
+    private Map<String, Object> buildLocationUpdates(Location location) {
+        Map<String, Object> updates = new HashMap<>();
+        if (currentUser == null) return updates;
+
+        String userId = currentUser.getUid();
+        String prefix = "users/" + userId + "/";
+        UserProfileCodec.putPosition(updates, prefix, location.getLatitude(), location.getLongitude());
+        UserProfileCodec.putMotion(updates, prefix, ResponderIndex.speedOf(location),
+                ResponderIndex.bearingOf(location), ResponderIndex.accuracyOf(location));
+        updates.put(prefix + UserProfileCodec.LOCATION_TIME, location.getTime());
+        if (userProfile != null) {
+            indexedGeohash = ResponderIndex.putUpdates(updates, userId, userProfile, location, indexedGeohash);
         }
+        return updates;
+    }
+
+    /**
+     * Keeps the user's own profile in memory so location updates know whether the user is an eligible
+     * responder. The first snapshot also seeds the geohash the user is currently indexed under, so the
+     * first update after a restart removes the stale projection entry. When eligibility flips without a
+     * location update, such as when an SOS is cancelled, the projection entry is rewritten to match.
+     */
+    private void setupProfileListener() {
+        if (currentUser == null) return;
+        userRef = mDatabase.child("users").child(currentUser.getUid());
+        profileListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
+                UserProfile profile = UserProfileCodec.decode(dataSnapshot, UserProfileCodec.ALL, null);
+                if (profile == null) return;
+                if (userProfile == null && indexedGeohash == null) {
+                    indexedGeohash = ResponderIndex.keyFor(profile.getLatitude(), profile.getLongitude());
+                }
+                // Until the first fix, pin the cells around the last published location
+                if (userProfile == null && lastLocation == null
+                        && (profile.getLatitude() != 0 || profile.getLongitude() != 0)) {
+                    DatabaseCache.pinCellsAround(profile.getLatitude(), profile.getLongitude());
+                }
+                boolean eligibilityChanged = userProfile != null
+                        && ResponderIndex.isEligible(userProfile) != ResponderIndex.isEligible(profile);
+                userProfile = profile;
+                updateSamplingMode();
+                if (eligibilityChanged) {
+                    Map<String, Object> updates = new HashMap<>();
+                    indexedGeohash = ResponderIndex.putUpdates(updates, currentUser.getUid(), profile, indexedGeohash);
+                    mDatabase.updateChildren(updates)
+                            .addOnFailureListener(e -> Log.e(TAG, "Failed to update responder index", e));
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError databaseError) {
+                Log.e(TAG, "Failed to read user profile", databaseError.toException());
+            }
+        };
+        userRef.addValueEventListener(profileListener);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         fusedLocationClient.removeLocationUpdates(locationCallback);
+        locationWriter.flush();
+        Log.i(TAG, String.format(Locale.US, "Location writes: %d of %d fixes, %.1f writes/hour, %.0f bytes/hour",
+                locationWriter.getWriteCount(), locationWriter.getSubmittedCount(),
+                locationWriter.getWritesPerHour(), locationWriter.getBytesPerHour()));
         if (sosListener != null) {
             latestSosRef.removeEventListener(sosListener);
         }
+        handler.removeCallbacks(sosExpiryCheck);
+        if (profileListener != null) {
+            userRef.removeEventListener(profileListener);
+        }
+        if (batteryReceiver != null) {
+            unregisterReceiver(batteryReceiver);
+        }
+        if (activityIntent != null) {
+            ActivityRecognition.getClient(this).removeActivityUpdates(activityIntent);
+            unregisterReceiver(activityReceiver);
+        }
     }
 
     @Nullable
@@ -0,0 +1,253 @@
+package com.example.epifind.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * LocationWriter publishes location fixes as single multi-path updates, at most once per flush interval.
+ * The first fix after a quiet period is written immediately; fixes that arrive faster than the interval
+ * are coalesced, so only the latest one is written at the end of the interval and the fixes it replaced
+ * are dropped. Each write carries the complete position, so readers never see a torn latitude/longitude pair.
+ *
+ * <p>The writer also counts writes and estimated payload bytes, so the cost of location tracking can be
+ * reported per hour.
+ *
+ * @param <F> The type of the location fixes.
+ */
+public class LocationWriter<F> {
+
+    /**
+     * Interface for turning a location fix into a multi-path update. It is called when the fix is flushed,
+     * not when it is submitted, so state derived from the previous write stays consistent.
+     */
+    public interface UpdateBuilder<F> {
+        Map<String, Object> build(F fix);
+    }
+
+    /**
+     * Interface for performing a multi-path update.
+     */
+    public interface Sink {
+        void write(Map<String, Object> updates);
+    }
+
+    /**
+     * Interface for reading the time and scheduling delayed flushes.
+     */
+    public interface Scheduler {
+        long now();
+        void postDelayed(Runnable task, long delayMs);
+        void remove(Runnable task);
+    }
+
+    private static final long MS_PER_HOUR = 3600000;
+
+    private long flushIntervalMs;
+    private final UpdateBuilder<F> builder;
+    private final Sink sink;
+    private final Scheduler scheduler;
+    private final Runnable flushTask = this::flush;
+    private final long startedAt;
+    private F pending;
+    private boolean flushScheduled;
+    private long lastFlushAt = Long.MIN_VALUE;
+    private long submitted;
+    private long superseded;
+    private long writes;
+    private long bytes;
+
+    /**
+     * Constructor for LocationWriter.
+     *
+     * @param flushIntervalMs The minimum time between two writes in milliseconds.
+     * @param builder         The builder that turns a fix into a multi-path update.
+     * @param sink            The sink that performs the updates.
+     * @param scheduler       The scheduler used for the time and for delayed flushes.
+     */
+    public LocationWriter(long flushIntervalMs, UpdateBuilder<F> builder, Sink sink, Scheduler scheduler) {
+        this.flushIntervalMs = flushIntervalMs;
+        this.builder = builder;
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.startedAt = scheduler.now();
+    }
+
+    /**
+     * Submits a location fix. It is written immediately if the flush interval has passed since the last
+     * write, and otherwise replaces any fix still waiting for the next flush.
+     *
+     * @param fix The location fix.
+     */
+    public void submit(F fix) {
+        submitted++;
+        if (pending != null) {
+            superseded++;
+        }
+        pending = fix;
+        if (flushScheduled) return;
+
+        long sinceLastFlush = scheduler.now() - lastFlushAt;
+        if (lastFlushAt == Long.MIN_VALUE || sinceLastFlush >= flushIntervalMs) {
+            flush();
+        } else {
+            flushScheduled = true;
+            scheduler.postDelayed(flushTask, flushIntervalMs - sinceLastFlush);
+        }
+    }
+
+    /**
+     * Writes the waiting fix, if any, right away.
+     */
+    public void flush() {
+        if (flushScheduled) {
+            scheduler.remove(flushTask);
+            flushScheduled = false;
+        }
+        if (pending == null) return;
+
+        Map<String, Object> updates = builder.build(pending);
+        pending = null;
+        lastFlushAt = scheduler.now();
+        writes++;
+        bytes += estimateBytes(updates);
+        sink.write(updates);
+    }
+
+    /**
+     * Changes the minimum time between two writes. A waiting fix is written right away if the new interval
+     * has already passed since the last write.
+     *
+     * @param flushIntervalMs The new flush interval in milliseconds.
+     */
+    public void setFlushInterval(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+        if (!flushScheduled) return;
+        scheduler.remove(flushTask);
+        flushScheduled = false;
+        long sinceLastFlush = scheduler.now() - lastFlushAt;
+        if (sinceLastFlush >= flushIntervalMs) {
+            flush();
+        } else {
+            flushScheduled = true;
+            scheduler.postDelayed(flushTask, flushIntervalMs - sinceLastFlush);
+        }
+    }
+
+    /**
+     * Drops the waiting fix, if any, and cancels the scheduled flush.
+     */
+    public void cancel() {
+        if (flushScheduled) {
+            scheduler.remove(flushTask);
+            flushScheduled = false;
+        }
+        pending = null;
+    }
+
+    /**
+     * Gets the number of fixes submitted.
+     *
+     * @return The number of fixes.
+     */
+    public long getSubmittedCount() {
+        return submitted;
+    }
+
+    /**
+     * Gets the number of fixes that were replaced by a newer fix before they were written.
+     *
+     * @return The number of dropped fixes.
+     */
+    public long getSupersededCount() {
+        return superseded;
+    }
+
+    /**
+     * Gets the number of writes performed.
+     *
+     * @return The number of writes.
+     */
+    public long getWriteCount() {
+        return writes;
+    }
+
+    /**
+     * Gets the estimated number of payload bytes written.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesWritten() {
+        return bytes;
+    }
+
+    /**
+     * Gets the average number of writes per hour since the writer was created.
+     *
+     * @return The writes per hour.
+     */
+    public double getWritesPerHour() {
+        return perHour(writes);
+    }
+
+    /**
+     * Gets the average number of payload bytes written per hour since the writer was created.
+     *
+     * @return The bytes per hour.
+     */
+    public double getBytesPerHour() {
+        return perHour(bytes);
+    }
+
+    /**
+     * Estimates the size of a multi-path update as JSON, which is close to what the database client sends.
+     *
+     * @param updates The update.
+     * @return The estimated size in bytes.
+     */
+    public static long estimateBytes(Map<String, ?> updates) {
+        long size = 2;
+        for (Map.Entry<String, ?> entry : updates.entrySet()) {
+            size += utf8Length(entry.getKey()) + 4 + valueBytes(entry.getValue());
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the size of a single value as JSON.
+     *
+     * @param value The value.
+     * @return The estimated size in bytes.
+     */
+    @SuppressWarnings("unchecked")
+    private static long valueBytes(Object value) {
+        if (value == null) {
+            return 4;
+        } else if (value instanceof Map) {
+            return estimateBytes((Map<String, ?>) value);
+        } else if (value instanceof String) {
+            return utf8Length((String) value) + 2;
+        }
+        return String.valueOf(value).length();
+    }
+
+    /**
+     * Gets the length of a string encoded as UTF-8.
+     *
+     * @param value The string.
+     * @return The length in bytes.
+     */
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Converts a count since the writer was created into an hourly rate.
+     *
+     * @param count The count.
+     * @return The count per hour, or 0 if no time has passed.
+     */
+    private double perHour(long count) {
+        long elapsed = scheduler.now() - startedAt;
+        return elapsed > 0 ? count * (double) MS_PER_HOUR / elapsed : 0;
+    }
+}
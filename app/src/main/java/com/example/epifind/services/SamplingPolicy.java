@@ -0,0 +1,165 @@
+package com.example.epifind.services;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * SamplingPolicy chooses how often and how precisely a responder's location is sampled. The choice depends on
+ * what the user is doing, the battery level and whether the device is charging, so responders who sit still
+ * or run low on battery cost little, while an SOS within range switches everyone nearby to a high-accuracy burst.
+ *
+ * <p>The policy is a pure function of its inputs, so it can be simulated without a device.
+ */
+public final class SamplingPolicy {
+    public static final int LOW_BATTERY_PERCENT = 15;
+    public static final int MEDIUM_BATTERY_PERCENT = 30;
+    private static final int MEDIUM_BATTERY_SLOWDOWN = 2;
+
+    /**
+     * The user's activity, as reported by activity recognition.
+     */
+    public enum Activity {
+        STILL,
+        ON_FOOT,
+        CYCLING,
+        IN_VEHICLE,
+        UNKNOWN
+    }
+
+    /**
+     * The accuracy to request location fixes with, mapped by the service onto the fused provider's priorities.
+     */
+    public enum Accuracy {
+        HIGH,
+        BALANCED,
+        LOW_POWER
+    }
+
+    /**
+     * Mode describes a location sampling configuration.
+     */
+    public static final class Mode {
+        public final Accuracy accuracy;
+        public final long intervalMs;
+        public final long maxWaitMs;
+        public final float minDistanceMeters;
+        public final long flushIntervalMs;
+
+        /**
+         * Constructor for Mode.
+         *
+         * @param accuracy          The accuracy to request fixes with.
+         * @param intervalMs        The interval between fixes in milliseconds.
+         * @param maxWaitMs         The longest time fixes may be batched before delivery, or 0 to deliver each fix.
+         * @param minDistanceMeters The distance the user has to move before a fix is published.
+         * @param flushIntervalMs   The minimum time between two published fixes in milliseconds.
+         */
+        public Mode(Accuracy accuracy, long intervalMs, long maxWaitMs, float minDistanceMeters, long flushIntervalMs) {
+            this.accuracy = accuracy;
+            this.intervalMs = intervalMs;
+            this.maxWaitMs = maxWaitMs;
+            this.minDistanceMeters = minDistanceMeters;
+            this.flushIntervalMs = flushIntervalMs;
+        }
+
+        /**
+         * Gets a copy of the mode with its intervals multiplied.
+         *
+         * @param factor The factor to multiply the intervals by.
+         * @return The slower mode.
+         */
+        Mode slowedBy(int factor) {
+            return new Mode(accuracy, intervalMs * factor, maxWaitMs * factor, minDistanceMeters, flushIntervalMs * factor);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Mode)) return false;
+            Mode mode = (Mode) o;
+            return intervalMs == mode.intervalMs && maxWaitMs == mode.maxWaitMs
+                    && Float.compare(minDistanceMeters, mode.minDistanceMeters) == 0
+                    && flushIntervalMs == mode.flushIntervalMs && accuracy == mode.accuracy;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = accuracy.hashCode();
+            result = 31 * result + Long.hashCode(intervalMs);
+            result = 31 * result + Long.hashCode(maxWaitMs);
+            result = 31 * result + Float.hashCode(minDistanceMeters);
+            result = 31 * result + Long.hashCode(flushIntervalMs);
+            return result;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s every %d s, batched up to %d s, %.0f m, flushed every %d s",
+                    accuracy, intervalMs / 1000, maxWaitMs / 1000, minDistanceMeters, flushIntervalMs / 1000);
+        }
+    }
+
+    /** High-accuracy burst while an SOS is active within range. */
+    public static final Mode SOS_BURST = new Mode(Accuracy.HIGH, 2000, 0, 5, 2000);
+    /** Full accuracy while charging, since power is not a concern. */
+    public static final Mode CHARGING = new Mode(Accuracy.HIGH, 10000, 0, 10, 15000);
+    /** Coarse, heavily batched sampling to preserve a low battery. */
+    public static final Mode LOW_BATTERY = new Mode(Accuracy.LOW_POWER, 300000, 900000, 200, 300000);
+    public static final Mode STILL = new Mode(Accuracy.BALANCED, 120000, 600000, 50, 120000);
+    public static final Mode ON_FOOT = new Mode(Accuracy.BALANCED, 30000, 120000, 20, 30000);
+    public static final Mode CYCLING = new Mode(Accuracy.BALANCED, 15000, 60000, 30, 15000);
+    public static final Mode IN_VEHICLE = new Mode(Accuracy.BALANCED, 10000, 60000, 100, 15000);
+    public static final Mode UNKNOWN = new Mode(Accuracy.BALANCED, 60000, 300000, 25, 60000);
+
+    private SamplingPolicy() {
+    }
+
+    /**
+     * Chooses the sampling mode for the current conditions. An SOS within range always wins; otherwise
+     * charging allows full accuracy, a low battery forces low-power sampling, and the activity decides in
+     * between, slowed down when the battery is below {@link #MEDIUM_BATTERY_PERCENT}.
+     *
+     * @param activity       The user's current activity.
+     * @param batteryPercent The battery level in percent.
+     * @param charging       True if the device is charging.
+     * @param sosInRange     True if an SOS is active within range of the user.
+     * @return The sampling mode.
+     */
+    public static Mode choose(Activity activity, int batteryPercent, boolean charging, boolean sosInRange) {
+        if (sosInRange) {
+            return SOS_BURST;
+        }
+        if (charging) {
+            return CHARGING;
+        }
+        if (batteryPercent <= LOW_BATTERY_PERCENT) {
+            return LOW_BATTERY;
+        }
+
+        Mode mode = forActivity(activity);
+        return batteryPercent <= MEDIUM_BATTERY_PERCENT ? mode.slowedBy(MEDIUM_BATTERY_SLOWDOWN) : mode;
+    }
+
+    /**
+     * Gets the sampling mode for an activity on a healthy battery.
+     *
+     * @param activity The user's activity.
+     * @return The sampling mode.
+     */
+    private static Mode forActivity(Activity activity) {
+        switch (activity) {
+            case STILL:
+                return STILL;
+            case ON_FOOT:
+                return ON_FOOT;
+            case CYCLING:
+                return CYCLING;
+            case IN_VEHICLE:
+                return IN_VEHICLE;
+            default:
+                return UNKNOWN;
+        }
+    }
+}
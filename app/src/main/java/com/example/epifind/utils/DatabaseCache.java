@@ -0,0 +1,195 @@
+package com.example.epifind.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.epifind.geo.GeoHash;
+import com.example.epifind.geo.GeoQuery;
+import com.example.epifind.geo.NearestResponderQuery;
+import com.example.epifind.geo.ResponderIndex;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseException;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DatabaseCache sets up the on-disk cache of the Realtime Database and keeps the emergency-critical paths in it:
+ * the signed-in user's profile, their SOS notification inbox, and the responder index cells the SOS search
+ * queries first around them. Pinned paths stay synced while connected, so cold and offline starts can show
+ * them without waiting for the network.
+ *
+ * <p>The database client does not say whether a read was answered from its cache, so reads are classified by
+ * how fast their first snapshot arrives: a read answered while disconnected, or within
+ * {@link #CACHE_HIT_THRESHOLD_MS}, counts as a cache hit.
+ *
+ * <p>Persistence also makes the database client keep its queue of pending writes on disk and resend it, in
+ * order, after the process restarts, which is what makes SOS and location writes made offline survive the
+ * process being killed.
+ */
+public class DatabaseCache {
+    private static final String TAG = "DatabaseCache";
+    public static final long CACHE_SIZE_BYTES = 20 * 1024 * 1024; // 20 MB
+    public static final long CACHE_HIT_THRESHOLD_MS = 50;
+    public static final String READ_PROFILE = "profile";
+    public static final String READ_INBOX = "inbox";
+    public static final String READ_RESPONDER_CELL = "responder cell";
+
+    private static final Map<String, long[]> readCounts = new HashMap<>();
+    private static volatile boolean connected;
+    private static boolean initialized;
+    private static String pinnedUserId;
+    private static Map<String, Query> pinnedCells = new HashMap<>();
+
+    private DatabaseCache() {
+    }
+
+    /**
+     * Enables disk persistence with a bounded cache and starts pinning the signed-in user's paths. Must be
+     * called before any other use of the database, so from {@code Application.onCreate}.
+     */
+    public static synchronized void init() {
+        if (initialized) return;
+        initialized = true;
+        FirebaseDatabase database = FirebaseDatabase.getInstance();
+        try {
+            database.setPersistenceEnabled(true);
+            database.setPersistenceCacheSizeBytes(CACHE_SIZE_BYTES);
+        } catch (DatabaseException e) {
+            // The database was used before this call; it keeps working, without a disk cache
+            Log.e(TAG, "Failed to enable persistence", e);
+        }
+
+        database.getReference(".info/connected").addValueEventListener(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                connected = Boolean.TRUE.equals(snapshot.getValue(Boolean.class));
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Failed to read connection state", error.toException());
+            }
+        });
+        FirebaseAuth.getInstance().addAuthStateListener(auth -> {
+            FirebaseUser user = auth.getCurrentUser();
+            pinUser(user != null ? user.getUid() : null);
+        });
+    }
+
+    /**
+     * Pins the responder index cells the SOS search queries first around a location, and unpins the cells
+     * pinned for a previous location. The cells are pinned with the same queries the search attaches, so the
+     * search is answered from the cache.
+     *
+     * @param latitude  The latitude of the user.
+     * @param longitude The longitude of the user.
+     */
+    public static synchronized void pinCellsAround(double latitude, double longitude) {
+        if (!initialized) return;
+        double radiusMeters = NearestResponderQuery.INITIAL_RING_METERS;
+        Set<String> cells = GeoHash.cellsCovering(latitude, longitude, radiusMeters,
+                GeoHash.queryPrecision(latitude, radiusMeters));
+        if (cells.equals(pinnedCells.keySet())) return;
+
+        DatabaseReference indexRef = FirebaseDatabase.getInstance().getReference(ResponderIndex.ROOT);
+        Map<String, Query> pinned = new HashMap<>();
+        for (String cell : cells) {
+            Query query = pinnedCells.remove(cell);
+            if (query == null) {
+                query = GeoQuery.cellQuery(indexRef, cell);
+                query.keepSynced(true);
+            }
+            pinned.put(cell, query);
+        }
+        unpinCells();
+        pinnedCells = pinned;
+        Log.d(TAG, "Pinned " + pinned.size() + " responder cells");
+    }
+
+    /**
+     * Records the time a read took until its first snapshot arrived.
+     *
+     * @param read      The kind of read, one of the {@code READ_} constants.
+     * @param startedAt The time the read was started, from {@link SystemClock#elapsedRealtime()}.
+     */
+    public static void recordRead(String read, long startedAt) {
+        long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        boolean hit = !connected || elapsed <= CACHE_HIT_THRESHOLD_MS;
+        long[] counts;
+        synchronized (readCounts) {
+            counts = readCounts.get(read);
+            if (counts == null) {
+                counts = new long[2];
+                readCounts.put(read, counts);
+            }
+            counts[hit ? 0 : 1]++;
+        }
+        Log.d(TAG, String.format(Locale.US, "%s read in %d ms (%s), hit rate %.0f%%", read, elapsed,
+                hit ? "cache" : "network", getHitRate(read) * 100));
+    }
+
+    /**
+     * Gets the share of reads of a kind that were answered from the cache.
+     *
+     * @param read The kind of read, one of the {@code READ_} constants.
+     * @return The hit rate between 0 and 1, or 0 if no read of the kind was recorded.
+     */
+    public static double getHitRate(String read) {
+        synchronized (readCounts) {
+            long[] counts = readCounts.get(read);
+            if (counts == null) return 0;
+            return (double) counts[0] / (counts[0] + counts[1]);
+        }
+    }
+
+    /**
+     * Pins the profile and the SOS notification inbox of the signed-in user, unpinning those of the previous user.
+     *
+     * @param userId The ID of the signed-in user, or null if nobody is signed in.
+     */
+    private static synchronized void pinUser(String userId) {
+        if (userId != null && userId.equals(pinnedUserId)) return;
+        if (pinnedUserId != null) {
+            setUserPathsSynced(pinnedUserId, false);
+            unpinCells();
+        }
+        pinnedUserId = userId;
+        if (userId != null) {
+            setUserPathsSynced(userId, true);
+        }
+    }
+
+    /**
+     * Pins or unpins the profile and the SOS notification inbox of a user.
+     *
+     * @param userId The ID of the user.
+     * @param synced True to pin the paths, false to unpin them.
+     */
+    private static void setUserPathsSynced(String userId, boolean synced) {
+        FirebaseDatabase database = FirebaseDatabase.getInstance();
+        database.getReference("users").child(userId).keepSynced(synced);
+        database.getReference("sos_notifications").child(userId).keepSynced(synced);
+    }
+
+    /**
+     * Unpins all pinned responder cells.
+     */
+    private static void unpinCells() {
+        for (Query query : pinnedCells.values()) {
+            query.keepSynced(false);
+        }
+        pinnedCells = new HashMap<>();
+    }
+}
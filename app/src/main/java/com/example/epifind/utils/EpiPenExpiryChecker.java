@@ -1,26 +1,33 @@
 package com.example.epifind.utils;
 
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 
 import com.example.epifind.managers.UserManager;
-import com.example.epifind.models.UserProfile;
+import com.example.epifind.models.ProfileView;
+import com.example.epifind.models.UserProfileCodec;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.concurrent.TimeUnit;
+import java.time.Clock;
+import java.time.LocalDate;
 
 /**
  * EpiPenExpiryChecker is a utility class that checks the expiry date of an EpiPen.
  * It calculates the number of days remaining until the EpiPen expires and notifies the result
- * through a listener.
+ * through a listener. The signed-in user's expiry date is kept on the device as an epoch day, so
+ * the check reads the database only when nothing has been stored locally yet. The stored date follows
+ * the user's profile while {@link UserManager} keeps it cached, so edits made on another device, or
+ * saved offline by a process that has since died, reach it too.
  */
 public class EpiPenExpiryChecker {
     private static final String TAG = "EpiPenExpiryChecker";
-    private static final String DATE_FORMAT = "dd/MM/yyyy";
+    private static final String PREFS_NAME = "epipen_expiry";
+    private static final String KEY_USER_ID = "user_id";
+    private static final String KEY_EXPIRY_DAY = "expiry_day";
     private static final int ERROR_CODE = -1;
 
+    private static volatile Clock clock = Clock.systemDefaultZone();
+
     /**
      * ExpiryCheckListener is an interface used to handle the result of the expiry date check.
      */
@@ -29,16 +36,34 @@ public class EpiPenExpiryChecker {
     }
 
     /**
-     * Checks the expiry date of the EpiPen for the current user.
+     * Checks the expiry date of the EpiPen for the current user. The locally stored expiry date is used if
+     * there is one for the user; otherwise the date is read from their profile once and stored.
      *
+     * @param context     The context used to access the stored expiry date.
      * @param userManager The UserManager instance used to retrieve the user's profile.
      * @param listener    The listener that will be notified with the result of the expiry check.
      */
-    public static void checkEpiPenExpiry(UserManager userManager, ExpiryCheckListener listener) {
-        userManager.getUserProfile(new UserManager.OnUserProfileFetchListener() {
+    public static void checkEpiPenExpiry(Context context, UserManager userManager, ExpiryCheckListener listener) {
+        String userId = userManager.getCurrentUserId();
+        if (userId == null) {
+            listener.onExpiryCheck(ERROR_CODE);
+            return;
+        }
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (userId.equals(prefs.getString(KEY_USER_ID, null))) {
+            listener.onExpiryCheck(prefs.contains(KEY_EXPIRY_DAY)
+                    ? getDaysUntilExpiry(prefs.getLong(KEY_EXPIRY_DAY, 0))
+                    : ERROR_CODE);
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        userManager.getProfileView(UserProfileCodec.EPIPEN_EXPIRY, new UserManager.OnProfileViewFetchListener() {
             @Override
-            public void onSuccess(UserProfile userProfile) {
-                String expiryDate = userProfile.getEpiPenExpiry();
+            public void onSuccess(ProfileView profileView) {
+                String expiryDate = profileView.getEpiPenExpiry();
+                saveExpiry(appContext, profileView.getUserId(), expiryDate);
                 int daysUntilExpiry = (expiryDate != null && !expiryDate.isEmpty())
                         ? getDaysUntilExpiry(expiryDate)
                         : ERROR_CODE;
@@ -53,25 +78,87 @@ public class EpiPenExpiryChecker {
         });
     }
 
+    /**
+     * Keeps the stored expiry date in step with the signed-in user's profile. Should be called once, from
+     * {@code Application.onCreate}.
+     *
+     * @param context The context used to access the stored expiry date.
+     */
+    public static void watchExpiry(Context context) {
+        Context appContext = context.getApplicationContext();
+        UserManager.getInstance().setOnOwnProfileChangeListener(userProfile ->
+                saveExpiry(appContext, userProfile.getUserId(), userProfile.getEpiPenExpiry()));
+    }
+
+    /**
+     * Stores a user's EpiPen expiry date on the device, replacing the date stored for any other user. Nothing
+     * is written if the stored date is already the same.
+     *
+     * @param context      The context used to access the stored expiry date.
+     * @param userId       The ID of the user.
+     * @param epiPenExpiry The expiry date in the format "dd/MM/yyyy", or empty if the user has none.
+     */
+    public static void saveExpiry(Context context, String userId, String epiPenExpiry) {
+        long expiryDay = UserProfileCodec.parseExpiry(epiPenExpiry);
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        boolean stored = prefs.contains(KEY_EXPIRY_DAY);
+        if (userId.equals(prefs.getString(KEY_USER_ID, null))
+                && (expiryDay != Long.MIN_VALUE
+                        ? stored && prefs.getLong(KEY_EXPIRY_DAY, 0) == expiryDay
+                        : !stored)) {
+            return;
+        }
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putString(KEY_USER_ID, userId);
+        if (expiryDay != Long.MIN_VALUE) {
+            editor.putLong(KEY_EXPIRY_DAY, expiryDay);
+        } else {
+            editor.remove(KEY_EXPIRY_DAY);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Removes the stored expiry date, for signing out.
+     *
+     * @param context The context used to access the stored expiry date.
+     */
+    public static void clearExpiry(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().clear().apply();
+    }
+
     /**
      * Calculates the number of days remaining until the EpiPen expires based on the provided expiry date string.
      *
      * @param expiryDateString The expiry date as a string in the format "dd/MM/yyyy".
      * @return The number of days until the EpiPen expires, or ERROR_CODE if the date is invalid or cannot be parsed.
      */
-    private static int getDaysUntilExpiry(String expiryDateString) {
-        SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT, Locale.getDefault());
-        try {
-            Date expiryDate = sdf.parse(expiryDateString);
-            Date currentDate = new Date();
-            if (expiryDate == null) {
-                throw new ParseException("Failed to parse expiry date", 0);
-            }
-            long diffInMillies = expiryDate.getTime() - currentDate.getTime();
-            return (int) TimeUnit.DAYS.convert(diffInMillies, TimeUnit.MILLISECONDS) + 1;
-        } catch (ParseException e) {
-            Log.e(TAG, "Error parsing expiry date", e);
+    public static int getDaysUntilExpiry(String expiryDateString) {
+        long expiryDay = UserProfileCodec.parseExpiry(expiryDateString);
+        if (expiryDay == Long.MIN_VALUE) {
+            Log.e(TAG, "Error parsing expiry date: " + expiryDateString);
             return ERROR_CODE;
         }
+        return getDaysUntilExpiry(expiryDay);
+    }
+
+    /**
+     * Calculates the number of days the EpiPen can still be used, counting today and the expiry date itself.
+     *
+     * @param expiryDay The expiry date as an epoch day.
+     * @return The number of days until the EpiPen expires: 1 on the expiry date, 0 the day after, and
+     * negative after that.
+     */
+    public static int getDaysUntilExpiry(long expiryDay) {
+        return (int) (expiryDay - LocalDate.now(clock).toEpochDay() + 1);
+    }
+
+    /**
+     * Sets the clock that decides the current date, for tests.
+     *
+     * @param newClock The clock to use.
+     */
+    static void setClock(Clock newClock) {
+        clock = newClock;
     }
 }
@@ -0,0 +1,125 @@
+package com.example.epifind.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.tasks.Task;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Futures bridges the callback-based Play Services and Firebase APIs to {@link CompletableFuture}, and adds
+ * the timeouts that Java 8 futures lack. Timeouts are scheduled on the main thread, where Firebase and
+ * Play Services deliver their callbacks, so a future is never completed from two threads.
+ */
+public final class Futures {
+    private static Handler handler;
+
+    private Futures() {
+    }
+
+    /**
+     * Wraps a Play Services task in a future. The future completes when the task does; cancelling the
+     * future does not cancel the task, so tasks that support cancellation should be given a token.
+     *
+     * @param task The task to wrap.
+     * @param <T>  The type of the task's result.
+     * @return A future that completes with the task's result.
+     */
+    public static <T> CompletableFuture<T> fromTask(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        task.addOnSuccessListener(future::complete)
+                .addOnFailureListener(future::completeExceptionally)
+                .addOnCanceledListener(() -> future.cancel(false));
+        return future;
+    }
+
+    /**
+     * Returns a future that completes like the given one, or fails with a {@link TimeoutException} if the
+     * given one has not completed in time. On timeout the given future is cancelled, so work that listens
+     * for its cancellation can stop.
+     *
+     * @param future    The future to limit.
+     * @param timeoutMs The timeout in milliseconds.
+     * @param <T>       The type of the future's result.
+     * @return The time-limited future.
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMs) {
+        CompletableFuture<T> limited = new CompletableFuture<>();
+        Runnable timeout = () -> {
+            if (limited.completeExceptionally(new TimeoutException("Timed out after " + timeoutMs + " ms"))) {
+                future.cancel(false);
+            }
+        };
+        mainHandler().postDelayed(timeout, timeoutMs);
+        future.whenComplete((result, error) -> {
+            mainHandler().removeCallbacks(timeout);
+            if (error != null) {
+                limited.completeExceptionally(unwrap(error));
+            } else {
+                limited.complete(result);
+            }
+        });
+        limited.whenComplete((result, error) -> {
+            if (limited.isCancelled()) {
+                future.cancel(false);
+            }
+        });
+        return limited;
+    }
+
+    /**
+     * Gets the result of a future if it has already completed successfully.
+     *
+     * @param future The future.
+     * @param <T>    The type of the future's result.
+     * @return The result, or null if the future is pending or failed.
+     */
+    public static <T> T getNowOrNull(CompletableFuture<T> future) {
+        return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /**
+     * Gets a message describing why a future failed, looking past the wrappers added by composition.
+     *
+     * @param error The error the future failed with.
+     * @return The message of the underlying error.
+     */
+    public static String messageOf(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof CancellationException) {
+            return "Cancelled";
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    }
+
+    /**
+     * Removes the {@link CompletionException} and {@link ExecutionException} wrappers around an error.
+     *
+     * @param error The error.
+     * @return The underlying error.
+     */
+    public static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Gets the handler that runs timeouts on the main thread, creating it on first use.
+     *
+     * @return The main thread handler.
+     */
+    private static synchronized Handler mainHandler() {
+        if (handler == null) {
+            handler = new Handler(Looper.getMainLooper());
+        }
+        return handler;
+    }
+}
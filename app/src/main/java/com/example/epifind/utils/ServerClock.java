@@ -0,0 +1,55 @@
+package com.example.epifind.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+/**
+ * ServerClock estimates the Firebase server time from the offset the database client reports under
+ * {@code .info/serverTimeOffset}, so timestamps can be written as concrete values and used locally
+ * without reading them back from the server.
+ */
+public class ServerClock {
+    private static final String TAG = "ServerClock";
+
+    private static volatile long offsetMs;
+    private static boolean listening;
+
+    private ServerClock() {
+    }
+
+    /**
+     * Starts tracking the server time offset. Calling this more than once has no effect.
+     */
+    public static synchronized void start() {
+        if (listening) return;
+        listening = true;
+        FirebaseDatabase.getInstance().getReference(".info/serverTimeOffset")
+                .addValueEventListener(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        Long offset = snapshot.getValue(Long.class);
+                        offsetMs = offset != null ? offset : 0;
+                    }
+
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        Log.e(TAG, "Failed to read server time offset", error.toException());
+                    }
+                });
+    }
+
+    /**
+     * Gets the estimated server time. Before the offset is known this is the device time.
+     *
+     * @return The estimated server time in milliseconds since the epoch.
+     */
+    public static long now() {
+        return System.currentTimeMillis() + offsetMs;
+    }
+}
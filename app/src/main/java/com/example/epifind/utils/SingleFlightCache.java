@@ -0,0 +1,208 @@
+package com.example.epifind.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * SingleFlightCache caches values that are loaded asynchronously. Concurrent requests for a key that is not
+ * cached share a single load instead of starting one each. Loaded values expire after a fixed time, and the
+ * least recently used ones are evicted once the cache is full.
+ *
+ * <p>Values kept up to date by a live listener can be pinned instead: pinned values never expire, are not
+ * evicted, and do not count towards the capacity.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class SingleFlightCache<K, V> {
+
+    /**
+     * Interface for loading a value that is missing from the cache.
+     */
+    public interface Loader<K, V> {
+        CompletableFuture<V> load(K key);
+    }
+
+    /**
+     * Interface for reading the time.
+     */
+    public interface Clock {
+        long now();
+    }
+
+    /**
+     * Entry is a loaded value and the time it expires.
+     */
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMs;
+    private final Clock clock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final Map<K, V> pinned = new HashMap<>();
+    private final Map<K, CompletableFuture<V>> loading = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long coalesced;
+
+    /**
+     * Constructor for SingleFlightCache.
+     *
+     * @param capacity The maximum number of loaded values to keep.
+     * @param ttlMs    The time in milliseconds after which a loaded value is loaded again.
+     * @param clock    The clock used to expire values.
+     */
+    public SingleFlightCache(int capacity, long ttlMs, Clock clock) {
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Entry<V>>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Gets a value, from the cache if it is pinned or still fresh, and otherwise from the loader. If a load
+     * of the key is already running, its result is shared. Failed loads are not cached.
+     *
+     * @param key    The key.
+     * @param loader The loader to use if the value is missing.
+     * @return A future that completes with the value. Cancelling it does not cancel a shared load.
+     */
+    public synchronized CompletableFuture<V> get(K key, Loader<K, V> loader) {
+        V value = pinned.get(key);
+        if (value == null) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && clock.now() < entry.expiresAt) {
+                value = entry.value;
+            }
+        }
+        if (value != null) {
+            hits++;
+            return CompletableFuture.completedFuture(value);
+        }
+
+        CompletableFuture<V> load = loading.get(key);
+        if (load != null) {
+            coalesced++;
+        } else {
+            misses++;
+            CompletableFuture<V> started = loader.load(key);
+            load = started;
+            loading.put(key, started);
+            started.whenComplete((loaded, error) -> onLoaded(key, started, loaded, error));
+        }
+        // A dependent future, so one caller cancelling does not fail the others
+        return load.thenApply(loaded -> loaded);
+    }
+
+    /**
+     * Gets a value if it is pinned or still fresh, without loading it or counting the request.
+     *
+     * @param key The key.
+     * @return The value, or null if it is not cached.
+     */
+    public synchronized V peek(K key) {
+        V value = pinned.get(key);
+        if (value != null) return value;
+        Entry<V> entry = entries.get(key);
+        return entry != null && clock.now() < entry.expiresAt ? entry.value : null;
+    }
+
+    /**
+     * Pins a value, replacing any loaded value and abandoning a running load of the key.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    public synchronized void pin(K key, V value) {
+        pinned.put(key, value);
+        entries.remove(key);
+        loading.remove(key);
+    }
+
+    /**
+     * Removes a value, pinned or loaded, so the next request loads it again. A running load of the key is
+     * abandoned: its callers still get its result, but it is not cached.
+     *
+     * @param key The key.
+     */
+    public synchronized void invalidate(K key) {
+        pinned.remove(key);
+        entries.remove(key);
+        loading.remove(key);
+    }
+
+    /**
+     * Removes all values and abandons all running loads.
+     */
+    public synchronized void clear() {
+        pinned.clear();
+        entries.clear();
+        loading.clear();
+    }
+
+    /**
+     * Gets the number of requests answered from the cache.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of requests that started a load.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of requests that shared a running load.
+     *
+     * @return The number of coalesced requests.
+     */
+    public synchronized long getCoalescedCount() {
+        return coalesced;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%d hits, %d misses, %d coalesced, %d loaded, %d pinned",
+                hits, misses, coalesced, entries.size(), pinned.size());
+    }
+
+    /**
+     * Caches the result of a load, unless the load failed or was abandoned.
+     *
+     * @param key    The key.
+     * @param load   The load that completed.
+     * @param loaded The loaded value.
+     * @param error  The error the load failed with, or null.
+     */
+    private synchronized void onLoaded(K key, CompletableFuture<V> load, V loaded, Throwable error) {
+        if (loading.get(key) != load) return;
+        loading.remove(key);
+        if (error == null && loaded != null) {
+            entries.put(key, new Entry<>(loaded, clock.now() + ttlMs));
+        }
+    }
+}
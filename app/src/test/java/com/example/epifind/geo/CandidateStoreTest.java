@@ -0,0 +1,107 @@
+package com.example.epifind.geo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the CandidateStore filter kernel and the primitive query paths built on it.
+ */
+public class CandidateStoreTest {
+    private static final double CENTER_LAT = 32.0853;
+    private static final double CENTER_LON = 34.7818;
+    private static final double SPREAD_DEGREES = 0.3;
+
+    @Test
+    public void filterWithin_matchesBruteForceAndSkipsIneligible() {
+        Random random = new Random(11);
+        CandidateStore store = new CandidateStore();
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            double[] point = randomPoint(random);
+            int slot = store.put("user" + i, point[0], point[1]);
+            assertEquals(i, slot);
+            points.add(point);
+        }
+        for (int i = 0; i < 10000; i += 3) {
+            store.setEligible(i, false);
+        }
+
+        int[] out = new int[store.capacity()];
+        for (int q = 0; q < 100; q++) {
+            double[] center = randomPoint(random);
+            double radius = 100 + random.nextDouble() * 10000;
+
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < points.size(); i++) {
+                double[] p = points.get(i);
+                if (i % 3 != 0 && GeoDistance.haversineMeters(center[0], center[1], p[0], p[1]) <= radius) {
+                    expected.add(i);
+                }
+            }
+            Set<Integer> actual = new HashSet<>();
+            int count = store.filterWithin(center[0], center[1], radius, out);
+            for (int i = 0; i < count; i++) {
+                actual.add(out[i]);
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void remove_recyclesSlots() {
+        CandidateStore store = new CandidateStore();
+        store.put("a", CENTER_LAT, CENTER_LON);
+        int slot = store.put("b", CENTER_LAT, CENTER_LON);
+        assertEquals(slot, store.remove("b"));
+        assertEquals(-1, store.slotOf("b"));
+        assertFalse(store.isEligible(slot));
+        assertEquals(slot, store.put("c", CENTER_LAT, CENTER_LON));
+        assertEquals("c", store.userIdAt(slot));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void primitiveQueries_matchListQueries() {
+        Random random = new Random(5);
+        SpatialGridIndex index = new SpatialGridIndex(CENTER_LAT, 250);
+        for (int i = 0; i < 5000; i++) {
+            double[] point = randomPoint(random);
+            index.put("user" + i, point[0], point[1]);
+        }
+        CandidateStore store = index.getStore();
+        int[] out = new int[store.capacity()];
+        int[] nearestOut = new int[10];
+
+        for (int q = 0; q < 50; q++) {
+            double[] center = randomPoint(random);
+
+            Set<String> inRadius = new HashSet<>();
+            int count = index.queryRadius(center[0], center[1], 2000, out);
+            for (int i = 0; i < count; i++) {
+                inRadius.add(store.userIdAt(out[i]));
+            }
+            assertEquals(new HashSet<>(index.queryRadius(center[0], center[1], 2000)), inRadius);
+
+            List<String> nearest = new ArrayList<>();
+            count = index.nearest(center[0], center[1], 10000, nearestOut);
+            for (int i = 0; i < count; i++) {
+                nearest.add(store.userIdAt(nearestOut[i]));
+            }
+            assertEquals(index.nearest(center[0], center[1], nearestOut.length, 10000), nearest);
+        }
+    }
+
+    private static double[] randomPoint(Random random) {
+        return new double[]{
+                CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES,
+                CENTER_LON + (random.nextDouble() - 0.5) * SPREAD_DEGREES
+        };
+    }
+}
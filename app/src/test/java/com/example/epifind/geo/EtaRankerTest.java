@@ -0,0 +1,110 @@
+package com.example.epifind.geo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EtaRankerTest {
+
+    @Test
+    public void incrementalUpdates_matchFullSort() {
+        Random random = new Random(11);
+        int k = 10;
+        EtaRanker ranker = new EtaRanker(k);
+        Map<String, Double> etas = new HashMap<>();
+        String[] out = new String[k];
+
+        for (int step = 0; step < 20000; step++) {
+            String userId = "user" + random.nextInt(200);
+            if (random.nextInt(5) == 0) {
+                ranker.remove(userId);
+                etas.remove(userId);
+            } else {
+                double eta = random.nextDouble() * 1000;
+                ranker.update(userId, eta);
+                etas.put(userId, eta);
+            }
+
+            List<Map.Entry<String, Double>> expected = new ArrayList<>(etas.entrySet());
+            expected.sort(Map.Entry.comparingByValue());
+            int count = ranker.ranked(out);
+            assertEquals(Math.min(k, expected.size()), count);
+            for (int i = 0; i < count; i++) {
+                assertEquals(expected.get(i).getValue(), ranker.etaOf(out[i]), 0);
+            }
+        }
+        assertTrue(ranker.getRebuildCount() < 20000);
+    }
+
+    @Test
+    public void improvingUpdates_neverRebuild() {
+        EtaRanker ranker = new EtaRanker(5);
+        for (int i = 0; i < 50; i++) {
+            ranker.update("user" + i, 1000 + i);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                ranker.update("user" + i, ranker.etaOf("user" + i) - 1);
+            }
+        }
+        assertEquals(0, ranker.getRebuildCount());
+    }
+
+    @Test
+    public void preference_onlyBreaksTiesWithinASecond() {
+        EtaRanker ranker = new EtaRanker(2);
+        ranker.update("closer", 100.2);
+        ranker.update("tied", 120.0);
+        ranker.update("tiedPreferred", 120.9, true);
+        ranker.update("slowerPreferred", 101.0, true);
+        String[] out = new String[2];
+
+        ranker.ranked(out);
+
+        // 0.8 s apart but in different seconds, so the preference does not count
+        assertArrayEquals(new String[]{"closer", "slowerPreferred"}, out);
+
+        ranker.update("closer", 200);
+        ranker.update("slowerPreferred", 200, true);
+        ranker.ranked(out);
+
+        assertArrayEquals(new String[]{"tiedPreferred", "tied"}, out);
+    }
+
+    @Test
+    public void preference_lostWithinASecond_reranks() {
+        EtaRanker ranker = new EtaRanker(1);
+        ranker.update("preferred", 50.3, true);
+        ranker.update("faster", 50.1);
+        String[] out = new String[1];
+
+        ranker.ranked(out);
+        assertArrayEquals(new String[]{"preferred"}, out);
+
+        ranker.update("preferred", 50.3, false);
+        ranker.ranked(out);
+        assertArrayEquals(new String[]{"faster"}, out);
+    }
+
+    @Test
+    public void estimate_prefersResponderHeadingTowardsTarget() {
+        double targetLat = 32.0853;
+        double targetLon = 34.7818;
+        double lat = 32.0853 + 0.02;
+
+        double walking = EtaRanker.estimateSeconds(targetLat, targetLon, lat, targetLon, 0, 0, 0);
+        double drivingTowards = EtaRanker.estimateSeconds(targetLat, targetLon, lat, targetLon, 14, 180, 0);
+        double drivingAway = EtaRanker.estimateSeconds(targetLat, targetLon, lat, targetLon, 14, 0, 0);
+        double uncertain = EtaRanker.estimateSeconds(targetLat, targetLon, lat, targetLon, 0, 0, 200);
+
+        assertTrue(drivingTowards < drivingAway);
+        assertTrue(drivingAway < walking);
+        assertTrue(walking < uncertain);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.epifind.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeoDistanceTest {
+
+    @Test
+    public void fastKernel_staysWithinBoundOfHaversine() {
+        Random random = new Random(5);
+        for (int i = 0; i < 100000; i++) {
+            double[] pair = randomPair(random, 70, 100000);
+            double exact = GeoDistance.haversineMeters(pair[0], pair[1], pair[2], pair[3]);
+            double fast = GeoDistance.equirectangularMeters(pair[0], pair[1], pair[2], pair[3]);
+            if (exact > 1) {
+                assertEquals(exact, fast, exact * 0.001);
+            }
+        }
+    }
+
+    @Test
+    public void boundingBox_neverRejectsPointsWithinRadius() {
+        Random random = new Random(6);
+        for (int i = 0; i < 100000; i++) {
+            double[] pair = randomPair(random, 89, 200000);
+            double radius = 200000 * random.nextDouble();
+            for (GeoDistance.Precision precision : GeoDistance.Precision.values()) {
+                double distance = GeoDistance.meters(pair[0], pair[1], pair[2], pair[3], precision);
+                if (distance <= radius) {
+                    assertFalse(GeoDistance.isOutsideBoundingBox(pair[0], pair[1], pair[2], pair[3], radius));
+                    assertTrue(GeoDistance.isWithin(pair[0], pair[1], pair[2], pair[3], radius, precision));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void kernels_handleAntimeridian() {
+        double exact = GeoDistance.haversineMeters(10, 179.999, 10, -179.999);
+        double fast = GeoDistance.equirectangularMeters(10, 179.999, 10, -179.999);
+        assertEquals(219, exact, 1);
+        assertEquals(exact, fast, 0.01);
+        assertTrue(GeoDistance.isWithin(10, 179.999, 10, -179.999, 300, GeoDistance.Precision.FAST));
+    }
+
+    /**
+     * Picks a random location and a second location within roughly a given distance of it.
+     */
+    private static double[] randomPair(Random random, double maxLatitude, double maxMeters) {
+        double lat = -maxLatitude + 2 * maxLatitude * random.nextDouble();
+        double lon = -180 + 360 * random.nextDouble();
+        double distance = maxMeters * random.nextDouble();
+        double bearing = 2 * Math.PI * random.nextDouble();
+        double lat2 = lat + Math.toDegrees(distance * Math.cos(bearing) / GeoDistance.EARTH_RADIUS_METERS);
+        double lon2 = lon + Math.toDegrees(distance * Math.sin(bearing)
+                / (GeoDistance.EARTH_RADIUS_METERS * Math.cos(Math.toRadians(lat))));
+        lat2 = Math.max(-maxLatitude, Math.min(maxLatitude, lat2));
+        lon2 = ((lon2 + 540) % 360) - 180;
+        return new double[]{lat, lon, lat2, lon2};
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.epifind.geo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class GeoHashTest {
+
+    @Test
+    public void uncoveredCells_skipsCellsCoveredBySameOrCoarserCell() {
+        Set<String> covered = new HashSet<>(Arrays.asList("sv8", "sv9wd"));
+        Set<String> cells = new LinkedHashSet<>(Arrays.asList("sv8w", "sv9wd", "sv9we", "sv8"));
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("sv9we")), GeoHash.uncoveredCells(cells, covered));
+    }
+
+    @Test
+    public void uncoveredCells_ofGrownCircleOnlyAddsNewArea() {
+        double lat = 32.0853;
+        double lon = 34.7818;
+        Set<String> covered = new HashSet<>();
+        for (double radius = 500; radius <= 16000; radius *= 2) {
+            int precision = GeoHash.queryPrecision(lat, radius);
+            Set<String> all = GeoHash.cellsCovering(lat, lon, radius, precision);
+            Set<String> added = GeoHash.uncoveredCells(all, covered);
+            for (String cell : all) {
+                assertTrue(added.contains(cell) || GeoHash.isCovered(cell, covered));
+            }
+            for (String cell : added) {
+                assertFalse(GeoHash.isCovered(cell, covered));
+            }
+            covered.addAll(added);
+        }
+    }
+}
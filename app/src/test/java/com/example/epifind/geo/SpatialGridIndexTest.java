@@ -0,0 +1,126 @@
+package com.example.epifind.geo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks SpatialGridIndex against a brute-force scan.
+ */
+public class SpatialGridIndexTest {
+    private static final double CENTER_LAT = 32.0853;
+    private static final double CENTER_LON = 34.7818;
+    private static final double SPREAD_DEGREES = 0.3;
+
+    @Test
+    public void radiusQuery_matchesBruteForce() {
+        Random random = new Random(42);
+        SpatialGridIndex index = new SpatialGridIndex(CENTER_LAT, 500);
+        Map<String, double[]> points = populate(index, random, 20000);
+
+        for (int i = 0; i < 200; i++) {
+            double lat = CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+            double lon = CENTER_LON + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+            double radius = 100 + random.nextDouble() * 10000;
+
+            assertEquals(new HashSet<>(bruteForceRadius(points, lat, lon, radius)),
+                    new HashSet<>(index.queryRadius(lat, lon, radius)));
+        }
+    }
+
+    @Test
+    public void nearest_matchesBruteForce() {
+        Random random = new Random(7);
+        SpatialGridIndex index = new SpatialGridIndex(CENTER_LAT, 500);
+        Map<String, double[]> points = populate(index, random, 20000);
+
+        for (int i = 0; i < 200; i++) {
+            double lat = CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+            double lon = CENTER_LON + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+            int k = 1 + random.nextInt(50);
+            double maxRadius = 500 + random.nextDouble() * 20000;
+
+            List<String> expected = bruteForceNearest(points, lat, lon, k, maxRadius);
+            List<String> actual = index.nearest(lat, lon, k, maxRadius);
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                double[] e = points.get(expected.get(j));
+                double[] a = points.get(actual.get(j));
+                assertEquals(GeoDistance.haversineMeters(lat, lon, e[0], e[1]),
+                        GeoDistance.haversineMeters(lat, lon, a[0], a[1]), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void moveAndRemove_keepQueriesConsistent() {
+        Random random = new Random(3);
+        SpatialGridIndex index = new SpatialGridIndex(CENTER_LAT, 500);
+        Map<String, double[]> points = populate(index, random, 5000);
+
+        List<String> ids = new ArrayList<>(points.keySet());
+        for (int i = 0; i < 2000; i++) {
+            String id = ids.get(random.nextInt(ids.size()));
+            if (random.nextBoolean() && points.containsKey(id)) {
+                assertTrue(index.remove(id));
+                points.remove(id);
+            } else {
+                double[] point = randomPoint(random);
+                index.put(id, point[0], point[1]);
+                points.put(id, point);
+            }
+        }
+
+        assertEquals(points.size(), index.size());
+        assertEquals(new HashSet<>(bruteForceRadius(points, CENTER_LAT, CENTER_LON, 5000)),
+                new HashSet<>(index.queryRadius(CENTER_LAT, CENTER_LON, 5000)));
+    }
+
+    private static Map<String, double[]> populate(SpatialGridIndex index, Random random, int count) {
+        Map<String, double[]> points = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            double[] point = randomPoint(random);
+            String id = "user" + i;
+            index.put(id, point[0], point[1]);
+            points.put(id, point);
+        }
+        return points;
+    }
+
+    private static double[] randomPoint(Random random) {
+        return new double[]{
+                CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES,
+                CENTER_LON + (random.nextDouble() - 0.5) * SPREAD_DEGREES
+        };
+    }
+
+    private static List<String> bruteForceRadius(Map<String, double[]> points, double lat, double lon, double radius) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, double[]> point : points.entrySet()) {
+            double[] p = point.getValue();
+            if (GeoDistance.haversineMeters(lat, lon, p[0], p[1]) <= radius) {
+                result.add(point.getKey());
+            }
+        }
+        return result;
+    }
+
+    private static List<String> bruteForceNearest(Map<String, double[]> points, double lat, double lon, int k, double maxRadius) {
+        List<String> result = bruteForceRadius(points, lat, lon, maxRadius);
+        Collections.sort(result, (a, b) -> {
+            double[] pa = points.get(a);
+            double[] pb = points.get(b);
+            return Double.compare(GeoDistance.haversineMeters(lat, lon, pa[0], pa[1]),
+                    GeoDistance.haversineMeters(lat, lon, pb[0], pb[1]));
+        });
+        return result.subList(0, Math.min(k, result.size()));
+    }
+}
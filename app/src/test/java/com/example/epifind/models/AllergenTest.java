@@ -0,0 +1,44 @@
+package com.example.epifind.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AllergenTest {
+
+    @Test
+    public void parse_readsLegacyDisplayText() {
+        int mask = Allergen.parse("Peanuts, Tree nuts,shellfish, Sesame");
+
+        assertEquals(Allergen.PEANUTS.bit() | Allergen.TREE_NUTS.bit() | Allergen.SHELLFISH.bit(), mask);
+        assertEquals(0, Allergen.parse(""));
+        assertEquals(0, Allergen.parse(null));
+    }
+
+    @Test
+    public void displayText_isSharedPerMask() {
+        int mask = Allergen.MILK.bit() | Allergen.EGGS.bit();
+
+        String text = Allergen.displayText(mask);
+
+        assertEquals("Milk, Eggs", text);
+        assertSame(text, Allergen.displayText(Allergen.parse("Eggs, Milk")));
+        assertEquals("", Allergen.displayText(0));
+    }
+
+    @Test
+    public void selection_roundTripsThroughMask() {
+        boolean[] selected = new boolean[Allergen.displayNames().size()];
+        selected[Allergen.WHEAT.ordinal()] = true;
+        selected[Allergen.FISH.ordinal()] = true;
+
+        int mask = Allergen.maskOf(selected);
+        boolean[] restored = new boolean[selected.length];
+        Allergen.select(mask, restored);
+
+        assertArrayEquals(selected, restored);
+        assertEquals("Wheat", Allergen.displayNames().get(Allergen.WHEAT.ordinal()));
+        assertNotEquals(0, mask & Allergen.FISH.bit());
+        assertEquals(0, mask & Allergen.SOY.bit());
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.epifind.models;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ProfilePatchTest {
+
+    private static final String PREFIX = "users/u1/";
+
+    private static UserProfile stored() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("name", "Alice");
+        value.put("allergies", "Peanuts");
+        value.put("epiPenExpiry", "01/01/2030");
+        value.put("latitude", 52.5);
+        value.put("longitude", 13.4);
+        value.put("hasEpiPen", true);
+        return UserProfileCodec.decode(value, UserProfileCodec.ALL, null);
+    }
+
+    private static Map<String, Object> updatesOf(ProfilePatch patch) {
+        Map<String, Object> updates = new HashMap<>();
+        patch.putUpdates(updates, PREFIX);
+        return updates;
+    }
+
+    @Test
+    public void unchangedFields_produceEmptyPatch() {
+        ProfilePatch patch = new ProfilePatch(stored())
+                .setName("Alice")
+                .setAllergens(Allergen.PEANUTS.bit())
+                .setEpiPenExpiry("01/01/2030")
+                .setHasEpiPen(true);
+
+        assertTrue(patch.isEmpty());
+        assertTrue(updatesOf(patch).isEmpty());
+    }
+
+    @Test
+    public void changedField_writesOnlyThatChild() {
+        ProfilePatch patch = new ProfilePatch(stored()).setNeedsHelp(true);
+
+        Map<String, Object> updates = updatesOf(patch);
+
+        assertEquals(1, updates.size());
+        assertEquals(true, updates.get(PREFIX + UserProfileCodec.NEEDS_HELP_KEY));
+        assertTrue(patch.affectsResponderEntry());
+    }
+
+    @Test
+    public void revertedField_isNoLongerDirty() {
+        ProfilePatch patch = new ProfilePatch(stored()).setAllergens(Allergen.MILK.bit()).setAllergens(Allergen.PEANUTS.bit());
+
+        assertTrue(patch.isEmpty());
+    }
+
+    @Test
+    public void clearingExpiry_removesBothForms() {
+        ProfilePatch patch = new ProfilePatch(stored()).setEpiPenExpiry("").setHasEpiPen(false);
+
+        Map<String, Object> updates = updatesOf(patch);
+
+        assertTrue(updates.containsKey(PREFIX + UserProfileCodec.EXPIRY_DAY));
+        assertNull(updates.get(PREFIX + UserProfileCodec.EXPIRY_DAY));
+        assertTrue(updates.containsKey(PREFIX + "epiPenExpiry"));
+        assertNull(updates.get(PREFIX + "epiPenExpiry"));
+        assertEquals(false, updates.get(PREFIX + UserProfileCodec.HAS_EPIPEN_KEY));
+    }
+
+    @Test
+    public void patches_neverWriteLocation() {
+        UserProfile target = stored();
+        target.latitude = 0;
+        target.name = "Bob";
+
+        Map<String, Object> diff = updatesOf(ProfilePatch.diff(stored(), target));
+        Map<String, Object> created = updatesOf(ProfilePatch.create(target));
+
+        assertEquals(2, diff.size());
+        assertEquals("Bob", diff.get(PREFIX + UserProfileCodec.NAME_KEY));
+        assertEquals(true, diff.get(PREFIX + UserProfileCodec.PROFILE_COMPLETE));
+        assertEquals(UserProfileCodec.SCHEMA_VERSION, created.get(PREFIX + UserProfileCodec.VERSION));
+        assertFalse(created.containsKey(PREFIX + UserProfileCodec.LATITUDE_E5));
+        assertFalse(created.containsKey(PREFIX + UserProfileCodec.LOCATION_TIME));
+    }
+
+    @Test
+    public void completenessFields_maintainDerivedFlag() {
+        Map<String, Object> cleared = updatesOf(new ProfilePatch(stored()).setAllergens(0));
+        Map<String, Object> helpOnly = updatesOf(new ProfilePatch(stored()).setNeedsHelp(true));
+
+        assertEquals(false, cleared.get(PREFIX + UserProfileCodec.PROFILE_COMPLETE));
+        assertFalse(helpOnly.containsKey(PREFIX + UserProfileCodec.PROFILE_COMPLETE));
+        assertEquals(true, updatesOf(ProfilePatch.create(stored())).get(PREFIX + UserProfileCodec.PROFILE_COMPLETE));
+    }
+}
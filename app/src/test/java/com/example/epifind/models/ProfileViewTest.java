@@ -0,0 +1,36 @@
+package com.example.epifind.models;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ProfileViewTest {
+
+    @Test
+    public void decode_readsChildrenInEitherSchema() {
+        Map<String, Object> children = new HashMap<>();
+        children.put(UserProfileCodec.NAME_KEY, "Alice");
+        children.put("allergies", "Milk");
+        children.put(UserProfileCodec.EXPIRY_DAY, 21915L);
+
+        ProfileView view = ProfileView.decode("u1", children,
+                UserProfileCodec.NAME | UserProfileCodec.ALLERGIES | UserProfileCodec.EPIPEN_EXPIRY);
+
+        assertEquals("u1", view.getUserId());
+        assertEquals("Alice", view.getName());
+        assertEquals("Milk", view.getAllergies());
+        assertEquals("01/01/2030", view.getEpiPenExpiry());
+        assertTrue(view.isComplete());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readingUnfetchedField_fails() {
+        Map<String, Object> children = new HashMap<>();
+        children.put(UserProfileCodec.NAME_KEY, "Alice");
+
+        ProfileView.decode("u1", children, UserProfileCodec.NAME).getEpiPenExpiry();
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.epifind.models;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UserProfileCodecTest {
+
+    private static Map<String, Object> storedProfile() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("userId", "u1");
+        value.put("name", "Alice");
+        value.put("allergies", "Peanuts");
+        value.put("epiPenExpiry", "01/01/2030");
+        value.put("latitude", 52.5);
+        value.put("longitude", 13L);
+        value.put("speed", 1.5);
+        value.put("bearing", 90L);
+        value.put("accuracy", 12.25);
+        value.put("locationTime", 1700000000000L);
+        value.put("hasEpiPen", true);
+        value.put("needsHelp", false);
+        return value;
+    }
+
+    @Test
+    public void decode_readsOnlyRequestedFields() {
+        UserProfile profile = UserProfileCodec.decode(storedProfile(), UserProfileCodec.RESPONDER, null);
+
+        assertEquals("u1", profile.getUserId());
+        assertEquals("Alice", profile.getName());
+        assertEquals("01/01/2030", profile.getEpiPenExpiry());
+        assertEquals(52.5, profile.getLatitude(), 0);
+        assertEquals(13, profile.getLongitude(), 0);
+        assertEquals(90f, profile.getBearing(), 0);
+        assertEquals(1700000000000L, profile.getLocationTime());
+        assertEquals("Peanuts", profile.getAllergies());
+        assertFalse(profile.getHasEpiPen());
+    }
+
+    @Test
+    public void decode_resetsReusedInstance() {
+        UserProfile reused = UserProfileCodec.decode(storedProfile(), UserProfileCodec.ALL, null);
+        reused.setResponseStatus(UserProfile.ResponseStatus.RESPONDING);
+        Map<String, Object> sparse = new HashMap<>();
+        sparse.put("name", "Bob");
+
+        UserProfile profile = UserProfileCodec.decode(sparse, UserProfileCodec.ALL, reused);
+
+        assertSame(reused, profile);
+        assertEquals("Bob", profile.getName());
+        assertNull(profile.getUserId());
+        assertEquals("", profile.getAllergies());
+        assertEquals(0, profile.getLatitude(), 0);
+        assertEquals(0, profile.getLocationTime());
+        assertFalse(profile.getHasEpiPen());
+        assertEquals(UserProfile.ResponseStatus.AVAILABLE, profile.getResponseStatus());
+    }
+
+    @Test
+    public void decode_rejectsNonProfileValues() {
+        assertNull(UserProfileCodec.decode((Object) null, UserProfileCodec.ALL, null));
+        assertNull(UserProfileCodec.decode("not a profile", UserProfileCodec.ALL, null));
+    }
+
+    @Test
+    public void encode_roundTripsThroughCompactSchema() {
+        UserProfile original = UserProfileCodec.decode(storedProfile(), UserProfileCodec.ALL, null);
+
+        Map<String, Object> encoded = UserProfileCodec.encode(original, UserProfileCodec.ALL);
+        UserProfile decoded = UserProfileCodec.decode(encoded, UserProfileCodec.ALL, null);
+
+        assertEquals(UserProfileCodec.SCHEMA_VERSION, encoded.get(UserProfileCodec.VERSION));
+        assertEquals(5250000, encoded.get(UserProfileCodec.LATITUDE_E5));
+        assertFalse(encoded.containsKey("latitude"));
+        assertEquals(original.getName(), decoded.getName());
+        assertEquals(original.getAllergies(), decoded.getAllergies());
+        assertEquals("01/01/2030", decoded.getEpiPenExpiry());
+        assertEquals(original.getLatitude(), decoded.getLatitude(), 1e-9);
+        assertEquals(original.getLongitude(), decoded.getLongitude(), 1e-9);
+        assertEquals(1.5f, decoded.getSpeed(), 1e-6);
+        assertEquals(13f, decoded.getAccuracy(), 0);
+        assertEquals(original.getLocationTime(), decoded.getLocationTime());
+        assertTrue(decoded.getHasEpiPen());
+        assertFalse(decoded.getNeedsHelp());
+    }
+
+    @Test
+    public void encode_keepsPositionWithinAboutAMeter() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("latitude", -33.8567844);
+        value.put("longitude", 151.2152967);
+        UserProfile profile = UserProfileCodec.decode(value, UserProfileCodec.LOCATION, null);
+
+        UserProfile decoded = UserProfileCodec.decode(
+                UserProfileCodec.encode(profile, UserProfileCodec.LOCATION), UserProfileCodec.LOCATION, null);
+
+        // Half a unit of 1e-5 degrees is at most 0.56 m along either axis
+        assertEquals(profile.getLatitude(), decoded.getLatitude(), 0.5 / UserProfileCodec.COORDINATE_SCALE);
+        assertEquals(profile.getLongitude(), decoded.getLongitude(), 0.5 / UserProfileCodec.COORDINATE_SCALE);
+    }
+
+    @Test
+    public void decode_prefersCompactKeysOverStaleLegacyKeys() {
+        // A legacy node after an SOS activation and a location write by path
+        Map<String, Object> value = storedProfile();
+        value.put(UserProfileCodec.NEEDS_HELP_KEY, true);
+        value.put(UserProfileCodec.LATITUDE_E5, 5230000L);
+
+        UserProfile profile = UserProfileCodec.decode(value, UserProfileCodec.ALL, null);
+
+        assertTrue(profile.getNeedsHelp());
+        assertEquals(52.3, profile.getLatitude(), 1e-9);
+        assertEquals(13, profile.getLongitude(), 0);
+    }
+
+    @Test
+    public void expiry_convertsToEpochDay() {
+        long day = UserProfileCodec.parseExpiry("01/01/2030");
+
+        assertEquals(21915, day);
+        assertEquals(day, UserProfileCodec.parseExpiry("1/1/2030"));
+        assertEquals("01/01/2030", UserProfileCodec.formatExpiry(day));
+        assertEquals(Long.MIN_VALUE, UserProfileCodec.parseExpiry("31/02/2030"));
+        assertEquals(Long.MIN_VALUE, UserProfileCodec.parseExpiry(""));
+
+        Map<String, Object> entry = new HashMap<>();
+        UserProfileCodec.putExpiry(entry, "", "next spring");
+        assertEquals("next spring", entry.get("epiPenExpiry"));
+    }
+
+    @Test
+    public void compactResponderEntry_isSmallerThanLegacy() {
+        UserProfile profile = UserProfileCodec.decode(storedProfile(), UserProfileCodec.ALL, null);
+        Map<String, Object> legacy = new HashMap<>();
+        legacy.put("name", profile.getName());
+        legacy.put("latitude", 52.52000812345678);
+        legacy.put("longitude", 13.40495387654321);
+        legacy.put("speed", (double) 1.34f);
+        legacy.put("bearing", (double) 271.8f);
+        legacy.put("accuracy", (double) 12.6f);
+        legacy.put("epiPenExpiry", profile.getEpiPenExpiry());
+        Map<String, Object> compact = new HashMap<>();
+        compact.put(UserProfileCodec.VERSION, UserProfileCodec.SCHEMA_VERSION);
+        compact.put(UserProfileCodec.NAME_KEY, profile.getName());
+        compact.put(UserProfileCodec.ALLERGEN_MASK, profile.getAllergenMask());
+        UserProfileCodec.putPosition(compact, "", 52.52000812345678, 13.40495387654321);
+        UserProfileCodec.putMotion(compact, "", 1.34f, 271.8f, 12.6f);
+        UserProfileCodec.putExpiry(compact, "", profile.getEpiPenExpiry());
+
+        int legacyBytes = jsonLength(legacy);
+        int compactBytes = jsonLength(compact);
+
+        // Floats reach the database as doubles, so the legacy entry carries their full decimal expansion.
+        // The compact entry also carries the allergen mask, which the legacy entry had no room for.
+        assertEquals(188, legacyBytes);
+        assertEquals(85, compactBytes);
+    }
+
+    /**
+     * Computes the length of the JSON the database transfers for a flat map.
+     */
+    private static int jsonLength(Map<String, Object> map) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (json.length() > 1) json.append(',');
+            json.append('"').append(entry.getKey()).append("\":");
+            Object value = entry.getValue();
+            json.append(value instanceof String ? "\"" + value + "\"" : String.valueOf(value));
+        }
+        return json.append('}').length();
+    }
+
+    @Test
+    public void pool_reusesReleasedInstancesUpToCapacity() {
+        UserProfileCodec.Pool pool = new UserProfileCodec.Pool(1);
+        UserProfile first = pool.acquire();
+        UserProfile second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+
+        assertSame(first, pool.acquire());
+        assertNotSame(second, pool.acquire());
+    }
+}
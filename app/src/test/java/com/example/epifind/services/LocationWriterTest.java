@@ -0,0 +1,120 @@
+package com.example.epifind.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LocationWriterTest {
+
+    /**
+     * A scheduler driven by a manual clock.
+     */
+    private static class FakeScheduler implements LocationWriter.Scheduler {
+        long now;
+        Runnable task;
+        long dueAt;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            this.task = task;
+            this.dueAt = now + delayMs;
+        }
+
+        @Override
+        public void remove(Runnable task) {
+            if (this.task == task) {
+                this.task = null;
+            }
+        }
+
+        void advanceTo(long time) {
+            now = time;
+            if (task != null && dueAt <= now) {
+                Runnable due = task;
+                task = null;
+                due.run();
+            }
+        }
+    }
+
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private final List<Map<String, Object>> written = new ArrayList<>();
+    private final LocationWriter<double[]> writer = new LocationWriter<>(1000, fix -> {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("users/u/latitude", fix[0]);
+        updates.put("users/u/longitude", fix[1]);
+        return updates;
+    }, written::add, scheduler);
+
+    @Test
+    public void firstFix_isWrittenImmediately() {
+        writer.submit(new double[]{32.1, 34.8});
+
+        assertEquals(1, written.size());
+        assertEquals(32.1, written.get(0).get("users/u/latitude"));
+        assertEquals(34.8, written.get(0).get("users/u/longitude"));
+    }
+
+    @Test
+    public void fastFixes_areCoalescedIntoTheLatest() {
+        writer.submit(new double[]{1, 1});
+        scheduler.advanceTo(100);
+        writer.submit(new double[]{2, 2});
+        scheduler.advanceTo(200);
+        writer.submit(new double[]{3, 3});
+        scheduler.advanceTo(999);
+        assertEquals(1, written.size());
+
+        scheduler.advanceTo(1000);
+        assertEquals(2, written.size());
+        assertEquals(3.0, written.get(1).get("users/u/latitude"));
+        assertEquals(1, writer.getSupersededCount());
+        assertEquals(3, writer.getSubmittedCount());
+    }
+
+    @Test
+    public void fixAfterQuietPeriod_isWrittenImmediately() {
+        writer.submit(new double[]{1, 1});
+        scheduler.advanceTo(5000);
+        writer.submit(new double[]{2, 2});
+
+        assertEquals(2, written.size());
+        assertNull(scheduler.task);
+    }
+
+    @Test
+    public void metrics_reportHourlyRates() {
+        for (int second = 0; second < 3600; second++) {
+            scheduler.advanceTo(second * 1000L);
+            writer.submit(new double[]{second, second});
+        }
+        scheduler.advanceTo(3600000);
+
+        assertEquals(3600, writer.getWriteCount());
+        assertEquals(3600, writer.getWritesPerHour(), 1);
+        assertEquals(writer.getBytesWritten(), writer.getBytesPerHour(), writer.getBytesWritten() / 1000.0);
+    }
+
+    @Test
+    public void estimateBytes_matchesJsonLength() {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("name", "Dana");
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("a", 1.5);
+        updates.put("b", entry);
+        updates.put("c", null);
+
+        String json = "{\"a\":1.5,\"b\":{\"name\":\"Dana\"},\"c\":null}";
+        assertEquals(json.length(), LocationWriter.estimateBytes(updates), 4);
+    }
+}
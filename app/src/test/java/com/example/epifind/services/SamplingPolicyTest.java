@@ -0,0 +1,121 @@
+package com.example.epifind.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SamplingPolicyTest {
+    private static final long MINUTE = 60000;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final long BASELINE_INTERVAL_MS = 10000;
+
+    /**
+     * A stretch of the simulated day with constant conditions.
+     */
+    private static class Segment {
+        final long durationMs;
+        final SamplingPolicy.Activity activity;
+        final int batteryPercent;
+        final boolean charging;
+        final boolean sosInRange;
+
+        Segment(long minutes, SamplingPolicy.Activity activity, int batteryPercent, boolean charging, boolean sosInRange) {
+            this.durationMs = minutes * MINUTE;
+            this.activity = activity;
+            this.batteryPercent = batteryPercent;
+            this.charging = charging;
+            this.sosInRange = sosInRange;
+        }
+
+        SamplingPolicy.Mode mode() {
+            return SamplingPolicy.choose(activity, batteryPercent, charging, sosInRange);
+        }
+
+        long fixes() {
+            return durationMs / mode().intervalMs;
+        }
+    }
+
+    /**
+     * A responder's day: charging overnight, a commute, a day at a desk draining the battery, a nearby SOS
+     * on the way home, and an evening on a nearly flat battery.
+     */
+    private static List<Segment> day() {
+        List<Segment> day = new ArrayList<>();
+        day.add(new Segment(6 * 60, SamplingPolicy.Activity.STILL, 100, true, false));
+        day.add(new Segment(60, SamplingPolicy.Activity.STILL, 100, false, false));
+        day.add(new Segment(45, SamplingPolicy.Activity.IN_VEHICLE, 95, false, false));
+        day.add(new Segment(15, SamplingPolicy.Activity.ON_FOOT, 92, false, false));
+        day.add(new Segment(4 * 60, SamplingPolicy.Activity.STILL, 70, false, false));
+        day.add(new Segment(30, SamplingPolicy.Activity.ON_FOOT, 55, false, false));
+        day.add(new Segment(4 * 60, SamplingPolicy.Activity.STILL, 28, false, false));
+        day.add(new Segment(15, SamplingPolicy.Activity.ON_FOOT, 25, false, true));
+        day.add(new Segment(45, SamplingPolicy.Activity.IN_VEHICLE, 22, false, false));
+        day.add(new Segment(5 * 60 + 30, SamplingPolicy.Activity.STILL, 12, false, false));
+        day.add(new Segment(60, SamplingPolicy.Activity.UNKNOWN, 10, false, false));
+        return day;
+    }
+
+    @Test
+    public void simulatedDay_coversWholeDay() {
+        long total = 0;
+        for (Segment segment : day()) {
+            total += segment.durationMs;
+        }
+        assertEquals(DAY, total);
+    }
+
+    @Test
+    public void simulatedDay_burstsOnlyDuringSos() {
+        for (Segment segment : day()) {
+            SamplingPolicy.Mode mode = segment.mode();
+            assertEquals(segment.sosInRange, mode.equals(SamplingPolicy.SOS_BURST));
+            if (!segment.sosInRange && !segment.charging) {
+                assertNotEquals(SamplingPolicy.Accuracy.HIGH, mode.accuracy);
+            }
+        }
+    }
+
+    @Test
+    public void simulatedDay_takesFarFewerFixesThanFixedInterval() {
+        long fixes = 0;
+        long batteryFixes = 0;
+        long batteryMs = 0;
+        for (Segment segment : day()) {
+            fixes += segment.fixes();
+            if (!segment.charging) {
+                batteryFixes += segment.fixes();
+                batteryMs += segment.durationMs;
+            }
+        }
+
+        long baseline = DAY / BASELINE_INTERVAL_MS;
+        assertEquals(8640, baseline);
+        assertTrue("fixes per day: " + fixes, fixes < baseline / 2);
+        // On battery, even with an SOS burst and two commutes, the policy takes under a quarter of the fixes
+        long batteryBaseline = batteryMs / BASELINE_INTERVAL_MS;
+        assertTrue("fixes on battery: " + batteryFixes, batteryFixes < batteryBaseline / 4);
+    }
+
+    @Test
+    public void choose_sosWinsOverChargingAndLowBattery() {
+        assertEquals(SamplingPolicy.SOS_BURST, SamplingPolicy.choose(SamplingPolicy.Activity.STILL, 5, false, true));
+        assertEquals(SamplingPolicy.SOS_BURST, SamplingPolicy.choose(SamplingPolicy.Activity.STILL, 100, true, true));
+        assertEquals(SamplingPolicy.CHARGING, SamplingPolicy.choose(SamplingPolicy.Activity.STILL, 5, true, false));
+        assertEquals(SamplingPolicy.LOW_BATTERY, SamplingPolicy.choose(SamplingPolicy.Activity.IN_VEHICLE, 15, false, false));
+    }
+
+    @Test
+    public void choose_slowsDownOnMediumBattery() {
+        SamplingPolicy.Mode healthy = SamplingPolicy.choose(SamplingPolicy.Activity.ON_FOOT, 31, false, false);
+        SamplingPolicy.Mode medium = SamplingPolicy.choose(SamplingPolicy.Activity.ON_FOOT, 30, false, false);
+
+        assertEquals(SamplingPolicy.ON_FOOT, healthy);
+        assertEquals(healthy.intervalMs * 2, medium.intervalMs);
+        assertEquals(healthy.flushIntervalMs * 2, medium.flushIntervalMs);
+        assertEquals(healthy.minDistanceMeters, medium.minDistanceMeters, 0);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.epifind.utils;
+
+import com.example.epifind.models.UserProfileCodec;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+
+public class EpiPenExpiryCheckerTest {
+
+    private static void today(String instant, ZoneId zone) {
+        EpiPenExpiryChecker.setClock(Clock.fixed(Instant.parse(instant), zone));
+    }
+
+    @After
+    public void restoreClock() {
+        EpiPenExpiryChecker.setClock(Clock.systemDefaultZone());
+    }
+
+    @Test
+    public void daysUntilExpiry_countsTheExpiryDate() {
+        long expiryDay = UserProfileCodec.parseExpiry("10/01/2030");
+
+        today("2030-01-03T08:00:00Z", ZoneOffset.UTC);
+        assertEquals(8, EpiPenExpiryChecker.getDaysUntilExpiry(expiryDay));
+        today("2030-01-10T23:59:00Z", ZoneOffset.UTC);
+        assertEquals(1, EpiPenExpiryChecker.getDaysUntilExpiry(expiryDay));
+        today("2030-01-11T00:00:00Z", ZoneOffset.UTC);
+        assertEquals(0, EpiPenExpiryChecker.getDaysUntilExpiry(expiryDay));
+        today("2030-01-13T12:00:00Z", ZoneOffset.UTC);
+        assertEquals(-2, EpiPenExpiryChecker.getDaysUntilExpiry(expiryDay));
+    }
+
+    @Test
+    public void daysUntilExpiry_followsTheClockZone() {
+        // Late evening in UTC is already the next day in Auckland
+        today("2030-01-10T20:00:00Z", ZoneId.of("Pacific/Auckland"));
+
+        assertEquals(0, EpiPenExpiryChecker.getDaysUntilExpiry("10/01/2030"));
+        assertEquals(1, EpiPenExpiryChecker.getDaysUntilExpiry("11/01/2030"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.epifind.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+public class FuturesTest {
+
+    @Test
+    public void messageOf_looksPastCompositionWrappers() {
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("User profile does not exist"));
+        CompletableFuture<Integer> composed = failed.thenApply(String::length).thenCompose(CompletableFuture::completedFuture);
+
+        Throwable error = null;
+        try {
+            composed.join();
+        } catch (CompletionException e) {
+            error = e;
+        }
+        assertNotNull(error);
+        assertEquals("User profile does not exist", Futures.messageOf(error));
+        assertTrue(Futures.unwrap(error) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void messageOf_reportsCancellation() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        future.cancel(false);
+        Throwable[] error = new Throwable[1];
+        future.whenComplete((result, e) -> error[0] = e);
+        assertEquals("Cancelled", Futures.messageOf(error[0]));
+    }
+
+    @Test
+    public void getNowOrNull_onlyReturnsSuccessfulResults() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("failed"));
+
+        assertNull(Futures.getNowOrNull(pending));
+        assertNull(Futures.getNowOrNull(failed));
+        assertEquals("done", Futures.getNowOrNull(CompletableFuture.completedFuture("done")));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.epifind.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightCacheTest {
+
+    /**
+     * A loader whose loads are completed by the test.
+     */
+    private static class ManualLoader implements SingleFlightCache.Loader<String, String> {
+        final Map<String, CompletableFuture<String>> pending = new HashMap<>();
+        final List<String> loaded = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<String> load(String key) {
+            loaded.add(key);
+            CompletableFuture<String> future = new CompletableFuture<>();
+            pending.put(key, future);
+            return future;
+        }
+    }
+
+    private long now;
+
+    private SingleFlightCache<String, String> cache(int capacity, long ttlMs) {
+        return new SingleFlightCache<>(capacity, ttlMs, () -> now);
+    }
+
+    @Test
+    public void get_sharesConcurrentLoads() {
+        SingleFlightCache<String, String> cache = cache(4, 1000);
+        ManualLoader loader = new ManualLoader();
+
+        CompletableFuture<String> first = cache.get("a", loader);
+        CompletableFuture<String> second = cache.get("a", loader);
+        loader.pending.get("a").complete("A");
+
+        assertEquals(1, loader.loaded.size());
+        assertEquals("A", first.join());
+        assertEquals("A", second.join());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getCoalescedCount());
+    }
+
+    @Test
+    public void get_cancellingOneCallerKeepsSharedLoad() {
+        SingleFlightCache<String, String> cache = cache(4, 1000);
+        ManualLoader loader = new ManualLoader();
+
+        CompletableFuture<String> first = cache.get("a", loader);
+        CompletableFuture<String> second = cache.get("a", loader);
+        first.cancel(false);
+        loader.pending.get("a").complete("A");
+
+        assertEquals("A", second.join());
+        assertEquals("A", cache.get("a", loader).join());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void get_reloadsAfterTtl() {
+        SingleFlightCache<String, String> cache = cache(4, 1000);
+        ManualLoader loader = new ManualLoader();
+        cache.get("a", loader);
+        loader.pending.get("a").complete("A");
+
+        now = 999;
+        assertEquals("A", cache.get("a", loader).join());
+        now = 1000;
+        cache.get("a", loader);
+
+        assertEquals(2, loader.loaded.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() {
+        SingleFlightCache<String, String> cache = cache(2, 1000);
+        ManualLoader loader = new ManualLoader();
+        for (String key : new String[]{"a", "b"}) {
+            cache.get(key, loader);
+            loader.pending.get(key).complete(key.toUpperCase());
+        }
+
+        cache.get("a", loader);
+        cache.get("c", loader);
+        loader.pending.get("c").complete("C");
+        cache.get("a", loader);
+        cache.get("b", loader);
+
+        assertEquals(4, loader.loaded.size());
+        assertEquals("b", loader.loaded.get(3));
+    }
+
+    @Test
+    public void get_doesNotCacheFailuresOrAbandonedLoads() {
+        SingleFlightCache<String, String> cache = cache(4, 1000);
+        ManualLoader loader = new ManualLoader();
+        cache.get("a", loader);
+        loader.pending.get("a").completeExceptionally(new IllegalStateException());
+        cache.get("a", loader);
+        cache.invalidate("a");
+        loader.pending.get("a").complete("stale");
+        cache.get("a", loader);
+
+        assertEquals(3, loader.loaded.size());
+    }
+
+    @Test
+    public void pin_neverExpiresAndReplacesLoad() {
+        SingleFlightCache<String, String> cache = cache(1, 1000);
+        ManualLoader loader = new ManualLoader();
+        CompletableFuture<String> loading = cache.get("me", loader);
+        cache.pin("me", "live");
+        loader.pending.get("me").complete("fetched");
+        cache.get("other", loader);
+        loader.pending.get("other").complete("O");
+
+        now = 1000000;
+
+        assertEquals("fetched", loading.join());
+        assertEquals("live", cache.get("me", loader).join());
+        assertEquals(2, loader.loaded.size());
+    }
+
+    @Test
+    public void peek_neverLoads() {
+        SingleFlightCache<String, String> cache = cache(4, 1000);
+        ManualLoader loader = new ManualLoader();
+        cache.get("a", loader);
+
+        assertNull(cache.peek("a"));
+        loader.pending.get("a").complete("A");
+        assertEquals("A", cache.peek("a"));
+        now = 1000;
+        assertNull(cache.peek("a"));
+        assertEquals(1, loader.loaded.size());
+        assertEquals(0, cache.getHitCount());
+    }
+}
@@ -0,0 +1,34 @@
+// Benchmarks of the pure-Java geo classes. They run on the desktop JVM, which has the timing and allocation
+// counters the Android unit test classpath lacks, so they live outside the app module.
+plugins {
+    java
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/example/epifind/geo/CandidateStore.java",
+                "com/example/epifind/geo/GeoDistance.java",
+                "com/example/epifind/geo/GeoHash.java",
+                "com/example/epifind/geo/SpatialGridIndex.java",
+                "com/example/epifind/geo/*Benchmark.java"
+            )
+        }
+    }
+}
+
+listOf("SpatialGridIndexBenchmark", "CandidateStoreBenchmark").forEach { benchmark ->
+    tasks.register<JavaExec>("run$benchmark") {
+        group = "benchmark"
+        description = "Runs $benchmark on the JVM."
+        classpath = sourceSets["main"].runtimeClasspath
+        mainClass.set("com.example.epifind.geo.$benchmark")
+    }
+}
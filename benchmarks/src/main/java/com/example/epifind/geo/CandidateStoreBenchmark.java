@@ -0,0 +1,88 @@
+package com.example.epifind.geo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Measures the time and allocation per query of the primitive query paths at 200k users. Run it with
+ * {@code ./gradlew :benchmarks:runCandidateStoreBenchmark}. Allocation is only reported on JVMs that expose
+ * per-thread allocation counters.
+ */
+public class CandidateStoreBenchmark {
+    private static final double CENTER_LAT = 32.0853;
+    private static final double CENTER_LON = 34.7818;
+    private static final double SPREAD_DEGREES = 0.3;
+    private static final int USERS = 200000;
+
+    public static void main(String[] args) {
+        Random random = new Random(5);
+        SpatialGridIndex index = new SpatialGridIndex(CENTER_LAT, 250);
+        for (int i = 0; i < USERS; i++) {
+            double[] point = randomPoint(random);
+            index.put("user" + i, point[0], point[1]);
+        }
+        CandidateStore store = index.getStore();
+        int[] out = new int[store.capacity()];
+        int[] nearestOut = new int[50];
+        double[][] centers = new double[300][];
+        for (int i = 0; i < centers.length; i++) {
+            centers[i] = randomPoint(random);
+        }
+
+        long checksum = 0;
+        // Warm up so the measured loops run compiled code
+        for (int round = 0; round < 2; round++) {
+            for (double[] center : centers) {
+                checksum += store.filterWithin(center[0], center[1], 2000, out);
+                checksum += index.queryRadius(center[0], center[1], 2000, out);
+                checksum += index.nearest(center[0], center[1], 10000, nearestOut);
+            }
+        }
+
+        long before = allocatedBytes();
+        long start = System.nanoTime();
+        for (double[] center : centers) {
+            checksum += store.filterWithin(center[0], center[1], 2000, out);
+        }
+        report("storeScan", System.nanoTime() - start, allocatedBytes() - before, centers.length);
+
+        before = allocatedBytes();
+        start = System.nanoTime();
+        for (double[] center : centers) {
+            checksum += index.queryRadius(center[0], center[1], 2000, out);
+        }
+        report("gridRadius", System.nanoTime() - start, allocatedBytes() - before, centers.length);
+
+        before = allocatedBytes();
+        start = System.nanoTime();
+        for (double[] center : centers) {
+            checksum += index.nearest(center[0], center[1], 10000, nearestOut);
+        }
+        report("gridNearest50", System.nanoTime() - start, allocatedBytes() - before, centers.length);
+        System.out.println("checksum " + checksum);
+    }
+
+    private static void report(String name, long nanos, long bytes, int queries) {
+        System.out.printf("users=%d %s=%.3fms/query %s%n", USERS, name, nanos / 1e6 / queries,
+                bytes >= 0 ? String.format("%.1fB/query", (double) bytes / queries) : "");
+    }
+
+    /**
+     * Gets the bytes allocated by the current thread so far.
+     *
+     * @return The allocated bytes, or a negative value if the JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static double[] randomPoint(Random random) {
+        return new double[]{
+                CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES,
+                CENTER_LON + (random.nextDouble() - 0.5) * SPREAD_DEGREES
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.epifind.geo;
+
+import java.util.Random;
+
+/**
+ * Measures SpatialGridIndex radius queries against a brute-force scan at increasing user counts. Run it with
+ * {@code ./gradlew :benchmarks:runSpatialGridIndexBenchmark}. Correctness is checked by the app's
+ * SpatialGridIndexTest.
+ */
+public class SpatialGridIndexBenchmark {
+    private static final double CENTER_LAT = 32.0853;
+    private static final double CENTER_LON = 34.7818;
+    private static final double SPREAD_DEGREES = 0.3;
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        for (int users : new int[]{1000, 10000, 50000, 200000}) {
+            SpatialGridIndex index = new SpatialGridIndex(CENTER_LAT, 500);
+            double[][] points = new double[users][];
+            long buildStart = System.nanoTime();
+            for (int i = 0; i < users; i++) {
+                points[i] = randomPoint(random);
+                index.put("user" + i, points[i][0], points[i][1]);
+            }
+            long buildNanos = System.nanoTime() - buildStart;
+
+            long checksum = 0;
+            long gridNanos = 0;
+            long bruteNanos = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                double[] center = randomPoint(random);
+
+                long start = System.nanoTime();
+                checksum += index.queryRadius(center[0], center[1], 2000).size();
+                gridNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (double[] p : points) {
+                    if (GeoDistance.haversineMeters(center[0], center[1], p[0], p[1]) <= 2000) {
+                        checksum--;
+                    }
+                }
+                bruteNanos += System.nanoTime() - start;
+            }
+            System.out.printf("users=%d build=%.1fms grid=%.3fms/query bruteForce=%.3fms/query (checksum %d)%n",
+                    users, buildNanos / 1e6, gridNanos / 1e6 / QUERIES, bruteNanos / 1e6 / QUERIES, checksum);
+        }
+    }
+
+    private static double[] randomPoint(Random random) {
+        return new double[]{
+                CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES,
+                CENTER_LON + (random.nextDouble() - 0.5) * SPREAD_DEGREES
+        };
+    }
+}